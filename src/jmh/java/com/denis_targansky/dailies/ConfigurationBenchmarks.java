@@ -0,0 +1,71 @@
+package com.denis_targansky.dailies;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.denis_targansky.dailies.Configuration.InvalidConfigurationException;
+import com.denis_targansky.dailies.tasks.YahooFinanceTask;
+
+/**
+ * Reading a configuration file with many tasks, each with a handful of task properties.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ConfigurationBenchmarks {
+
+	@Param( { "100", "1000", "5000" } )
+	private int taskCount;
+
+	private File configFile;
+
+	@Setup
+	public void setUp( ) throws IOException {
+		configFile = File.createTempFile( "configuration", ".properties" );
+		try ( PrintWriter writer = new PrintWriter( configFile ) ) {
+			writer.println( "output-folder=./output" );
+			for ( int taskIndex = 1; taskIndex <= taskCount; taskIndex++ ) {
+				String prefix = "task." + taskIndex + ".";
+				writer.println( prefix + "class-name=" + YahooFinanceTask.class.getName( ) );
+				writer.println( prefix + "period-seconds=86400" );
+				writer.println( prefix + "initial-delay-seconds=" + taskIndex % 60 );
+				writer.println( prefix + "overlap-policy=skip" );
+				writer.println( prefix + "property.template-file-path=./templates/DD-TCKR-yyyyMMdd.docx" );
+				writer.println( prefix + "property.tickers=AAPL,MSFT,NVDA,AMZN,GOOG" );
+				writer.println( prefix + "property.batch-size=50" );
+				writer.println( prefix + "property.cache.quote-ttl-seconds=300" );
+				writer.println( prefix + "property.rate-limit.requests-per-second=10" );
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown( ) {
+		configFile.delete( );
+	}
+
+	@Benchmark
+	public Configuration read( ) throws IOException, InvalidConfigurationException, ConfigurationException {
+		return new Configuration( configFile.getPath( ) );
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.denis_targansky.dailies.finance;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of a recorded Yahoo Finance search response into articles.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class NewsSearchParserBenchmarks {
+
+	@Param( { "true", "false" } )
+	private boolean onlyExclusive;
+
+	private byte[] response;
+
+	@Setup
+	public void setUp( ) throws IOException {
+		try ( InputStream in = NewsSearchParserBenchmarks.class.getResourceAsStream( "/fixtures/news-search-aapl.json" ) ) {
+			response = in.readAllBytes( );
+		}
+	}
+
+	@Benchmark
+	public List<Article> parse( ) throws IOException {
+		return NewsSearchParser.parse( new ByteArrayInputStream( response ), "AAPL", onlyExclusive );
+	}
+
+}
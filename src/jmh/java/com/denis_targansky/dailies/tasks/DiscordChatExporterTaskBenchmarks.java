@@ -0,0 +1,106 @@
+package com.denis_targansky.dailies.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.denis_targansky.dailies.Configuration;
+import com.denis_targansky.dailies.Configuration.InvalidConfigurationException;
+import com.denis_targansky.dailies.Configuration.TaskConfiguration;
+import com.denis_targansky.dailies.tasks.AbstractTask.InvalidTaskConfigurationException;
+
+/**
+ * Reading the channel properties of the Discord task and building the exporter command line for every channel,
+ * without starting the exporter.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class DiscordChatExporterTaskBenchmarks {
+
+	@Param( { "10", "1000" } )
+	private int channelCount;
+
+	private Path workFolder;
+
+	private Configuration config;
+
+	private TaskConfiguration taskConfig;
+
+	private DiscordChatExporterTask task;
+
+	@Setup
+	public void setUp( )
+			throws IOException, InvalidConfigurationException, ConfigurationException, InvalidTaskConfigurationException {
+		workFolder = Files.createTempDirectory( "discord-benchmark" );
+		Path dceFolder = Files.createDirectories( workFolder.resolve( "dce" ) );
+		Files.createFile( dceFolder.resolve( "DiscordChatExporter.Cli.dll" ) );
+
+		File configFile = workFolder.resolve( "configuration.properties" ).toFile( );
+		try ( PrintWriter writer = new PrintWriter( configFile ) ) {
+			writer.println( "output-folder=" + workFolder.resolve( "output" ).toString( ).replace( '\\', '/' ) );
+			writer.println( "task.1.class-name=" + DiscordChatExporterTask.class.getName( ) );
+			writer.println( "task.1.period-seconds=86400" );
+			writer.println( "task.1.property.discord-chat-exporter.path=" + dceFolder.toString( ).replace( '\\', '/' ) );
+			writer.println( "task.1.property.discord.auth-token=benchmark-token" );
+			for ( int index = 1; index <= channelCount; index++ ) {
+				String prefix = "task.1.property.discord.channel." + index;
+				writer.println( prefix + ".id=" + ( 800000000000000000L + index ) );
+				writer.println( prefix + ".last-query-time=2023-10-17T12:00:00" );
+				if ( index % 2 == 0 ) {
+					writer.println( prefix + ".filter=from:someone has:link" );
+				}
+			}
+		}
+
+		config = new Configuration( configFile.getPath( ) );
+		taskConfig = config.getTaskConfigurationList( ).get( 0 );
+		task = new DiscordChatExporterTask( config, taskConfig );
+	}
+
+	@TearDown
+	public void tearDown( ) throws IOException {
+		try ( var paths = Files.walk( workFolder ) ) {
+			paths.sorted( ( first, second ) -> second.compareTo( first ) ).forEach( path -> path.toFile( ).delete( ) );
+		}
+	}
+
+	@Benchmark
+	public DiscordChatExporterTask readProperties( ) throws InvalidTaskConfigurationException {
+		return new DiscordChatExporterTask( config, taskConfig );
+	}
+
+	@Benchmark
+	public List<List<String>> buildExportArguments( ) {
+		List<List<String>> commandLines = new ArrayList<>( );
+		for ( Map.Entry<Integer, String> channel : task.getChannelIds( ).entrySet( ) ) {
+			File exportFile = workFolder.resolve( channel.getValue( ) + ".json" ).toFile( );
+			commandLines.add( task.buildExportArguments( channel.getKey( ), channel.getValue( ), exportFile ) );
+		}
+		return commandLines;
+	}
+
+}
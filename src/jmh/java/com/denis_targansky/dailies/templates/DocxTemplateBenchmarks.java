@@ -0,0 +1,88 @@
+package com.denis_targansky.dailies.templates;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering of the report template used by the Yahoo Finance task, with the same placeholders it resolves.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class DocxTemplateBenchmarks {
+
+	private static final PlaceholderMatcher MATCHER = new PlaceholderMatcher( List.of( "{company_name}", "{ticker}",
+			"{stock_price}", "{market_cap}", "{52_week_low}", "{52_week_high}", "{average_volume}", "{scrape_date}",
+			"{headline_title_###}", "{headline_link_###}" ) );
+
+	private static final PlaceholderValues VALUES = ( term, index ) -> switch ( term ) {
+		case "{company_name}" -> "Apple Inc.";
+		case "{ticker}" -> "AAPL";
+		case "{stock_price}" -> "178.72";
+		case "{market_cap}" -> "2794530029568";
+		case "{52_week_low}" -> "124.17";
+		case "{52_week_high}" -> "198.23";
+		case "{average_volume}" -> "57512740";
+		case "{scrape_date}" -> "2023-10-17";
+		case "{headline_title_###}" -> index <= 8 ? "Apple shares move as investors weigh earnings & guidance #" + index : null;
+		case "{headline_link_###}" -> index <= 8 ? "https://finance.yahoo.com/news/apple-update-" + index + ".html" : null;
+		default -> null;
+	};
+
+	private File templateFile;
+
+	private DocxTemplate template;
+
+	@Setup
+	public void setUp( ) throws IOException {
+		templateFile = File.createTempFile( "report-template", ".docx" );
+		try ( InputStream in = DocxTemplateBenchmarks.class.getResourceAsStream( "/fixtures/report-template.docx" ) ) {
+			Files.copy( in, templateFile.toPath( ), StandardCopyOption.REPLACE_EXISTING );
+		}
+		template = DocxTemplate.get( templateFile, MATCHER );
+	}
+
+	@TearDown
+	public void tearDown( ) {
+		templateFile.delete( );
+	}
+
+	@Benchmark
+	public byte[] render( ) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream( );
+		template.render( VALUES, out );
+		return out.toByteArray( );
+	}
+
+	/**
+	 * Includes the cache lookup every ticker of a run goes through, which has to stat the template file.
+	 */
+	@Benchmark
+	public byte[] getAndRender( ) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream( );
+		DocxTemplate.get( templateFile, MATCHER ).render( VALUES, out );
+		return out.toByteArray( );
+	}
+
+}
@@ -2,139 +2,251 @@ package com.denis_targansky.dailies;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.configuration2.PropertiesConfiguration;
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.denis_targansky.dailies.scheduler.CatchUpPolicy;
+import com.denis_targansky.dailies.scheduler.OverlapPolicy;
 import com.denis_targansky.dailies.tasks.AbstractTask;
 
+/**
+ * The settings read from the configuration file. Task settings are grouped by task number in a single pass over the
+ * keys, so the numbering may have gaps, and every invalid setting is reported at once. Instances are immutable.
+ */
 public class Configuration {
 
 	private static final Logger ms = LogManager.getLogger( );
 
-	private final File configFile;
+	private static final int DEFAULT_MAX_CONCURRENT_TASKS = 4;
 
-	private final PropertiesConfiguration properties;
+	private static final int DEFAULT_CATCH_UP_STAGGER_SECONDS = 60;
+
+	private static final Pattern TASK_KEY_PATTERN = Pattern.compile( "task\\.(\\d+)\\.(.+)" );
+
+	private static final String TASK_PROPERTY_PREFIX = "property.";
 
 	private final String mainOutputFolder;
 
-	private final List<TaskConfiguration> taskConfigurationList = new ArrayList<>( );
+	private final int maxConcurrentTasks;
+
+	private final long catchUpStaggerSeconds;
+
+	private final boolean hotReload;
+
+	private final List<TaskConfiguration> taskConfigurationList;
 
 	public Configuration( String configurationFileName )
 			throws IOException, InvalidConfigurationException, ConfigurationException {
-		properties = new PropertiesConfiguration( );
+		PropertiesConfiguration properties = new PropertiesConfiguration( );
 
-		configFile = new File( configurationFileName );
+		File configFile = new File( configurationFileName );
 		ms.info( "Reading configuration file from {}", configFile.getAbsolutePath( ) );
 		try ( FileReader reader = new FileReader( configFile ) ) {
 			properties.read( reader );
 		}
 
-		if ( properties.containsKey( "output-folder" ) ) {
-			mainOutputFolder = properties.getString( "output-folder" );
-		} else {
-			mainOutputFolder = "./output";
+		List<String> errors = new ArrayList<>( );
+		Map<String, String> settings = new HashMap<>( );
+		Map<Integer, Map<String, String>> taskSettings = new TreeMap<>( );
+		for ( Iterator<String> keyIter = properties.getKeys( ); keyIter.hasNext( ); ) {
+			String key = keyIter.next( );
+			String value = properties.getString( key );
+			Matcher taskKeyMatcher = TASK_KEY_PATTERN.matcher( key );
+			if ( !taskKeyMatcher.matches( ) ) {
+				settings.put( key, value );
+				continue;
+			}
+
+			int taskIndex;
+			try {
+				taskIndex = Integer.parseInt( taskKeyMatcher.group( 1 ) );
+			} catch ( NumberFormatException e ) {
+				errors.add( "Invalid task number in " + key );
+				continue;
+			}
+			taskSettings.computeIfAbsent( taskIndex, ignored -> new HashMap<>( ) ).put( taskKeyMatcher.group( 2 ), value );
 		}
 
-		int taskIndex = 1;
+		mainOutputFolder = settings.getOrDefault( "output-folder", "./output" );
+		maxConcurrentTasks = ( int ) parseLong( settings, "scheduler.max-concurrent-tasks", DEFAULT_MAX_CONCURRENT_TASKS,
+				1, "", errors );
+		catchUpStaggerSeconds = parseLong( settings, "scheduler.catch-up-stagger-seconds", DEFAULT_CATCH_UP_STAGGER_SECONDS,
+				0, "", errors );
+		hotReload = Boolean.parseBoolean( settings.getOrDefault( "hot-reload", "true" ).trim( ) );
+
+		List<TaskConfiguration> taskConfigs = new ArrayList<>( taskSettings.size( ) );
+		for ( Map.Entry<Integer, Map<String, String>> taskEntry : taskSettings.entrySet( ) ) {
+			TaskConfiguration taskConfig = parseTask( taskEntry.getKey( ), taskEntry.getValue( ), errors );
+			if ( taskConfig != null ) {
+				taskConfigs.add( taskConfig );
+			}
+		}
 
-		while ( true ) {
-			String taskPrefix = "task." + taskIndex + ".";
-			String className = properties.getString( taskPrefix + "class-name" );
+		if ( !errors.isEmpty( ) ) {
+			throw new InvalidConfigurationException( "Invalid configuration file " + configFile.getAbsolutePath( ) + ":"
+					+ System.lineSeparator( ) + String.join( System.lineSeparator( ), errors ) );
+		}
 
-			if ( className == null ) {
-				break;
-			}
+		taskConfigurationList = List.copyOf( taskConfigs );
+	}
 
-			if ( !properties.containsKey( taskPrefix + "period-seconds" ) ) {
-				throw new InvalidConfigurationException( "Missing period-seconds property for task " + taskIndex );
-			}
+	private static TaskConfiguration parseTask( int taskIndex, Map<String, String> settings, List<String> errors ) {
+		String taskPrefix = "task." + taskIndex + ".";
+		String className = settings.get( "class-name" );
+		if ( className == null || className.isBlank( ) ) {
+			ms.warn( "Ignoring settings of task {} as it has no class-name property", taskIndex );
+			return null;
+		}
 
-			long initialDelaySeconds = properties.getLong( taskPrefix + "initial-delay-seconds", 0 );
-			long periodSeconds = properties.getLong( taskPrefix + "period-seconds" );
-
-			Map<String, String> taskProperties = new HashMap<>( );
-			String taskPropertyPrefix = taskPrefix + "property.";
-			for ( Iterator<String> keyIter = properties
-					.getKeys( taskPropertyPrefix.substring( 0, taskPropertyPrefix.length( ) - 1 ) ); keyIter.hasNext( ); ) {
-				String taskPropertyKey = keyIter.next( );
-				String taskPropertyName = taskPropertyKey
-						.substring( taskPropertyKey.lastIndexOf( taskPropertyPrefix ) + taskPropertyPrefix.length( ) );
-				String taskPropertyValue = properties.getString( taskPropertyKey );
-				taskProperties.put( taskPropertyName, taskPropertyValue );
-			}
+		int errorCount = errors.size( );
+		if ( !settings.containsKey( "period-seconds" ) ) {
+			errors.add( "Missing period-seconds property for task " + taskIndex );
+		}
+		long periodSeconds = parseLong( settings, "period-seconds", 1, 1, taskPrefix, errors );
+		long initialDelaySeconds = parseLong( settings, "initial-delay-seconds", 0, 0, taskPrefix, errors );
+		long initialDelayJitterSeconds = parseLong( settings, "initial-delay-jitter-seconds", 0, 0, taskPrefix, errors );
+
+		OverlapPolicy overlapPolicy = OverlapPolicy
+				.fromPropertyValue( settings.getOrDefault( "overlap-policy", OverlapPolicy.SKIP.getPropertyValue( ) ).trim( ) );
+		if ( overlapPolicy == null ) {
+			errors.add( "Invalid overlap-policy property for task " + taskIndex );
+		}
+		CatchUpPolicy catchUpPolicy = CatchUpPolicy
+				.fromPropertyValue( settings.getOrDefault( "catch-up-policy", CatchUpPolicy.COALESCE.getPropertyValue( ) ) );
+		if ( catchUpPolicy == null ) {
+			errors.add( "Invalid catch-up-policy property for task " + taskIndex );
+		}
 
-			TaskConfiguration taskConfig;
-			try {
-				taskConfig = new TaskConfiguration( taskPropertyPrefix, className, initialDelaySeconds, periodSeconds, taskProperties );
-			} catch ( ClassNotFoundException e ) {
-				throw new InvalidConfigurationException( "Invalid class name for task " + taskIndex, e );
+		Map<String, String> taskProperties = new HashMap<>( );
+		for ( Map.Entry<String, String> setting : settings.entrySet( ) ) {
+			if ( setting.getKey( ).startsWith( TASK_PROPERTY_PREFIX ) ) {
+				taskProperties.put( setting.getKey( ).substring( TASK_PROPERTY_PREFIX.length( ) ), setting.getValue( ) );
 			}
+		}
 
-			if ( !AbstractTask.class.isAssignableFrom( taskConfig.getTaskClass( ) ) ) {
-				throw new InvalidConfigurationException(
-						"Class '" + className + "' declared in task " + taskIndex + " is not runnable" );
-			}
+		TaskConfiguration taskConfig;
+		try {
+			taskConfig = new TaskConfiguration( taskPrefix + TASK_PROPERTY_PREFIX, className.trim( ), initialDelaySeconds,
+					initialDelayJitterSeconds, periodSeconds, overlapPolicy, catchUpPolicy, taskProperties );
+		} catch ( ClassNotFoundException e ) {
+			errors.add( "Invalid class name '" + className + "' for task " + taskIndex );
+			return null;
+		} catch ( ClassCastException e ) {
+			errors.add( "Class '" + className + "' declared in task " + taskIndex + " is not runnable" );
+			return null;
+		}
+
+		return errors.size( ) == errorCount ? taskConfig : null;
+	}
+
+	private static long parseLong( Map<String, String> settings, String key, long defaultValue, long minimumValue,
+			String keyPrefix, List<String> errors ) {
+		String value = settings.get( key );
+		if ( value == null || value.isBlank( ) ) {
+			return defaultValue;
+		}
 
-			taskConfigurationList.add( taskConfig );
+		long longValue;
+		try {
+			longValue = Long.parseLong( value.trim( ) );
+		} catch ( NumberFormatException e ) {
+			errors.add( "Invalid number '" + value + "' in " + keyPrefix + key + " property" );
+			return defaultValue;
+		}
 
-			taskIndex++;
+		if ( longValue < minimumValue ) {
+			errors.add( keyPrefix + key + " property must be at least " + minimumValue );
+			return defaultValue;
 		}
+
+		return longValue;
 	}
 
 	public String getMainOutputFolder( ) {
 		return mainOutputFolder;
 	}
 
-	public List<TaskConfiguration> getTaskConfigurationList( ) {
-		return taskConfigurationList;
+	public int getMaxConcurrentTasks( ) {
+		return maxConcurrentTasks;
 	}
 
-	public void updateProperty( String key, Object value ) throws IOException, ConfigurationException {
-		ms.debug( "Changing value of configuration property from {}={} to {}={}", key, properties.getProperty( key ), key,
-				value );
-		properties.setProperty( key, value );
-		try ( FileWriter writer = new FileWriter( configFile ) ) {
-			properties.write( writer );
-		}
+	/**
+	 * @return how far apart the tasks found overdue at startup are started
+	 */
+	public long getCatchUpStaggerSeconds( ) {
+		return catchUpStaggerSeconds;
+	}
+
+	public boolean isHotReload( ) {
+		return hotReload;
+	}
+
+	public List<TaskConfiguration> getTaskConfigurationList( ) {
+		return taskConfigurationList;
 	}
 
 	public static final class TaskConfiguration {
 
 		private final String taskPropertyPrefix;
 
-		private final Class taskClass;
+		private final Class<? extends AbstractTask> taskClass;
 
 		private final long initialDelaySeconds;
 
+		private final long initialDelayJitterSeconds;
+
 		private final long periodSeconds;
 
+		private final OverlapPolicy overlapPolicy;
+
+		private final CatchUpPolicy catchUpPolicy;
+
 		private final Map<String, String> taskProperties;
 
-		public TaskConfiguration( String taskPropertyPrefix, String className, long initialDelaySeconds, long periodSeconds,
+		/**
+		 * @throws ClassCastException if {@code className} is not an {@link AbstractTask}
+		 */
+		public TaskConfiguration( String taskPropertyPrefix, String className, long initialDelaySeconds,
+				long initialDelayJitterSeconds, long periodSeconds, OverlapPolicy overlapPolicy, CatchUpPolicy catchUpPolicy,
 				Map<String, String> taskProperties ) throws ClassNotFoundException {
 			super( );
 			this.taskPropertyPrefix = taskPropertyPrefix;
-			this.taskClass = Class.forName( className );
+			this.taskClass = Class.forName( className ).asSubclass( AbstractTask.class );
 			this.initialDelaySeconds = initialDelaySeconds;
+			this.initialDelayJitterSeconds = initialDelayJitterSeconds;
 			this.periodSeconds = periodSeconds;
-			this.taskProperties = taskProperties;
+			this.overlapPolicy = overlapPolicy;
+			this.catchUpPolicy = catchUpPolicy;
+			this.taskProperties = Map.copyOf( taskProperties );
 		}
 
 		public String getTaskPropertyPrefix( ) {
 			return taskPropertyPrefix;
 		}
 
-		public Class getTaskClass( ) {
+		/**
+		 * @return the prefix of every setting of the task, such as {@code task.1.}
+		 */
+		public String getTaskPrefix( ) {
+			return taskPropertyPrefix.endsWith( TASK_PROPERTY_PREFIX )
+					? taskPropertyPrefix.substring( 0, taskPropertyPrefix.length( ) - TASK_PROPERTY_PREFIX.length( ) )
+					: taskPropertyPrefix;
+		}
+
+		public Class<? extends AbstractTask> getTaskClass( ) {
 			return taskClass;
 		}
 
@@ -142,14 +254,47 @@ public class Configuration {
 			return initialDelaySeconds;
 		}
 
+		public long getInitialDelayJitterSeconds( ) {
+			return initialDelayJitterSeconds;
+		}
+
 		public long getPeriodSeconds( ) {
 			return periodSeconds;
 		}
 
+		public OverlapPolicy getOverlapPolicy( ) {
+			return overlapPolicy;
+		}
+
+		public CatchUpPolicy getCatchUpPolicy( ) {
+			return catchUpPolicy;
+		}
+
 		public Map<String, String> getTaskProperties( ) {
 			return taskProperties;
 		}
 
+		@Override
+		public int hashCode( ) {
+			return Objects.hash( taskPropertyPrefix, taskClass, initialDelaySeconds, initialDelayJitterSeconds, periodSeconds,
+					overlapPolicy, catchUpPolicy, taskProperties );
+		}
+
+		@Override
+		public boolean equals( Object obj ) {
+			if ( this == obj ) {
+				return true;
+			}
+			if ( !( obj instanceof TaskConfiguration other ) ) {
+				return false;
+			}
+			return taskPropertyPrefix.equals( other.taskPropertyPrefix ) && taskClass == other.taskClass
+					&& initialDelaySeconds == other.initialDelaySeconds
+					&& initialDelayJitterSeconds == other.initialDelayJitterSeconds && periodSeconds == other.periodSeconds
+					&& overlapPolicy == other.overlapPolicy && catchUpPolicy == other.catchUpPolicy
+					&& taskProperties.equals( other.taskProperties );
+		}
+
 	}
 
 	public static final class InvalidConfigurationException extends Exception {
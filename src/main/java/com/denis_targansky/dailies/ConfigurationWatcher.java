@@ -0,0 +1,102 @@
+package com.denis_targansky.dailies;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import com.denis_targansky.dailies.Configuration.InvalidConfigurationException;
+
+/**
+ * Watches the configuration file and hands every valid new version of it to a listener. Invalid versions are logged
+ * and ignored, so a half edited file never stops the tasks that are already running.
+ */
+public final class ConfigurationWatcher implements Closeable {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final long SETTLE_MILLIS = 1000;
+
+	private final Path configFile;
+
+	private final Consumer<Configuration> listener;
+
+	private final WatchService watchService;
+
+	public ConfigurationWatcher( String configurationFileName, Consumer<Configuration> listener ) throws IOException {
+		this.configFile = Path.of( configurationFileName ).toAbsolutePath( ).normalize( );
+		this.listener = listener;
+		this.watchService = configFile.getFileSystem( ).newWatchService( );
+		configFile.getParent( ).register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY );
+
+		Thread thread = new Thread( this::watch, "configuration-watcher" );
+		thread.setDaemon( true );
+		thread.start( );
+		ms.info( "Watching configuration file {} for changes", configFile );
+	}
+
+	private void watch( ) {
+		try {
+			while ( true ) {
+				boolean changed = isConfigFileChanged( watchService.take( ) );
+
+				// Editors and copies usually touch the file several times, so it is only read once it has settled
+				for ( WatchKey key = watchService.poll( SETTLE_MILLIS, TimeUnit.MILLISECONDS ); key != null; key = watchService
+						.poll( SETTLE_MILLIS, TimeUnit.MILLISECONDS ) ) {
+					changed |= isConfigFileChanged( key );
+				}
+
+				if ( changed ) {
+					reload( );
+				}
+			}
+		} catch ( InterruptedException | ClosedWatchServiceException e ) {
+			ms.debug( "Stopped watching configuration file {}", configFile );
+		}
+	}
+
+	private boolean isConfigFileChanged( WatchKey key ) {
+		boolean changed = false;
+		for ( WatchEvent<?> event : key.pollEvents( ) ) {
+			if ( configFile.getFileName( ).equals( event.context( ) ) ) {
+				changed = true;
+			}
+		}
+		key.reset( );
+		return changed;
+	}
+
+	private void reload( ) {
+		Configuration config;
+		try {
+			config = new Configuration( configFile.toString( ) );
+		} catch ( IOException | InvalidConfigurationException | ConfigurationException e ) {
+			ms.error( new ParameterizedMessage( "Ignoring changes to configuration file '{}'", configFile ), e );
+			return;
+		}
+
+		try {
+			listener.accept( config );
+		} catch ( RuntimeException e ) {
+			ms.error( new ParameterizedMessage( "Error applying changes to configuration file '{}'", configFile ), e );
+		}
+	}
+
+	@Override
+	public void close( ) throws IOException {
+		watchService.close( );
+	}
+
+}
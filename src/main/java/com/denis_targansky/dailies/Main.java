@@ -1,22 +1,34 @@
 package com.denis_targansky.dailies;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
 import org.tanukisoftware.wrapper.WrapperListener;
 import org.tanukisoftware.wrapper.WrapperManager;
 
 import com.denis_targansky.dailies.Configuration.InvalidConfigurationException;
 import com.denis_targansky.dailies.Configuration.TaskConfiguration;
+import com.denis_targansky.dailies.finance.SeenArticleFilter;
+import com.denis_targansky.dailies.scheduler.TaskScheduler;
+import com.denis_targansky.dailies.scheduler.TaskScheduler.ScheduledTask;
+import com.denis_targansky.dailies.search.SearchIndex;
+import com.denis_targansky.dailies.state.TaskStateStore;
 import com.denis_targansky.dailies.tasks.AbstractTask;
+import com.denis_targansky.dailies.timeseries.QuoteHistoryStore;
 
 public class Main implements WrapperListener {
 
@@ -26,9 +38,23 @@ public class Main implements WrapperListener {
 
 	private static final int EXIT_CODE_TASK_ERROR = -2;
 
+	/** How long the runs in progress get to finish on shutdown, within the wrapper's default 30 second timeout. */
+	private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds( 25 );
+
 	private Configuration config;
 
-	private ScheduledExecutorService executor;
+	private TaskScheduler scheduler;
+
+	private ConfigurableApplicationContext webContext;
+
+	private ConfigurationWatcher configWatcher;
+
+	/** The index served by the web application, which follows the output folder across reloads. */
+	private final AtomicReference<SearchIndex> searchIndex = new AtomicReference<>( );
+
+	private final Map<String, TaskConfiguration> scheduledTaskConfigs = new HashMap<>( );
+
+	private final Map<String, ScheduledTask> scheduledTasks = new HashMap<>( );
 
 	@Override
 	public Integer start( String[] args ) {
@@ -46,39 +72,176 @@ public class Main implements WrapperListener {
 			return EXIT_CODE_CONFIG_ERROR;
 		}
 
-		executor = new ScheduledThreadPoolExecutor( 1000 );
+		// Without the saved run times every task is scheduled from its initial delay, as on a first start
+		TaskStateStore stateStore = null;
+		Path stateFolder = Path.of( config.getMainOutputFolder( ), AbstractTask.STATE_FOLDER );
+		try {
+			stateStore = TaskStateStore.shared( stateFolder );
+		} catch ( IOException e ) {
+			ms.error( new ParameterizedMessage( "Error opening the task state in '{}', tasks will not catch up on missed runs",
+					stateFolder.toAbsolutePath( ) ), e );
+		}
+		scheduler = new TaskScheduler( config.getMaxConcurrentTasks( ), stateStore,
+				Duration.ofSeconds( config.getCatchUpStaggerSeconds( ) ) );
 		ms.info( "Scheduling {} tasks", config.getTaskConfigurationList( ).size( ) );
 		for ( TaskConfiguration taskConfig : config.getTaskConfigurationList( ) ) {
-			Class taskClass = taskConfig.getTaskClass( );
 			AbstractTask task;
 			try {
-				task = AbstractTask.class.cast( taskClass.getDeclaredConstructor( Configuration.class, TaskConfiguration.class )
-						.newInstance( config, taskConfig ) );
-			} catch ( InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException
-					| NoSuchMethodException | SecurityException e ) {
-				ms.error( new ParameterizedMessage( "Error creating task '{}'", taskClass.getCanonicalName( ) ), e );
+				task = createTask( config, taskConfig );
+			} catch ( ReflectiveOperationException | IllegalArgumentException | SecurityException e ) {
+				ms.error( new ParameterizedMessage( "Error creating task '{}'", taskConfig.getTaskClass( ).getCanonicalName( ) ),
+						e );
 				return EXIT_CODE_TASK_ERROR;
 			}
 
-			executor.scheduleAtFixedRate( task, taskConfig.getInitialDelaySeconds( ), taskConfig.getPeriodSeconds( ),
-					TimeUnit.SECONDS );
-			ms.info( "Scheduled task {} with initial delay {} and period {}", taskClass.getName( ),
-					Duration.ofSeconds( taskConfig.getInitialDelaySeconds( ) ),
-					Duration.ofSeconds( taskConfig.getPeriodSeconds( ) ) );
+			scheduleTask( taskConfig, task );
 		}
 
 		ms.info( "Completed scheduling all tasks" );
 
+		if ( config.isHotReload( ) ) {
+			try {
+				configWatcher = new ConfigurationWatcher( configurationFileName, this::reload );
+			} catch ( IOException e ) {
+				ms.error( "Error watching the configuration file, changes will require a restart", e );
+			}
+		}
+
+		// The web application only serves the health, metrics and search endpoints, so the tasks keep running without it
+		try {
+			searchIndex.set( SearchIndex.shared( Path.of( config.getMainOutputFolder( ), AbstractTask.SEARCH_INDEX_FOLDER ) ) );
+			// A prototype is looked up on every request, so it picks up the index of a reloaded output folder
+			webContext = new SpringApplicationBuilder( DailiesWebApp.class )
+					.initializers( context -> ( ( GenericApplicationContext ) context ).registerBean( "searchIndex",
+							SearchIndex.class, searchIndex::get,
+							definition -> definition.setScope( BeanDefinition.SCOPE_PROTOTYPE ) ) )
+					.run( );
+		} catch ( IOException | RuntimeException e ) {
+			ms.error( "Error starting the web application, metrics and search will not be available", e );
+		}
+
 		return null;
 	}
 
+	private static AbstractTask createTask( Configuration config, TaskConfiguration taskConfig )
+			throws ReflectiveOperationException {
+		return taskConfig.getTaskClass( ).getDeclaredConstructor( Configuration.class, TaskConfiguration.class )
+				.newInstance( config, taskConfig );
+	}
+
+	private synchronized void scheduleTask( TaskConfiguration taskConfig, AbstractTask task ) {
+		String taskKey = taskConfig.getTaskPropertyPrefix( );
+		ScheduledTask scheduledTask = scheduler.schedule( taskConfig.getTaskClass( ).getName( ), taskConfig.getTaskPrefix( ),
+				task, Duration.ofSeconds( taskConfig.getInitialDelaySeconds( ) ),
+				Duration.ofSeconds( taskConfig.getInitialDelayJitterSeconds( ) ),
+				Duration.ofSeconds( taskConfig.getPeriodSeconds( ) ), taskConfig.getOverlapPolicy( ),
+				taskConfig.getCatchUpPolicy( ) );
+		scheduledTaskConfigs.put( taskKey, taskConfig );
+		scheduledTasks.put( taskKey, scheduledTask );
+	}
+
+	/**
+	 * Applies a new version of the configuration. Only the tasks whose settings changed are re-created and
+	 * rescheduled; every other task keeps its instance, its timer and its warm caches.
+	 */
+	private synchronized void reload( Configuration newConfig ) {
+		if ( newConfig.getMaxConcurrentTasks( ) != config.getMaxConcurrentTasks( ) ) {
+			scheduler.setMaxConcurrentTasks( newConfig.getMaxConcurrentTasks( ) );
+		}
+		if ( newConfig.getCatchUpStaggerSeconds( ) != config.getCatchUpStaggerSeconds( ) ) {
+			scheduler.setCatchUpStagger( Duration.ofSeconds( newConfig.getCatchUpStaggerSeconds( ) ) );
+		}
+		if ( !newConfig.isHotReload( ) && configWatcher != null ) {
+			ms.info( "Hot reload was turned off, further changes to the configuration file require a restart" );
+			closeConfigWatcher( );
+		}
+		// Tasks resolve their output folder when they are created
+		boolean outputFolderChanged = !newConfig.getMainOutputFolder( ).equals( config.getMainOutputFolder( ) );
+		if ( outputFolderChanged && webContext != null ) {
+			Path searchIndexFolder = Path.of( newConfig.getMainOutputFolder( ), AbstractTask.SEARCH_INDEX_FOLDER );
+			try {
+				searchIndex.set( SearchIndex.shared( searchIndexFolder ) );
+			} catch ( IOException e ) {
+				ms.error( new ParameterizedMessage( "Error opening the search index in '{}', search keeps serving the previous one",
+						searchIndexFolder.toAbsolutePath( ) ), e );
+			}
+		}
+
+		Map<String, TaskConfiguration> newTaskConfigs = new LinkedHashMap<>( );
+		for ( TaskConfiguration taskConfig : newConfig.getTaskConfigurationList( ) ) {
+			newTaskConfigs.put( taskConfig.getTaskPropertyPrefix( ), taskConfig );
+		}
+
+		int removedCount = 0;
+		for ( Iterator<Map.Entry<String, ScheduledTask>> taskIter = scheduledTasks.entrySet( ).iterator( ); taskIter
+				.hasNext( ); ) {
+			Map.Entry<String, ScheduledTask> scheduledTask = taskIter.next( );
+			if ( !newTaskConfigs.containsKey( scheduledTask.getKey( ) ) ) {
+				scheduledTask.getValue( ).cancel( );
+				taskIter.remove( );
+				scheduledTaskConfigs.remove( scheduledTask.getKey( ) );
+				removedCount++;
+			}
+		}
+
+		int rescheduledCount = 0;
+		for ( TaskConfiguration taskConfig : newTaskConfigs.values( ) ) {
+			String taskKey = taskConfig.getTaskPropertyPrefix( );
+			if ( !outputFolderChanged && taskConfig.equals( scheduledTaskConfigs.get( taskKey ) ) ) {
+				continue;
+			}
+
+			AbstractTask task;
+			try {
+				task = createTask( newConfig, taskConfig );
+			} catch ( ReflectiveOperationException | IllegalArgumentException | SecurityException e ) {
+				ms.error( new ParameterizedMessage( "Error creating task '{}', keeping its previous settings",
+						taskConfig.getTaskClass( ).getCanonicalName( ) ), e );
+				continue;
+			}
+
+			ScheduledTask previousTask = scheduledTasks.get( taskKey );
+			if ( previousTask != null ) {
+				previousTask.cancel( );
+			}
+			scheduleTask( taskConfig, task );
+			rescheduledCount++;
+		}
+
+		config = newConfig;
+		ms.info( "Reloaded configuration: {} tasks created or rescheduled, {} removed, {} unchanged", rescheduledCount,
+				removedCount, scheduledTasks.size( ) - rescheduledCount );
+	}
+
 	@Override
 	public int stop( int exitCode ) {
 		ms.info( "Shutdown initiated with code {}", exitCode );
-		executor.shutdown( );
+		closeConfigWatcher( );
+		// The stores closed below must outlive the runs still writing to them
+		if ( scheduler != null && !scheduler.shutdown( SHUTDOWN_TIMEOUT ) ) {
+			ms.warn( "Tasks were still running after {}, interrupted them", SHUTDOWN_TIMEOUT );
+		}
+		if ( webContext != null ) {
+			webContext.close( );
+		}
+		TaskStateStore.closeAll( );
+		SearchIndex.closeAll( );
+		QuoteHistoryStore.closeAll( );
+		SeenArticleFilter.closeAll( );
 		return exitCode;
 	}
 
+	private synchronized void closeConfigWatcher( ) {
+		if ( configWatcher != null ) {
+			try {
+				configWatcher.close( );
+			} catch ( IOException e ) {
+				ms.warn( "Error closing the configuration watcher", e );
+			}
+			configWatcher = null;
+		}
+	}
+
 	@Override
 	public void controlEvent( int event ) {
 		ms.debug( "Received event {}", event );
@@ -0,0 +1,382 @@
+package com.denis_targansky.dailies.cache;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A cache of loaded values with an LRU bounded memory tier and an optional on-disk tier that survives restarts.
+ * Freshness is decided by the caller on every lookup, so callers with different TTLs can share the same entries.
+ * Concurrent lookups of a key that is being loaded wait for that load instead of starting their own. Disk entries older
+ * than the longest TTL asked for are deleted when they are read or evicted from memory.
+ */
+public final class TtlCache<V> {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final Map<String, TtlCache<?>> sharedCaches = new ConcurrentHashMap<>( );
+
+	private final String name;
+
+	private final Path diskFolder;
+
+	private final Codec<V> codec;
+
+	private final Map<String, Entry<V>> memoryEntries;
+
+	private final Map<String, CompletableFuture<V>> inFlightLoads = new ConcurrentHashMap<>( );
+
+	private final AtomicLong memoryHits = new AtomicLong( );
+
+	private final AtomicLong diskHits = new AtomicLong( );
+
+	private final AtomicLong misses = new AtomicLong( );
+
+	private final AtomicLong evictions = new AtomicLong( );
+
+	/** The longest TTL of the lookups so far, or -1 before the first one. */
+	private final AtomicLong longestTtlMillis = new AtomicLong( -1 );
+
+	private volatile int maxMemoryEntries;
+
+	public TtlCache( String name, int maxMemoryEntries, Path diskFolder, Codec<V> codec ) {
+		this.name = name;
+		this.diskFolder = diskFolder;
+		this.codec = codec;
+		this.maxMemoryEntries = maxMemoryEntries;
+		this.memoryEntries = new LinkedHashMap<>( 16, 0.75f, true ) {
+
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<String, Entry<V>> eldest ) {
+				if ( size( ) > TtlCache.this.maxMemoryEntries ) {
+					evict( eldest.getKey( ), eldest.getValue( ) );
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache registered under {@code name} and {@code diskFolder}, creating it on first use so that every
+	 * task asking for the same data shares the same entries. An existing cache takes the latest {@code maxMemoryEntries},
+	 * so reloaded settings apply to it.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public static <V> TtlCache<V> shared( String name, int maxMemoryEntries, Path diskFolder, Codec<V> codec ) {
+		String key = name + "|" + ( diskFolder == null ? "" : diskFolder.toAbsolutePath( ).normalize( ) );
+		TtlCache<V> cache = ( TtlCache<V> ) sharedCaches.computeIfAbsent( key,
+				ignored -> new TtlCache<>( name, maxMemoryEntries, diskFolder == null ? null : diskFolder.resolve( name ),
+						codec ) );
+		cache.setMaxMemoryEntries( maxMemoryEntries );
+		return cache;
+	}
+
+	public void setMaxMemoryEntries( int maxMemoryEntries ) {
+		if ( maxMemoryEntries < 1 ) {
+			throw new IllegalArgumentException( "Cache " + name + " needs room for at least one entry" );
+		}
+
+		synchronized ( memoryEntries ) {
+			this.maxMemoryEntries = maxMemoryEntries;
+			Iterator<Map.Entry<String, Entry<V>>> entries = memoryEntries.entrySet( ).iterator( );
+			while ( memoryEntries.size( ) > maxMemoryEntries ) {
+				Map.Entry<String, Entry<V>> eldest = entries.next( );
+				evict( eldest.getKey( ), eldest.getValue( ) );
+				entries.remove( );
+			}
+		}
+	}
+
+	public V get( String key, Duration ttl, Loader<V> loader ) throws IOException {
+		return getAll( Set.of( key ), ttl, keys -> {
+			V value = loader.load( key );
+			return value == null ? Map.of( ) : Map.of( key, value );
+		} ).get( key );
+	}
+
+	/**
+	 * @return the fresh values for {@code keys}, loading the missing ones with a single call to {@code loader}; keys the
+	 *         loader could not provide a value for are absent from the result
+	 */
+	public Map<String, V> getAll( Collection<String> keys, Duration ttl, BulkLoader<V> loader ) throws IOException {
+		long now = System.currentTimeMillis( );
+		longestTtlMillis.accumulateAndGet( ttl.toMillis( ), Math::max );
+		Map<String, V> values = new HashMap<>( );
+		Map<String, CompletableFuture<V>> ownedLoads = new HashMap<>( );
+		Map<String, CompletableFuture<V>> awaitedLoads = new HashMap<>( );
+		for ( String key : new LinkedHashSet<>( keys ) ) {
+			V value = getFresh( key, ttl, now );
+			if ( value != null ) {
+				values.put( key, value );
+				continue;
+			}
+
+			misses.incrementAndGet( );
+			CompletableFuture<V> load = new CompletableFuture<>( );
+			CompletableFuture<V> existingLoad = inFlightLoads.putIfAbsent( key, load );
+			if ( existingLoad == null ) {
+				ownedLoads.put( key, load );
+			} else {
+				awaitedLoads.put( key, existingLoad );
+			}
+		}
+
+		if ( !ownedLoads.isEmpty( ) ) {
+			try {
+				Map<String, V> loadedValues = loader.load( ownedLoads.keySet( ) );
+				for ( Map.Entry<String, CompletableFuture<V>> ownedLoad : ownedLoads.entrySet( ) ) {
+					String key = ownedLoad.getKey( );
+					V value = loadedValues.get( key );
+					if ( value != null ) {
+						put( key, value );
+						values.put( key, value );
+					}
+					ownedLoad.getValue( ).complete( value );
+				}
+			} catch ( IOException | RuntimeException e ) {
+				ownedLoads.values( ).forEach( load -> load.completeExceptionally( e ) );
+				throw e;
+			} finally {
+				ownedLoads.forEach( inFlightLoads::remove );
+			}
+		}
+
+		for ( Map.Entry<String, CompletableFuture<V>> awaitedLoad : awaitedLoads.entrySet( ) ) {
+			try {
+				V value = awaitedLoad.getValue( ).join( );
+				if ( value != null ) {
+					values.put( awaitedLoad.getKey( ), value );
+				}
+			} catch ( CompletionException e ) {
+				ms.debug( "Shared load of {} in cache {} failed", awaitedLoad.getKey( ), name );
+			}
+		}
+
+		return values;
+	}
+
+	public void put( String key, V value ) {
+		Entry<V> entry = new Entry<>( value, System.currentTimeMillis( ) );
+		synchronized ( memoryEntries ) {
+			memoryEntries.put( key, entry );
+		}
+
+		if ( diskFolder != null ) {
+			writeToDisk( key, entry );
+		}
+	}
+
+	public void invalidate( String key ) {
+		synchronized ( memoryEntries ) {
+			memoryEntries.remove( key );
+		}
+
+		if ( diskFolder != null ) {
+			deleteFromDisk( key );
+		}
+	}
+
+	private void evict( String key, Entry<V> entry ) {
+		evictions.incrementAndGet( );
+		if ( diskFolder != null && isExpired( entry, System.currentTimeMillis( ) ) ) {
+			deleteFromDisk( key );
+		}
+	}
+
+	/**
+	 * @return whether {@code entry} is too old for every lookup made so far, so no caller would use it
+	 */
+	private boolean isExpired( Entry<V> entry, long now ) {
+		long longestTtl = longestTtlMillis.get( );
+		return longestTtl >= 0 && now - entry.loadedAt >= longestTtl;
+	}
+
+	private V getFresh( String key, Duration ttl, long now ) {
+		Entry<V> entry;
+		synchronized ( memoryEntries ) {
+			entry = memoryEntries.get( key );
+		}
+
+		if ( entry != null && entry.isFresh( ttl, now ) ) {
+			memoryHits.incrementAndGet( );
+			return entry.value;
+		}
+
+		if ( diskFolder == null ) {
+			return null;
+		}
+
+		entry = readFromDisk( key );
+		if ( entry == null ) {
+			return null;
+		}
+		if ( !entry.isFresh( ttl, now ) ) {
+			if ( isExpired( entry, now ) ) {
+				deleteFromDisk( key );
+			}
+			return null;
+		}
+
+		synchronized ( memoryEntries ) {
+			memoryEntries.putIfAbsent( key, entry );
+		}
+		diskHits.incrementAndGet( );
+		return entry.value;
+	}
+
+	private Entry<V> readFromDisk( String key ) {
+		try {
+			ByteBuffer content = ByteBuffer.wrap( Files.readAllBytes( getDiskFile( key ) ) );
+			long loadedAt = content.getLong( );
+			byte[] encodedValue = new byte[content.remaining( )];
+			content.get( encodedValue );
+			return new Entry<>( codec.decode( encodedValue ), loadedAt );
+		} catch ( NoSuchFileException e ) {
+			return null;
+		} catch ( IOException | RuntimeException e ) {
+			ms.warn( "Could not read {} from cache {}", key, name, e );
+			return null;
+		}
+	}
+
+	private void writeToDisk( String key, Entry<V> entry ) {
+		try {
+			byte[] encodedValue = codec.encode( entry.value );
+			ByteBuffer content = ByteBuffer.allocate( Long.BYTES + encodedValue.length );
+			content.putLong( entry.loadedAt ).put( encodedValue );
+
+			Files.createDirectories( diskFolder );
+			Path diskFile = getDiskFile( key );
+			Path tempFile = Files.createTempFile( diskFolder, null, ".tmp" );
+			Files.write( tempFile, content.array( ) );
+			Files.move( tempFile, diskFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		} catch ( IOException | RuntimeException e ) {
+			ms.warn( "Could not write {} to cache {}", key, name, e );
+		}
+	}
+
+	private void deleteFromDisk( String key ) {
+		try {
+			Files.deleteIfExists( getDiskFile( key ) );
+		} catch ( IOException e ) {
+			ms.warn( "Could not delete {} from cache {}", key, name, e );
+		}
+	}
+
+	private Path getDiskFile( String key ) {
+		return diskFolder.resolve( URLEncoder.encode( key, StandardCharsets.UTF_8 ) + ".cache" );
+	}
+
+	public String getName( ) {
+		return name;
+	}
+
+	public long getMemoryHitCount( ) {
+		return memoryHits.get( );
+	}
+
+	public long getDiskHitCount( ) {
+		return diskHits.get( );
+	}
+
+	public long getMissCount( ) {
+		return misses.get( );
+	}
+
+	public long getEvictionCount( ) {
+		return evictions.get( );
+	}
+
+	public int getMemorySize( ) {
+		synchronized ( memoryEntries ) {
+			return memoryEntries.size( );
+		}
+	}
+
+	@Override
+	public String toString( ) {
+		return "TtlCache [name=" + name + ", memoryHits=" + memoryHits + ", diskHits=" + diskHits + ", misses=" + misses
+				+ ", evictions=" + evictions + ", memorySize=" + getMemorySize( ) + "]";
+	}
+
+	@FunctionalInterface
+	public interface Loader<V> {
+
+		V load( String key ) throws IOException;
+
+	}
+
+	@FunctionalInterface
+	public interface BulkLoader<V> {
+
+		Map<String, V> load( Set<String> keys ) throws IOException;
+
+	}
+
+	public interface Codec<V> {
+
+		byte[] encode( V value ) throws IOException;
+
+		V decode( byte[] encodedValue ) throws IOException;
+
+		static <V> Codec<V> json( ObjectMapper objectMapper, JavaType type ) {
+			Objects.requireNonNull( type );
+			return new Codec<>( ) {
+
+				@Override
+				public byte[] encode( V value ) throws IOException {
+					return objectMapper.writeValueAsBytes( value );
+				}
+
+				@Override
+				public V decode( byte[] encodedValue ) throws IOException {
+					return objectMapper.readValue( encodedValue, type );
+				}
+			};
+		}
+
+	}
+
+	private static final class Entry<V> {
+
+		private final V value;
+
+		private final long loadedAt;
+
+		private Entry( V value, long loadedAt ) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+		}
+
+		private boolean isFresh( Duration ttl, long now ) {
+			return now - loadedAt < ttl.toMillis( );
+		}
+
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.denis_targansky.dailies.discord;
+
+import java.time.Instant;
+
+public final class ChatMessage {
+
+	private final long id;
+
+	private final long timestampMillis;
+
+	private final String authorId;
+
+	private final String authorName;
+
+	private final String content;
+
+	public ChatMessage( long id, long timestampMillis, String authorId, String authorName, String content ) {
+		this.id = id;
+		this.timestampMillis = timestampMillis;
+		this.authorId = authorId;
+		this.authorName = authorName;
+		this.content = content;
+	}
+
+	public long getId( ) {
+		return id;
+	}
+
+	public long getTimestampMillis( ) {
+		return timestampMillis;
+	}
+
+	public Instant getTimestamp( ) {
+		return Instant.ofEpochMilli( timestampMillis );
+	}
+
+	public String getAuthorId( ) {
+		return authorId;
+	}
+
+	public String getAuthorName( ) {
+		return authorName;
+	}
+
+	public String getContent( ) {
+		return content;
+	}
+
+	@Override
+	public String toString( ) {
+		return "ChatMessage [id=" + id + ", timestamp=" + getTimestamp( ) + ", authorName=" + authorName + "]";
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.denis_targansky.dailies.discord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streams the messages out of a Discord Chat Exporter JSON export one at a time, so exports of any size can be
+ * ingested without loading them. Only the fields {@link ChatMessage} holds are read.
+ */
+public final class ExportParser {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final JsonFactory jsonFactory = new JsonFactory( );
+
+	private ExportParser( ) {
+	}
+
+	@FunctionalInterface
+	public interface MessageHandler {
+
+		void handle( ChatMessage message ) throws IOException;
+
+	}
+
+	/**
+	 * Parses and closes {@code in}, handing every message to {@code handler} in the order of the export.
+	 *
+	 * @return the number of messages found
+	 */
+	public static int parse( InputStream in, MessageHandler handler ) throws IOException {
+		int messageCount = 0;
+		try ( JsonParser parser = jsonFactory.createParser( in ) ) {
+			if ( parser.nextToken( ) != JsonToken.START_OBJECT ) {
+				throw new JsonParseException( parser, "Export is not a JSON object" );
+			}
+
+			while ( parser.nextToken( ) == JsonToken.FIELD_NAME ) {
+				String field = parser.getCurrentName( );
+				JsonToken value = parser.nextToken( );
+				if ( !"messages".equals( field ) || value != JsonToken.START_ARRAY ) {
+					parser.skipChildren( );
+					continue;
+				}
+
+				for ( JsonToken token = parser.nextToken( ); token != JsonToken.END_ARRAY; token = parser.nextToken( ) ) {
+					if ( token != JsonToken.START_OBJECT ) {
+						parser.skipChildren( );
+						continue;
+					}
+
+					ChatMessage message = parseMessage( parser );
+					if ( message != null ) {
+						handler.handle( message );
+						messageCount++;
+					}
+				}
+			}
+		}
+
+		return messageCount;
+	}
+
+	private static ChatMessage parseMessage( JsonParser parser ) throws IOException {
+		String id = null;
+		String timestamp = null;
+		String content = null;
+		String authorId = null;
+		String authorName = null;
+		while ( parser.nextToken( ) == JsonToken.FIELD_NAME ) {
+			String field = parser.getCurrentName( );
+			JsonToken value = parser.nextToken( );
+			switch ( field ) {
+				case "id" -> id = parser.getValueAsString( );
+				case "timestamp" -> timestamp = parser.getValueAsString( );
+				case "content" -> content = parser.getValueAsString( );
+				case "author" -> {
+					if ( value != JsonToken.START_OBJECT ) {
+						parser.skipChildren( );
+						continue;
+					}
+					while ( parser.nextToken( ) == JsonToken.FIELD_NAME ) {
+						String authorField = parser.getCurrentName( );
+						parser.nextToken( );
+						switch ( authorField ) {
+							case "id" -> authorId = parser.getValueAsString( );
+							case "name" -> authorName = parser.getValueAsString( );
+							default -> parser.skipChildren( );
+						}
+					}
+				}
+				default -> parser.skipChildren( );
+			}
+		}
+
+		if ( id == null || timestamp == null ) {
+			ms.warn( "Skipping message without id or timestamp" );
+			return null;
+		}
+
+		try {
+			return new ChatMessage( Long.parseLong( id ), OffsetDateTime.parse( timestamp ).toInstant( ).toEpochMilli( ),
+					authorId, authorName, content == null ? "" : content );
+		} catch ( NumberFormatException | DateTimeParseException e ) {
+			ms.warn( "Skipping message with invalid id '{}' or timestamp '{}'", id, timestamp );
+			return null;
+		}
+	}
+
+}
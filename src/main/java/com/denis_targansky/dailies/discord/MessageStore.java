@@ -0,0 +1,341 @@
+package com.denis_targansky.dailies.discord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The messages of one channel, appended in id order to segment files of at most {@value #MAX_SEGMENT_BYTES} bytes,
+ * with an index of fixed size entries (id, timestamp, segment, offset) next to them. The index is held in memory, so a
+ * message is found by id or by time with a binary search and read with a single positioned read. Discord ids grow
+ * with time, which keeps the index ordered by both.
+ * <p>
+ * Every record carries a CRC, and records are written before their index entry, so after a crash the store is cut
+ * back to the last message whose record and index entry are both complete.
+ */
+public final class MessageStore implements Closeable {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final String INDEX_FILE_NAME = "messages.idx";
+
+	private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+	private static final int INDEX_ENTRY_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+	private static final int RECORD_HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+
+	private final Path folder;
+
+	private final FileChannel index;
+
+	private final Map<Integer, FileChannel> segments = new HashMap<>( );
+
+	private long[] ids = new long[1024];
+
+	private long[] timestamps = new long[1024];
+
+	private int[] segmentNumbers = new int[1024];
+
+	private long[] offsets = new long[1024];
+
+	private int size;
+
+	private int currentSegment;
+
+	private long currentSegmentSize;
+
+	private MessageStore( Path folder ) throws IOException {
+		this.folder = folder;
+		Files.createDirectories( folder );
+		index = FileChannel.open( folder.resolve( INDEX_FILE_NAME ), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE );
+		try {
+			recover( );
+		} catch ( IOException | RuntimeException e ) {
+			close( );
+			throw e;
+		}
+	}
+
+	public static MessageStore open( Path folder ) throws IOException {
+		return new MessageStore( folder );
+	}
+
+	private void recover( ) throws IOException {
+		long indexSize = index.size( );
+		int entryCount = ( int ) ( indexSize / INDEX_ENTRY_BYTES );
+		ByteBuffer entries = ByteBuffer.allocate( entryCount * INDEX_ENTRY_BYTES );
+		while ( entries.hasRemaining( ) && index.read( entries, entries.position( ) ) >= 0 ) {
+			// Read the whole index
+		}
+		entries.flip( );
+
+		while ( entries.remaining( ) >= INDEX_ENTRY_BYTES ) {
+			long id = entries.getLong( );
+			long timestamp = entries.getLong( );
+			int segment = entries.getInt( );
+			long offset = entries.getLong( );
+			if ( size > 0 && id <= ids[size - 1] ) {
+				break;
+			}
+			addIndexEntry( id, timestamp, segment, offset );
+		}
+
+		// The last messages may have an index entry but an incomplete record
+		long lastRecordEnd = 0;
+		while ( size > 0 ) {
+			lastRecordEnd = getRecordEnd( size - 1 );
+			if ( lastRecordEnd >= 0 ) {
+				break;
+			}
+			size--;
+		}
+
+		if ( ( long ) size * INDEX_ENTRY_BYTES != indexSize ) {
+			ms.warn( "Discarding {} bytes of incomplete index entries in {}", indexSize - ( long ) size * INDEX_ENTRY_BYTES,
+					folder );
+			index.truncate( ( long ) size * INDEX_ENTRY_BYTES );
+		}
+
+		currentSegment = size == 0 ? 0 : segmentNumbers[size - 1];
+		currentSegmentSize = size == 0 ? 0 : lastRecordEnd;
+		FileChannel segment = getSegment( currentSegment );
+		if ( segment.size( ) > currentSegmentSize ) {
+			ms.warn( "Discarding {} bytes of unindexed messages in segment {} of {}", segment.size( ) - currentSegmentSize,
+					currentSegment, folder );
+			segment.truncate( currentSegmentSize );
+		}
+		index.position( index.size( ) );
+	}
+
+	/**
+	 * @return the offset just past the message's record, or -1 if the record is incomplete or corrupted
+	 */
+	private long getRecordEnd( int position ) throws IOException {
+		try {
+			readRecord( position );
+			ByteBuffer header = readFully( segmentNumbers[position], offsets[position], RECORD_HEADER_BYTES );
+			return offsets[position] + RECORD_HEADER_BYTES + header.getInt( );
+		} catch ( IOException e ) {
+			ms.debug( "Message {} in {} is not readable: {}", ids[position], folder, e.getMessage( ) );
+			return -1;
+		}
+	}
+
+	public synchronized int size( ) {
+		return size;
+	}
+
+	/**
+	 * @return the id of the newest message, or 0 if the store is empty
+	 */
+	public synchronized long getLastMessageId( ) {
+		return size == 0 ? 0 : ids[size - 1];
+	}
+
+	public synchronized boolean contains( long id ) {
+		return Arrays.binarySearch( ids, 0, size, id ) >= 0;
+	}
+
+	/**
+	 * Appends the message unless it is already stored. Messages have to come in id order; one older than the newest
+	 * stored message that is not stored yet is skipped, as it would break the ordering of the index.
+	 *
+	 * @return whether the message was added
+	 */
+	public synchronized boolean add( ChatMessage message ) throws IOException {
+		if ( size > 0 && message.getId( ) <= ids[size - 1] ) {
+			if ( !contains( message.getId( ) ) ) {
+				ms.debug( "Skipping message {} which is older than the newest stored message {}", message.getId( ),
+						ids[size - 1] );
+			}
+			return false;
+		}
+
+		ByteBuffer record = encodeRecord( message );
+		if ( currentSegmentSize > 0 && currentSegmentSize + record.remaining( ) > MAX_SEGMENT_BYTES ) {
+			getSegment( currentSegment ).force( false );
+			currentSegment++;
+			currentSegmentSize = 0;
+		}
+
+		long offset = currentSegmentSize;
+		FileChannel segment = getSegment( currentSegment );
+		int recordBytes = record.remaining( );
+		writeFully( segment, record, offset );
+		currentSegmentSize += recordBytes;
+
+		ByteBuffer entry = ByteBuffer.allocate( INDEX_ENTRY_BYTES ).putLong( message.getId( ) )
+				.putLong( message.getTimestampMillis( ) ).putInt( currentSegment ).putLong( offset ).flip( );
+		writeFully( index, entry, ( long ) size * INDEX_ENTRY_BYTES );
+		addIndexEntry( message.getId( ), message.getTimestampMillis( ), currentSegment, offset );
+		return true;
+	}
+
+	/**
+	 * Forces every message added so far to disk.
+	 */
+	public synchronized void flush( ) throws IOException {
+		getSegment( currentSegment ).force( false );
+		index.force( false );
+	}
+
+	/**
+	 * @return the message, or null if it is not stored
+	 */
+	public synchronized ChatMessage getById( long id ) throws IOException {
+		int position = Arrays.binarySearch( ids, 0, size, id );
+		return position < 0 ? null : readRecord( position );
+	}
+
+	/**
+	 * @return up to {@code limit} messages posted at or after {@code since}, oldest first
+	 */
+	public synchronized List<ChatMessage> getSince( Instant since, int limit ) throws IOException {
+		long sinceMillis = since.toEpochMilli( );
+		int low = 0;
+		int high = size;
+		while ( low < high ) {
+			int middle = ( low + high ) >>> 1;
+			if ( timestamps[middle] < sinceMillis ) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		List<ChatMessage> messages = new ArrayList<>( );
+		for ( int position = low; position < size && messages.size( ) < limit; position++ ) {
+			messages.add( readRecord( position ) );
+		}
+		return messages;
+	}
+
+	private void addIndexEntry( long id, long timestamp, int segment, long offset ) {
+		if ( size == ids.length ) {
+			int capacity = size * 2;
+			ids = Arrays.copyOf( ids, capacity );
+			timestamps = Arrays.copyOf( timestamps, capacity );
+			segmentNumbers = Arrays.copyOf( segmentNumbers, capacity );
+			offsets = Arrays.copyOf( offsets, capacity );
+		}
+		ids[size] = id;
+		timestamps[size] = timestamp;
+		segmentNumbers[size] = segment;
+		offsets[size] = offset;
+		size++;
+	}
+
+	private static ByteBuffer encodeRecord( ChatMessage message ) {
+		byte[] authorId = toBytes( message.getAuthorId( ) );
+		byte[] authorName = toBytes( message.getAuthorName( ) );
+		byte[] content = toBytes( message.getContent( ) );
+		int bodyBytes = Long.BYTES + Long.BYTES + 3 * Integer.BYTES + authorId.length + authorName.length + content.length;
+		ByteBuffer record = ByteBuffer.allocate( RECORD_HEADER_BYTES + bodyBytes );
+		record.putInt( bodyBytes ).putInt( 0 ).putLong( message.getId( ) ).putLong( message.getTimestampMillis( ) );
+		record.putInt( authorId.length ).put( authorId ).putInt( authorName.length ).put( authorName )
+				.putInt( content.length ).put( content );
+
+		CRC32 crc = new CRC32( );
+		crc.update( record.array( ), RECORD_HEADER_BYTES, bodyBytes );
+		record.putInt( Integer.BYTES, ( int ) crc.getValue( ) );
+		return record.flip( );
+	}
+
+	private ChatMessage readRecord( int position ) throws IOException {
+		int segment = segmentNumbers[position];
+		long offset = offsets[position];
+		ByteBuffer header = readFully( segment, offset, RECORD_HEADER_BYTES );
+		int bodyBytes = header.getInt( );
+		int expectedCrc = header.getInt( );
+		if ( bodyBytes < 0 || bodyBytes > MAX_SEGMENT_BYTES ) {
+			throw new IOException( "Invalid record length " + bodyBytes + " at offset " + offset + " of segment " + segment );
+		}
+
+		ByteBuffer body = readFully( segment, offset + RECORD_HEADER_BYTES, bodyBytes );
+		CRC32 crc = new CRC32( );
+		crc.update( body.array( ), 0, bodyBytes );
+		if ( ( int ) crc.getValue( ) != expectedCrc ) {
+			throw new IOException( "Corrupted record at offset " + offset + " of segment " + segment );
+		}
+
+		return new ChatMessage( body.getLong( ), body.getLong( ), readString( body ), readString( body ),
+				readString( body ) );
+	}
+
+	private ByteBuffer readFully( int segment, long offset, int length ) throws IOException {
+		FileChannel channel = getSegment( segment );
+		ByteBuffer buffer = ByteBuffer.allocate( length );
+		while ( buffer.hasRemaining( ) ) {
+			if ( channel.read( buffer, offset + buffer.position( ) ) < 0 ) {
+				throw new IOException( "Unexpected end of segment " + segment + " at offset " + offset );
+			}
+		}
+		return buffer.flip( );
+	}
+
+	private static void writeFully( FileChannel channel, ByteBuffer buffer, long position ) throws IOException {
+		long writePosition = position;
+		while ( buffer.hasRemaining( ) ) {
+			writePosition += channel.write( buffer, writePosition );
+		}
+	}
+
+	private FileChannel getSegment( int segment ) throws IOException {
+		FileChannel channel = segments.get( segment );
+		if ( channel == null ) {
+			channel = FileChannel.open( folder.resolve( String.format( "segment-%06d.dat", segment ) ),
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+			segments.put( segment, channel );
+		}
+		return channel;
+	}
+
+	private static byte[] toBytes( String text ) {
+		return text == null ? new byte[0] : text.getBytes( StandardCharsets.UTF_8 );
+	}
+
+	private static String readString( ByteBuffer buffer ) throws IOException {
+		int length = buffer.getInt( );
+		if ( length < 0 || length > buffer.remaining( ) ) {
+			throw new IOException( "Invalid string length " + length );
+		}
+		String text = new String( buffer.array( ), buffer.position( ), length, StandardCharsets.UTF_8 );
+		buffer.position( buffer.position( ) + length );
+		return text;
+	}
+
+	@Override
+	public synchronized void close( ) throws IOException {
+		IOException closeException = null;
+		for ( FileChannel segment : segments.values( ) ) {
+			try {
+				segment.close( );
+			} catch ( IOException e ) {
+				closeException = e;
+			}
+		}
+		segments.clear( );
+		index.close( );
+		if ( closeException != null ) {
+			throw closeException;
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.denis_targansky.dailies.finance;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public final class Article {
+
+	private final String uuid;
+
+	private final String title;
+
+	private final String link;
+
+	private final long providerPublishEpochSecond;
+
+	private final String publisher;
+
+	private final List<String> relatedTickers;
+
+	@JsonCreator
+	public Article( @JsonProperty( "uuid" ) String uuid, @JsonProperty( "title" ) String title,
+			@JsonProperty( "link" ) String link, @JsonProperty( "providerPublishEpochSecond" ) long providerPublishEpochSecond,
+			@JsonProperty( "publisher" ) String publisher, @JsonProperty( "relatedTickers" ) List<String> relatedTickers ) {
+		super( );
+		this.uuid = uuid;
+		this.title = title;
+		this.link = link;
+		this.providerPublishEpochSecond = providerPublishEpochSecond;
+		this.publisher = publisher;
+		this.relatedTickers = relatedTickers == null ? List.of( ) : relatedTickers;
+	}
+
+	public String getUuid( ) {
+		return uuid;
+	}
+
+	public String getTitle( ) {
+		return title;
+	}
+
+	public String getLink( ) {
+		return link;
+	}
+
+	public long getProviderPublishEpochSecond( ) {
+		return providerPublishEpochSecond;
+	}
+
+	@JsonIgnore
+	public ZonedDateTime getProviderPublishTime( ) {
+		return ZonedDateTime.ofInstant( Instant.ofEpochSecond( providerPublishEpochSecond ), ZoneId.of( "GMT" ) );
+	}
+
+	public String getPublisher( ) {
+		return publisher;
+	}
+
+	public List<String> getRelatedTickers( ) {
+		return relatedTickers;
+	}
+
+	@Override
+	public String toString( ) {
+		return "Article [uuid=" + uuid + ", title=" + title + ", link=" + link + ", providerPublishTime="
+				+ getProviderPublishTime( ) + ", publisher=" + publisher + ", relatedTickers=" + relatedTickers + "]";
+	}
+
+}
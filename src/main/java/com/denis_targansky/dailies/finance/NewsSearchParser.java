@@ -0,0 +1,142 @@
+package com.denis_targansky.dailies.finance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streams the articles out of a Yahoo Finance search response. Only the fields of the {@code news} array that
+ * {@link Article} holds are read, and articles rejected by the ticker filters are never created.
+ */
+public final class NewsSearchParser {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final JsonFactory jsonFactory = new JsonFactory( );
+
+	private NewsSearchParser( ) {
+	}
+
+	/**
+	 * Parses and closes {@code in}.
+	 *
+	 * @param ticker        only articles related to this ticker are returned
+	 * @param onlyExclusive whether articles related to other tickers as well should be filtered out
+	 */
+	public static List<Article> parse( InputStream in, String ticker, boolean onlyExclusive ) throws IOException {
+		return parse( in, ticker, onlyExclusive, uuid -> false );
+	}
+
+	/**
+	 * Parses and closes {@code in}, skipping the articles whose uuid is rejected before they are created.
+	 *
+	 * @param seen tells the uuids of the articles to skip, typically the ones already published
+	 */
+	public static List<Article> parse( InputStream in, String ticker, boolean onlyExclusive, Predicate<String> seen )
+			throws IOException {
+		List<Article> articles = new ArrayList<>( );
+		try ( JsonParser parser = jsonFactory.createParser( in ) ) {
+			if ( parser.nextToken( ) != JsonToken.START_OBJECT ) {
+				throw new JsonParseException( parser, "Search response is not a JSON object" );
+			}
+
+			while ( parser.nextToken( ) == JsonToken.FIELD_NAME ) {
+				String field = parser.getCurrentName( );
+				JsonToken value = parser.nextToken( );
+				if ( !"news".equals( field ) || value != JsonToken.START_ARRAY ) {
+					parser.skipChildren( );
+					continue;
+				}
+
+				for ( JsonToken token = parser.nextToken( ); token != JsonToken.END_ARRAY; token = parser.nextToken( ) ) {
+					if ( token != JsonToken.START_OBJECT ) {
+						parser.skipChildren( );
+						continue;
+					}
+
+					Article article = parseArticle( parser, ticker, onlyExclusive, seen );
+					if ( article != null ) {
+						articles.add( article );
+					}
+				}
+			}
+		}
+
+		return articles;
+	}
+
+	private static Article parseArticle( JsonParser parser, String ticker, boolean onlyExclusive, Predicate<String> seen )
+			throws IOException {
+		String uuid = null;
+		String title = null;
+		String link = null;
+		long providerPublishTime = 0;
+		String publisher = null;
+		List<String> relatedTickers = List.of( );
+		while ( parser.nextToken( ) == JsonToken.FIELD_NAME ) {
+			String field = parser.getCurrentName( );
+			JsonToken value = parser.nextToken( );
+			switch ( field ) {
+				case "uuid" -> uuid = parser.getValueAsString( );
+				case "title" -> title = parser.getValueAsString( );
+				case "link" -> link = parser.getValueAsString( );
+				case "providerPublishTime" -> providerPublishTime = parser.getValueAsLong( );
+				case "publisher" -> publisher = parser.getValueAsString( );
+				case "relatedTickers" -> relatedTickers = value == JsonToken.START_ARRAY ? parseTickers( parser ) : List.of( );
+				default -> parser.skipChildren( );
+			}
+		}
+
+		if ( relatedTickers.isEmpty( ) ) {
+			ms.error( "Could not parse related tickers on article {} found for ticker {}", uuid, ticker );
+			return null;
+		}
+
+		if ( !relatedTickers.contains( ticker ) ) {
+			ms.debug( "Filtering out unrelated article {} for ticker {}", uuid, ticker );
+			return null;
+		}
+
+		if ( onlyExclusive && relatedTickers.size( ) > 1 ) {
+			ms.debug( "Filtering out non-exclusive article {} for ticker {}", uuid, ticker );
+			return null;
+		}
+
+		if ( uuid != null && seen.test( uuid ) ) {
+			ms.debug( "Filtering out already seen article {} for ticker {}", uuid, ticker );
+			return null;
+		}
+
+		return new Article( uuid, title, link, providerPublishTime, publisher, relatedTickers );
+	}
+
+	private static List<String> parseTickers( JsonParser parser ) throws IOException {
+		List<String> tickers = new ArrayList<>( 2 );
+		boolean ended = false;
+		for ( JsonToken token = parser.nextToken( ); token != JsonToken.END_ARRAY; token = parser.nextToken( ) ) {
+			String ticker = token.isScalarValue( ) ? parser.getValueAsString( ) : null;
+			if ( ticker == null || ticker.isEmpty( ) ) {
+				ended = true;
+			}
+
+			if ( ended ) {
+				parser.skipChildren( );
+			} else {
+				tickers.add( ticker );
+			}
+		}
+
+		return tickers;
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.denis_targansky.dailies.finance;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import yahoofinance.Stock;
+import yahoofinance.quotes.stock.StockQuote;
+import yahoofinance.quotes.stock.StockStats;
+
+/**
+ * The parts of a Yahoo Finance quote and its statistics that the tasks use, detached from the library's objects so it
+ * can be cached and stored.
+ */
+public final class QuoteSnapshot {
+
+	private final String ticker;
+
+	private final String name;
+
+	private final BigDecimal price;
+
+	private final BigDecimal marketCap;
+
+	private final BigDecimal yearLow;
+
+	private final BigDecimal yearHigh;
+
+	private final Long averageVolume;
+
+	@JsonCreator
+	public QuoteSnapshot( @JsonProperty( "ticker" ) String ticker, @JsonProperty( "name" ) String name,
+			@JsonProperty( "price" ) BigDecimal price, @JsonProperty( "marketCap" ) BigDecimal marketCap,
+			@JsonProperty( "yearLow" ) BigDecimal yearLow, @JsonProperty( "yearHigh" ) BigDecimal yearHigh,
+			@JsonProperty( "averageVolume" ) Long averageVolume ) {
+		super( );
+		this.ticker = ticker;
+		this.name = name;
+		this.price = price;
+		this.marketCap = marketCap;
+		this.yearLow = yearLow;
+		this.yearHigh = yearHigh;
+		this.averageVolume = averageVolume;
+	}
+
+	public static QuoteSnapshot of( String ticker, Stock stock ) {
+		StockQuote quote = stock.getQuote( );
+		StockStats stats = stock.getStats( );
+		return new QuoteSnapshot( ticker, stock.getName( ), quote.getPrice( ), stats == null ? null : stats.getMarketCap( ),
+				quote.getYearLow( ), quote.getYearHigh( ), quote.getAvgVolume( ) );
+	}
+
+	public String getTicker( ) {
+		return ticker;
+	}
+
+	public String getName( ) {
+		return name;
+	}
+
+	public BigDecimal getPrice( ) {
+		return price;
+	}
+
+	public BigDecimal getMarketCap( ) {
+		return marketCap;
+	}
+
+	public BigDecimal getYearLow( ) {
+		return yearLow;
+	}
+
+	public BigDecimal getYearHigh( ) {
+		return yearHigh;
+	}
+
+	public Long getAverageVolume( ) {
+		return averageVolume;
+	}
+
+	@Override
+	public String toString( ) {
+		return "QuoteSnapshot [ticker=" + ticker + ", name=" + name + ", price=" + price + ", marketCap=" + marketCap
+				+ ", yearLow=" + yearLow + ", yearHigh=" + yearHigh + ", averageVolume=" + averageVolume + "]";
+	}
+
+}
@@ -0,0 +1,278 @@
+package com.denis_targansky.dailies.finance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Remembers which articles were already published for which ticker, in a fixed amount of memory. The articles are
+ * added to a ring of Bloom filters: the newest generation takes the additions, and once it is older than its share of
+ * the maximum age, or holds its capacity, the oldest generation is cleared and takes its place. An article is thus
+ * remembered for at least the maximum age unless more than the capacity of a generation is added in that time, and
+ * false positives stay below {@link #FALSE_POSITIVE_RATE} per generation.
+ */
+public final class SeenArticleFilter {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final int MAGIC = 0x53414631;
+
+	private static final int GENERATIONS = 4;
+
+	private static final double FALSE_POSITIVE_RATE = 0.001;
+
+	private static final Map<Path, SeenArticleFilter> sharedFilters = new ConcurrentHashMap<>( );
+
+	private final Path snapshotFile;
+
+	private final int capacity;
+
+	private final long generationMillis;
+
+	private final int bitCount;
+
+	private final int hashCount;
+
+	private final long[][] bits;
+
+	private final long[] generationStarts = new long[GENERATIONS];
+
+	private final int[] generationCounts = new int[GENERATIONS];
+
+	private int current;
+
+	private boolean dirty;
+
+	SeenArticleFilter( Path snapshotFile, int capacity, Duration maxAge ) {
+		this.snapshotFile = snapshotFile;
+		this.capacity = capacity;
+		generationMillis = getGenerationMillis( maxAge );
+		double bitsPerArticle = -Math.log( FALSE_POSITIVE_RATE ) / ( Math.log( 2 ) * Math.log( 2 ) );
+		bitCount = ( int ) Math.min( Integer.MAX_VALUE - 63, ( long ) Math.ceil( capacity * bitsPerArticle ) + 63 ) / 64 * 64;
+		hashCount = Math.max( 1, ( int ) Math.round( bitsPerArticle * Math.log( 2 ) ) );
+		bits = new long[GENERATIONS][bitCount / 64];
+		generationStarts[0] = System.currentTimeMillis( );
+		load( );
+	}
+
+	/**
+	 * @return the filter snapshotted to {@code snapshotFile}, loading it on first use; a filter loaded with other
+	 *         settings is saved and loaded again with these, so reloaded settings apply
+	 * @param capacity how many articles a generation holds before it is rotated early
+	 * @param maxAge   how long an article is remembered at least
+	 */
+	public static SeenArticleFilter shared( Path snapshotFile, int capacity, Duration maxAge ) {
+		return sharedFilters.compute( snapshotFile.toAbsolutePath( ).normalize( ), ( file, filter ) -> {
+			if ( filter != null ) {
+				if ( filter.capacity == capacity && filter.generationMillis == getGenerationMillis( maxAge ) ) {
+					return filter;
+				}
+				try {
+					filter.save( );
+				} catch ( IOException e ) {
+					ms.error( "Could not save seen articles to " + file, e );
+				}
+			}
+			return new SeenArticleFilter( file, capacity, maxAge );
+		} );
+	}
+
+	public static void closeAll( ) {
+		synchronized ( sharedFilters ) {
+			for ( SeenArticleFilter filter : sharedFilters.values( ) ) {
+				try {
+					filter.save( );
+				} catch ( IOException e ) {
+					ms.error( "Could not save seen articles to " + filter.snapshotFile, e );
+				}
+			}
+			sharedFilters.clear( );
+		}
+	}
+
+	/**
+	 * @return whether the article was probably published for the ticker already; never false for an article added
+	 *         within the maximum age
+	 */
+	public boolean contains( String ticker, String uuid ) {
+		return contains( ticker, uuid, System.currentTimeMillis( ) );
+	}
+
+	public void add( String ticker, String uuid ) {
+		add( ticker, uuid, System.currentTimeMillis( ) );
+	}
+
+	synchronized boolean contains( String ticker, String uuid, long nowMillis ) {
+		rotate( nowMillis );
+		long hash = hash( ticker, uuid );
+		for ( long[] generation : bits ) {
+			if ( contains( generation, hash ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	synchronized void add( String ticker, String uuid, long nowMillis ) {
+		rotate( nowMillis );
+		long hash = hash( ticker, uuid );
+		if ( contains( bits[current], hash ) ) {
+			return;
+		}
+		if ( generationCounts[current] >= capacity ) {
+			nextGeneration( nowMillis );
+		}
+
+		int h1 = ( int ) hash;
+		int h2 = ( int ) ( hash >>> 32 );
+		for ( int index = 0; index < hashCount; index++ ) {
+			int bit = Math.floorMod( h1 + index * h2, bitCount );
+			bits[current][bit >>> 6] |= 1L << bit;
+		}
+		generationCounts[current]++;
+		dirty = true;
+	}
+
+	/**
+	 * Writes the filter to its snapshot file if it changed, replacing the previous snapshot atomically.
+	 */
+	public synchronized void save( ) throws IOException {
+		if ( !dirty ) {
+			return;
+		}
+
+		Files.createDirectories( snapshotFile.toAbsolutePath( ).getParent( ) );
+		Path tempFile = Files.createTempFile( snapshotFile.toAbsolutePath( ).getParent( ), null, ".tmp" );
+		try {
+			try ( DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream( Files.newOutputStream( tempFile ), 1 << 16 ) ) ) {
+				out.writeInt( MAGIC );
+				out.writeInt( bitCount );
+				out.writeInt( hashCount );
+				out.writeInt( GENERATIONS );
+				out.writeInt( current );
+				for ( int generation = 0; generation < GENERATIONS; generation++ ) {
+					out.writeLong( generationStarts[generation] );
+					out.writeInt( generationCounts[generation] );
+				}
+				for ( long[] generation : bits ) {
+					for ( long word : generation ) {
+						out.writeLong( word );
+					}
+				}
+			}
+			try ( FileChannel channel = FileChannel.open( tempFile, StandardOpenOption.WRITE ) ) {
+				channel.force( true );
+			}
+			Files.move( tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			dirty = false;
+		} finally {
+			Files.deleteIfExists( tempFile );
+		}
+	}
+
+	private void load( ) {
+		try ( DataInputStream in = new DataInputStream(
+				new BufferedInputStream( Files.newInputStream( snapshotFile ), 1 << 16 ) ) ) {
+			if ( in.readInt( ) != MAGIC || in.readInt( ) != bitCount || in.readInt( ) != hashCount
+					|| in.readInt( ) != GENERATIONS ) {
+				ms.warn( "Ignoring seen articles in {} as they were saved with a different capacity", snapshotFile );
+				return;
+			}
+
+			int savedCurrent = in.readInt( );
+			long[] savedStarts = new long[GENERATIONS];
+			int[] savedCounts = new int[GENERATIONS];
+			for ( int generation = 0; generation < GENERATIONS; generation++ ) {
+				savedStarts[generation] = in.readLong( );
+				savedCounts[generation] = in.readInt( );
+			}
+			for ( long[] generation : bits ) {
+				for ( int word = 0; word < generation.length; word++ ) {
+					generation[word] = in.readLong( );
+				}
+			}
+			current = Math.floorMod( savedCurrent, GENERATIONS );
+			System.arraycopy( savedStarts, 0, generationStarts, 0, GENERATIONS );
+			System.arraycopy( savedCounts, 0, generationCounts, 0, GENERATIONS );
+		} catch ( NoSuchFileException e ) {
+			// Nothing was seen yet
+		} catch ( IOException e ) {
+			ms.error( "Could not load seen articles from " + snapshotFile + ", starting afresh", e );
+			for ( long[] generation : bits ) {
+				Arrays.fill( generation, 0 );
+			}
+		}
+	}
+
+	private static long getGenerationMillis( Duration maxAge ) {
+		return Math.max( 1, maxAge.toMillis( ) / ( GENERATIONS - 1 ) );
+	}
+
+	private void rotate( long nowMillis ) {
+		int rotations = 0;
+		while ( nowMillis - generationStarts[current] >= generationMillis ) {
+			if ( ++rotations > GENERATIONS ) {
+				// Every generation expired during a long pause, start counting again from now
+				generationStarts[current] = nowMillis;
+				return;
+			}
+			nextGeneration( generationStarts[current] + generationMillis );
+		}
+	}
+
+	private void nextGeneration( long startMillis ) {
+		current = ( current + 1 ) % GENERATIONS;
+		Arrays.fill( bits[current], 0 );
+		generationStarts[current] = startMillis;
+		generationCounts[current] = 0;
+		dirty = true;
+	}
+
+	private boolean contains( long[] generation, long hash ) {
+		int h1 = ( int ) hash;
+		int h2 = ( int ) ( hash >>> 32 );
+		for ( int index = 0; index < hashCount; index++ ) {
+			int bit = Math.floorMod( h1 + index * h2, bitCount );
+			if ( ( generation[bit >>> 6] & 1L << bit ) == 0 ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * FNV-1a over the ticker and uuid, followed by the MurmurHash3 finalizer to spread the bits over both halves.
+	 */
+	private static long hash( String ticker, String uuid ) {
+		long hash = 0xcbf29ce484222325L;
+		for ( int index = 0; index < ticker.length( ); index++ ) {
+			hash = ( hash ^ ticker.charAt( index ) ) * 0x100000001b3L;
+		}
+		hash = ( hash ^ ':' ) * 0x100000001b3L;
+		for ( int index = 0; index < uuid.length( ); index++ ) {
+			hash = ( hash ^ uuid.charAt( index ) ) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		return hash ^ hash >>> 33;
+	}
+
+}
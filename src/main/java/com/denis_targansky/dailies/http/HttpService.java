@@ -0,0 +1,250 @@
+package com.denis_targansky.dailies.http;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import com.denis_targansky.dailies.metrics.TaskMetrics;
+
+/**
+ * The HTTP client shared by every task. Connections are pooled and kept alive by the underlying {@link HttpClient}
+ * (negotiating HTTP/2 where the server supports it), responses are transparently un-gzipped, requests are paced by
+ * the per-host {@link RateLimiter}, and the number of requests in progress against the same host is capped.
+ */
+public final class HttpService {
+
+	private static final int MAX_CONCURRENT_REQUESTS_PER_HOST = 6;
+
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds( 10 );
+
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds( 30 );
+
+	private static final HttpService shared = new HttpService( MAX_CONCURRENT_REQUESTS_PER_HOST );
+
+	private final HttpClient client;
+
+	private final int maxConcurrentRequestsPerHost;
+
+	private final Map<String, HostPermits> hostPermits = new ConcurrentHashMap<>( );
+
+	private final RateLimiter rateLimiter = new RateLimiter( );
+
+	private HttpService( int maxConcurrentRequestsPerHost ) {
+		this.maxConcurrentRequestsPerHost = maxConcurrentRequestsPerHost;
+		this.client = HttpClient.newBuilder( ).version( HttpClient.Version.HTTP_2 )
+				.followRedirects( HttpClient.Redirect.NORMAL ).connectTimeout( CONNECT_TIMEOUT ).build( );
+	}
+
+	public static HttpService getShared( ) {
+		return shared;
+	}
+
+	public HttpRequest.Builder newRequest( String url ) {
+		return HttpRequest.newBuilder( URI.create( url ) ).timeout( REQUEST_TIMEOUT ).header( "Accept-Encoding", "gzip" );
+	}
+
+	public Response send( HttpRequest request, RateLimitPolicy policy ) throws IOException {
+		try {
+			return sendAsync( request, policy ).get( );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			throw new InterruptedIOException( "Interrupted while requesting " + request.uri( ) );
+		} catch ( ExecutionException e ) {
+			throw asIOException( e.getCause( ) );
+		}
+	}
+
+	/**
+	 * Sends the request once the host's rate limit allows it and fewer than the allowed number of requests are in
+	 * progress against the host. Throttled requests are retried according to {@code policy}. The host slot is held
+	 * until the returned response is closed.
+	 */
+	public CompletableFuture<Response> sendAsync( HttpRequest request, RateLimitPolicy policy ) {
+		return sendAsync( request, policy, 0 );
+	}
+
+	private CompletableFuture<Response> sendAsync( HttpRequest request, RateLimitPolicy policy, int attempt ) {
+		String host = request.uri( ).getHost( );
+		Duration delay = rateLimiter.reserve( host, policy );
+		Executor delayedExecutor = CompletableFuture.delayedExecutor( delay.toNanos( ), TimeUnit.NANOSECONDS );
+		HostPermits permits = hostPermits.computeIfAbsent( host, ignored -> new HostPermits( maxConcurrentRequestsPerHost ) );
+		long[] sendStartNanos = new long[1];
+		return CompletableFuture.supplyAsync( permits::acquire, delayedExecutor ).thenCompose( acquired -> acquired )
+				.thenCompose( ignored -> {
+					sendStartNanos[0] = System.nanoTime( );
+					return client.sendAsync( request, BodyHandlers.ofInputStream( ) );
+				} ).handle( ( response, e ) -> {
+					TaskMetrics.recordHttpRequest( host, response == null ? 0 : response.statusCode( ),
+							System.nanoTime( ) - sendStartNanos[0] );
+					if ( e != null ) {
+						permits.release( );
+						throw e instanceof CompletionException completionException ? completionException
+								: new CompletionException( e );
+					}
+
+					try {
+						return new Response( response, permits );
+					} catch ( IOException ioException ) {
+						permits.release( );
+						throw new CompletionException( ioException );
+					}
+				} ).thenCompose( response -> {
+					if ( !RateLimiter.isThrottled( response.statusCode( ) ) ) {
+						rateLimiter.onSuccess( host, policy );
+						return CompletableFuture.completedFuture( response );
+					}
+
+					rateLimiter.onThrottled( host, policy, response.headers( ).firstValue( "Retry-After" ) );
+					if ( attempt >= policy.getMaxRetries( ) ) {
+						return CompletableFuture.completedFuture( response );
+					}
+
+					closeQuietly( response );
+					return sendAsync( request, policy, attempt + 1 );
+				} );
+	}
+
+	public RateLimiter getRateLimiter( ) {
+		return rateLimiter;
+	}
+
+	private static void closeQuietly( Response response ) {
+		try {
+			response.close( );
+		} catch ( IOException e ) {
+			// The body of a throttled response is of no interest
+		}
+	}
+
+	public static IOException asIOException( Throwable e ) {
+		if ( e instanceof CompletionException && e.getCause( ) != null ) {
+			e = e.getCause( );
+		}
+
+		if ( e instanceof IOException ioException ) {
+			return ioException;
+		}
+
+		return new IOException( e );
+	}
+
+	/**
+	 * A received response whose body has not been read yet. Must be closed to free the host slot and the connection.
+	 */
+	public static final class Response implements Closeable {
+
+		private final HttpResponse<InputStream> response;
+
+		private final InputStream body;
+
+		private Response( HttpResponse<InputStream> response, HostPermits permits ) throws IOException {
+			this.response = response;
+			InputStream releasingBody = new FilterInputStream( response.body( ) ) {
+
+				private final AtomicBoolean closed = new AtomicBoolean( );
+
+				@Override
+				public void close( ) throws IOException {
+					if ( closed.compareAndSet( false, true ) ) {
+						try {
+							super.close( );
+						} finally {
+							permits.release( );
+						}
+					}
+				}
+			};
+
+			boolean gzipped = response.headers( ).firstValue( "Content-Encoding" ).filter( "gzip"::equalsIgnoreCase )
+					.isPresent( );
+			try {
+				this.body = gzipped ? new GZIPInputStream( releasingBody ) : releasingBody;
+			} catch ( IOException e ) {
+				releasingBody.close( );
+				throw e;
+			}
+		}
+
+		public int statusCode( ) {
+			return response.statusCode( );
+		}
+
+		public HttpHeaders headers( ) {
+			return response.headers( );
+		}
+
+		public URI uri( ) {
+			return response.uri( );
+		}
+
+		/**
+		 * @return the decoded body, which is closed together with this response
+		 */
+		public InputStream body( ) {
+			return body;
+		}
+
+		@Override
+		public void close( ) throws IOException {
+			body.close( );
+		}
+
+	}
+
+	private static final class HostPermits {
+
+		private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>( );
+
+		private int available;
+
+		private HostPermits( int permits ) {
+			this.available = permits;
+		}
+
+		private synchronized CompletableFuture<Void> acquire( ) {
+			if ( available > 0 ) {
+				available--;
+				return CompletableFuture.completedFuture( null );
+			}
+
+			CompletableFuture<Void> waiter = new CompletableFuture<>( );
+			waiters.add( waiter );
+			return waiter;
+		}
+
+		private void release( ) {
+			CompletableFuture<Void> waiter;
+			synchronized ( this ) {
+				waiter = waiters.poll( );
+				if ( waiter == null ) {
+					available++;
+					return;
+				}
+			}
+
+			waiter.completeAsync( ( ) -> null );
+		}
+
+	}
+
+}
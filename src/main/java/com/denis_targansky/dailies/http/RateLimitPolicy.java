@@ -0,0 +1,65 @@
+package com.denis_targansky.dailies.http;
+
+import java.time.Duration;
+
+/**
+ * How hard a task may push the hosts it talks to. The request rate is the ceiling the adaptive limiter climbs back
+ * up to after being throttled.
+ */
+public final class RateLimitPolicy {
+
+	public static final String PROPERTY_REQUESTS_PER_SECOND = "rate-limit.requests-per-second";
+
+	public static final String PROPERTY_BURST = "rate-limit.burst";
+
+	public static final String PROPERTY_MAX_RETRIES = "rate-limit.max-retries";
+
+	public static final String PROPERTY_MAX_BACKOFF_SECONDS = "rate-limit.max-backoff-seconds";
+
+	public static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+
+	public static final int DEFAULT_BURST = 10;
+
+	public static final int DEFAULT_MAX_RETRIES = 5;
+
+	public static final int DEFAULT_MAX_BACKOFF_SECONDS = 120;
+
+	private final double requestsPerSecond;
+
+	private final int burst;
+
+	private final int maxRetries;
+
+	private final Duration maxBackoff;
+
+	public RateLimitPolicy( double requestsPerSecond, int burst, int maxRetries, Duration maxBackoff ) {
+		super( );
+		this.requestsPerSecond = requestsPerSecond;
+		this.burst = burst;
+		this.maxRetries = maxRetries;
+		this.maxBackoff = maxBackoff;
+	}
+
+	public double getRequestsPerSecond( ) {
+		return requestsPerSecond;
+	}
+
+	public int getBurst( ) {
+		return burst;
+	}
+
+	public int getMaxRetries( ) {
+		return maxRetries;
+	}
+
+	public Duration getMaxBackoff( ) {
+		return maxBackoff;
+	}
+
+	@Override
+	public String toString( ) {
+		return "RateLimitPolicy [requestsPerSecond=" + requestsPerSecond + ", burst=" + burst + ", maxRetries="
+				+ maxRetries + ", maxBackoff=" + maxBackoff + "]";
+	}
+
+}
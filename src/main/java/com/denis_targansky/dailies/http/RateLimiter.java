@@ -0,0 +1,182 @@
+package com.denis_targansky.dailies.http;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Token buckets keyed by host. Each bucket starts at the policy's rate, halves it whenever the host throttles a
+ * request (429 or 503) and then climbs back towards the policy's rate in small steps on every successful request, so
+ * the sustained rate settles just under what the host tolerates. Throttled hosts are also blocked for the
+ * {@code Retry-After} period, or an exponential backoff with jitter when the host gives none.
+ * <p>
+ * A bucket follows the policy of its latest caller, so tasks sharing a host share its budget and reloaded settings
+ * apply from the next request on.
+ */
+public final class RateLimiter {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	public static final double MIN_REQUESTS_PER_SECOND = 0.05;
+
+	private static final double RECOVERY_FRACTION = 0.05;
+
+	private static final Duration BASE_BACKOFF = Duration.ofSeconds( 1 );
+
+	private final Map<String, Bucket> buckets = new ConcurrentHashMap<>( );
+
+	/**
+	 * Reserves a request against {@code host}.
+	 *
+	 * @return how long the caller has to wait before sending it
+	 */
+	public Duration reserve( String host, RateLimitPolicy policy ) {
+		return Duration.ofNanos( getBucket( host, policy ).reserve( policy, System.nanoTime( ) ) );
+	}
+
+	public void acquire( String host, RateLimitPolicy policy ) throws InterruptedIOException {
+		long waitNanos = reserve( host, policy ).toNanos( );
+		if ( waitNanos <= 0 ) {
+			return;
+		}
+
+		try {
+			TimeUnit.NANOSECONDS.sleep( waitNanos );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			throw new InterruptedIOException( "Interrupted while waiting to send a request to " + host );
+		}
+	}
+
+	public void onSuccess( String host, RateLimitPolicy policy ) {
+		getBucket( host, policy ).onSuccess( policy );
+	}
+
+	/**
+	 * @param retryAfter the value of the response's {@code Retry-After} header, if any
+	 * @return how long the host is blocked for
+	 */
+	public Duration onThrottled( String host, RateLimitPolicy policy, Optional<String> retryAfter ) {
+		Duration backoff = getBucket( host, policy ).onThrottled( policy, System.nanoTime( ),
+				parseRetryAfter( retryAfter ) );
+		ms.warn( "Host {} is throttling requests, backing off for {}", host, backoff );
+		return backoff;
+	}
+
+	public static boolean isThrottled( int statusCode ) {
+		return statusCode == 429 || statusCode == 503;
+	}
+
+	private Bucket getBucket( String host, RateLimitPolicy policy ) {
+		return buckets.computeIfAbsent( host, ignored -> new Bucket( policy, System.nanoTime( ) ) );
+	}
+
+	static Duration parseRetryAfter( Optional<String> retryAfter ) {
+		if ( retryAfter.isEmpty( ) || retryAfter.get( ).isBlank( ) ) {
+			return null;
+		}
+
+		String value = retryAfter.get( ).trim( );
+		try {
+			return Duration.ofSeconds( Math.max( 0, Long.parseLong( value ) ) );
+		} catch ( NumberFormatException e ) {
+			try {
+				Duration untilDate = Duration.between( ZonedDateTime.now( ),
+						ZonedDateTime.parse( value, DateTimeFormatter.RFC_1123_DATE_TIME ) );
+				return untilDate.isNegative( ) ? Duration.ZERO : untilDate;
+			} catch ( DateTimeParseException dateException ) {
+				ms.debug( "Ignoring unparseable Retry-After value '{}'", value );
+				return null;
+			}
+		}
+	}
+
+	private static final class Bucket {
+
+		private RateLimitPolicy policy;
+
+		private double requestsPerSecond;
+
+		private double tokens;
+
+		private long lastRefillNanos;
+
+		private long blockedUntilNanos;
+
+		private int consecutiveThrottles;
+
+		private Bucket( RateLimitPolicy policy, long nowNanos ) {
+			this.policy = policy;
+			this.requestsPerSecond = policy.getRequestsPerSecond( );
+			this.tokens = policy.getBurst( );
+			this.lastRefillNanos = nowNanos;
+			this.blockedUntilNanos = nowNanos;
+		}
+
+		private synchronized long reserve( RateLimitPolicy policy, long nowNanos ) {
+			usePolicy( policy );
+			refill( nowNanos );
+			tokens--;
+			long waitNanos = tokens >= 0 ? 0 : ( long ) ( -tokens / requestsPerSecond * 1e9 );
+			return Math.max( waitNanos, blockedUntilNanos - nowNanos );
+		}
+
+		private synchronized void onSuccess( RateLimitPolicy policy ) {
+			usePolicy( policy );
+			consecutiveThrottles = 0;
+			requestsPerSecond = Math.min( policy.getRequestsPerSecond( ),
+					requestsPerSecond + policy.getRequestsPerSecond( ) * RECOVERY_FRACTION );
+		}
+
+		private synchronized Duration onThrottled( RateLimitPolicy policy, long nowNanos, Duration retryAfter ) {
+			usePolicy( policy );
+			refill( nowNanos );
+			consecutiveThrottles++;
+			requestsPerSecond = Math.max( MIN_REQUESTS_PER_SECOND, requestsPerSecond / 2 );
+			tokens = Math.min( tokens, 0 );
+
+			Duration backoff = retryAfter;
+			if ( backoff == null ) {
+				long exponentialMillis = BASE_BACKOFF.toMillis( ) << Math.min( consecutiveThrottles - 1, 20 );
+				long cappedMillis = Math.min( exponentialMillis, policy.getMaxBackoff( ).toMillis( ) );
+				backoff = Duration.ofMillis( ( long ) ( cappedMillis * ThreadLocalRandom.current( ).nextDouble( 0.5, 1.0 ) ) );
+			}
+
+			blockedUntilNanos = Math.max( blockedUntilNanos, nowNanos + backoff.toNanos( ) );
+			return Duration.ofNanos( blockedUntilNanos - nowNanos );
+		}
+
+		/**
+		 * A lower rate or burst applies at once; a higher rate is reached by the usual recovery after successes, so a
+		 * host that was throttling is not hit at full speed right away.
+		 */
+		private void usePolicy( RateLimitPolicy newPolicy ) {
+			if ( newPolicy == policy ) {
+				return;
+			}
+			policy = newPolicy;
+			requestsPerSecond = Math.max( MIN_REQUESTS_PER_SECOND,
+					Math.min( requestsPerSecond, newPolicy.getRequestsPerSecond( ) ) );
+			tokens = Math.min( tokens, newPolicy.getBurst( ) );
+		}
+
+		private void refill( long nowNanos ) {
+			if ( nowNanos > lastRefillNanos ) {
+				tokens = Math.min( policy.getBurst( ), tokens + ( nowNanos - lastRefillNanos ) / 1e9 * requestsPerSecond );
+				lastRefillNanos = nowNanos;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.denis_targansky.dailies.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.denis_targansky.dailies.cache.TtlCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the metrics of one task into Micrometer's global registry, which the web application exports. Meters are
+ * looked up once per step name, so timing an inner loop only costs a map lookup and a clock read.
+ */
+public final class TaskMetrics {
+
+	public static final String TASK_DURATION = "dailies.task.duration";
+
+	public static final String STEP_DURATION = "dailies.task.step.duration";
+
+	public static final String BYTES_WRITTEN = "dailies.task.bytes.written";
+
+	public static final String ERRORS = "dailies.task.errors";
+
+	public static final String HTTP_CLIENT_DURATION = "dailies.http.client.duration";
+
+	public static final String CACHE_REQUESTS = "dailies.cache.requests";
+
+	public static final String CACHE_EVICTIONS = "dailies.cache.evictions";
+
+	public static final String CACHE_SIZE = "dailies.cache.size";
+
+	/** The hosts past this many are recorded as {@value #OTHER_HOST}, as every host adds a histogram. */
+	static final int MAX_HTTP_HOSTS = 20;
+
+	static final String OTHER_HOST = "other";
+
+	private static final MeterRegistry registry = Metrics.globalRegistry;
+
+	private static final Set<String> httpHosts = ConcurrentHashMap.newKeySet( );
+
+	private final String taskName;
+
+	private final Map<String, Timer> stepTimers = new ConcurrentHashMap<>( );
+
+	private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>( );
+
+	private final DistributionSummary bytesWritten;
+
+	public TaskMetrics( String taskName ) {
+		this.taskName = taskName;
+		this.bytesWritten = DistributionSummary.builder( BYTES_WRITTEN ).baseUnit( "bytes" ).tag( "task", taskName )
+				.publishPercentileHistogram( ).register( registry );
+	}
+
+	public long startStep( ) {
+		return System.nanoTime( );
+	}
+
+	public void endStep( String step, long startNanos ) {
+		getStepTimer( step ).record( System.nanoTime( ) - startNanos, TimeUnit.NANOSECONDS );
+	}
+
+	public <T> T timeStep( String step, Supplier<T> supplier ) {
+		long startNanos = startStep( );
+		try {
+			return supplier.get( );
+		} finally {
+			endStep( step, startNanos );
+		}
+	}
+
+	public void recordTaskRun( long durationNanos, boolean succeeded ) {
+		Timer.builder( TASK_DURATION ).tag( "task", taskName ).tag( "outcome", succeeded ? "success" : "error" )
+				.publishPercentileHistogram( ).register( registry ).record( durationNanos, TimeUnit.NANOSECONDS );
+	}
+
+	public void recordBytesWritten( long bytes ) {
+		bytesWritten.record( bytes );
+	}
+
+	public void countError( String step ) {
+		errorCounters.computeIfAbsent( step,
+				ignored -> Counter.builder( ERRORS ).tag( "task", taskName ).tag( "step", step ).register( registry ) )
+				.increment( );
+	}
+
+	private Timer getStepTimer( String step ) {
+		return stepTimers.computeIfAbsent( step, ignored -> Timer.builder( STEP_DURATION ).tag( "task", taskName )
+				.tag( "step", step ).publishPercentileHistogram( ).register( registry ) );
+	}
+
+	/**
+	 * Records a request by its status class, e.g. 2xx, or "none" if no response came back. Only the first
+	 * {@value #MAX_HTTP_HOSTS} hosts get their own series, so scraping many sites cannot grow them without bound.
+	 */
+	public static void recordHttpRequest( String host, int statusCode, long durationNanos ) {
+		Timer.builder( HTTP_CLIENT_DURATION ).tag( "host", getHostTag( host ) )
+				.tag( "status", statusCode == 0 ? "none" : statusCode / 100 + "xx" ).publishPercentileHistogram( )
+				.register( registry ).record( durationNanos, TimeUnit.NANOSECONDS );
+	}
+
+	static String getHostTag( String host ) {
+		if ( host == null ) {
+			return OTHER_HOST;
+		}
+		if ( httpHosts.contains( host ) ) {
+			return host;
+		}
+		synchronized ( httpHosts ) {
+			if ( httpHosts.size( ) < MAX_HTTP_HOSTS ) {
+				httpHosts.add( host );
+				return host;
+			}
+		}
+		return OTHER_HOST;
+	}
+
+	public static void monitorCache( TtlCache<?> cache ) {
+		String name = cache.getName( );
+		FunctionCounter.builder( CACHE_REQUESTS, cache, TtlCache::getMemoryHitCount ).tag( "cache", name )
+				.tag( "result", "memory-hit" ).register( registry );
+		FunctionCounter.builder( CACHE_REQUESTS, cache, TtlCache::getDiskHitCount ).tag( "cache", name )
+				.tag( "result", "disk-hit" ).register( registry );
+		FunctionCounter.builder( CACHE_REQUESTS, cache, TtlCache::getMissCount ).tag( "cache", name )
+				.tag( "result", "miss" ).register( registry );
+		FunctionCounter.builder( CACHE_EVICTIONS, cache, TtlCache::getEvictionCount ).tag( "cache", name )
+				.register( registry );
+		Gauge.builder( CACHE_SIZE, cache, TtlCache::getMemorySize ).tag( "cache", name ).register( registry );
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.denis_targansky.dailies.reports;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.denis_targansky.dailies.finance.Article;
+
+/**
+ * One spreadsheet holding the reports of every ticker of a run, with a row per ticker and a sheet of headlines. Only
+ * the last rows of each sheet are kept in memory, the others are flushed to compressed temporary files until the
+ * workbook is written out in one sequential pass.
+ */
+public final class ConsolidatedReport implements Closeable {
+
+	public static final String FILE_EXTENSION = "xlsx";
+
+	private static final String[] QUOTE_COLUMNS = { "Ticker", "Company name", "Stock price", "Market cap", "52 week low",
+			"52 week high", "Average volume", "Scrape date" };
+
+	private static final String[] HEADLINE_COLUMNS = { "Ticker", "Rank", "Title", "Link" };
+
+	private final SXSSFWorkbook workbook;
+
+	private final SXSSFSheet quotes;
+
+	private final SXSSFSheet headlines;
+
+	private int tickers;
+
+	private int headlineRows;
+
+	public ConsolidatedReport( int rowWindow ) {
+		workbook = new SXSSFWorkbook( rowWindow );
+		workbook.setCompressTempFiles( true );
+		quotes = workbook.createSheet( "Quotes" );
+		headlines = workbook.createSheet( "Headlines" );
+		writeHeader( quotes, QUOTE_COLUMNS );
+		writeHeader( headlines, HEADLINE_COLUMNS );
+	}
+
+	/**
+	 * Adds the rows of a ticker; safe to call from the threads rendering the tickers, in any order.
+	 *
+	 * @throws IOException if rows leaving the window could not be flushed to the temporary files
+	 */
+	public synchronized void add( TickerReport report ) throws IOException {
+		try {
+			addRows( report );
+		} catch ( RuntimeException e ) {
+			// SXSSF wraps the errors of flushing rows
+			if ( e.getCause( ) instanceof IOException cause ) {
+				throw cause;
+			}
+			throw e;
+		}
+		tickers++;
+	}
+
+	private void addRows( TickerReport report ) {
+		Row row = quotes.createRow( tickers + 1 );
+		row.createCell( 0 ).setCellValue( report.getTicker( ) );
+		setText( row, 1, report.getCompanyName( ) );
+		setNumber( row, 2, report.getStockPrice( ) );
+		setNumber( row, 3, report.getMarketCap( ) );
+		setNumber( row, 4, report.getYearLow( ) );
+		setNumber( row, 5, report.getYearHigh( ) );
+		setNumber( row, 6, report.getAverageVolume( ) );
+		setText( row, 7, report.getScrapeDate( ) );
+
+		List<Article> articles = report.getHeadlines( );
+		for ( int index = 0; index < articles.size( ); index++ ) {
+			Row headline = headlines.createRow( ++headlineRows );
+			headline.createCell( 0 ).setCellValue( report.getTicker( ) );
+			headline.createCell( 1 ).setCellValue( index + 1 );
+			setText( headline, 2, articles.get( index ).getTitle( ) );
+			setText( headline, 3, articles.get( index ).getLink( ) );
+		}
+	}
+
+	public synchronized int getTickerCount( ) {
+		return tickers;
+	}
+
+	/**
+	 * Writes the workbook next to the destination first and moves it in place, so readers never see half a file.
+	 *
+	 * @return the size of the written file
+	 */
+	public synchronized long write( Path destination ) throws IOException {
+		Path tempFile = Files.createTempFile( destination.toAbsolutePath( ).getParent( ), null, ".tmp" );
+		try {
+			try ( OutputStream out = new BufferedOutputStream( Files.newOutputStream( tempFile ), 1 << 16 ) ) {
+				workbook.write( out );
+			}
+			long size = Files.size( tempFile );
+			Files.move( tempFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			return size;
+		} finally {
+			Files.deleteIfExists( tempFile );
+		}
+	}
+
+	/**
+	 * Deletes the temporary files of the flushed rows.
+	 */
+	@Override
+	public synchronized void close( ) throws IOException {
+		workbook.dispose( );
+		workbook.close( );
+	}
+
+	private static void writeHeader( SXSSFSheet sheet, String[] values ) {
+		Row row = sheet.createRow( 0 );
+		for ( int column = 0; column < values.length; column++ ) {
+			row.createCell( column ).setCellValue( values[column] );
+		}
+	}
+
+	private static void setText( Row row, int column, String value ) {
+		if ( value != null ) {
+			row.createCell( column ).setCellValue( value );
+		}
+	}
+
+	private static void setNumber( Row row, int column, String value ) {
+		if ( value == null ) {
+			return;
+		}
+		try {
+			row.createCell( column ).setCellValue( Double.parseDouble( value ) );
+		} catch ( NumberFormatException e ) {
+			row.createCell( column ).setCellValue( value );
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.denis_targansky.dailies.reports;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.denis_targansky.dailies.finance.Article;
+
+/**
+ * Writes one row per field, named like the placeholders of the DOCX template.
+ */
+final class CsvReportRenderer extends TextReportRenderer {
+
+	@Override
+	public ReportFormat getFormat( ) {
+		return ReportFormat.CSV;
+	}
+
+	@Override
+	protected void write( TickerReport report, Writer writer ) throws IOException {
+		writer.write( "field,value\n" );
+		writeRow( writer, "company_name", report.getCompanyName( ) );
+		writeRow( writer, "ticker", report.getTicker( ) );
+		writeRow( writer, "stock_price", report.getStockPrice( ) );
+		writeRow( writer, "market_cap", report.getMarketCap( ) );
+		writeRow( writer, "52_week_low", report.getYearLow( ) );
+		writeRow( writer, "52_week_high", report.getYearHigh( ) );
+		writeRow( writer, "average_volume", report.getAverageVolume( ) );
+		writeRow( writer, "scrape_date", report.getScrapeDate( ) );
+		List<Article> headlines = report.getHeadlines( );
+		for ( int index = 0; index < headlines.size( ); index++ ) {
+			writeRow( writer, "headline_title_" + ( index + 1 ), headlines.get( index ).getTitle( ) );
+			writeRow( writer, "headline_link_" + ( index + 1 ), headlines.get( index ).getLink( ) );
+		}
+	}
+
+	private static void writeRow( Writer writer, String field, String value ) throws IOException {
+		writer.write( field );
+		writer.write( ',' );
+		String text = orEmpty( value );
+		if ( text.indexOf( ',' ) < 0 && text.indexOf( '"' ) < 0 && text.indexOf( '\n' ) < 0 && text.indexOf( '\r' ) < 0 ) {
+			writer.write( text );
+		} else {
+			writer.write( '"' + text.replace( "\"", "\"\"" ) + '"' );
+		}
+		writer.write( '\n' );
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.denis_targansky.dailies.reports;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.denis_targansky.dailies.finance.Article;
+import com.denis_targansky.dailies.templates.DocxTemplate;
+import com.denis_targansky.dailies.templates.PlaceholderMatcher;
+import com.denis_targansky.dailies.templates.PlaceholderValues;
+
+/**
+ * Fills the placeholders of a DOCX template. The template is compiled once by {@link DocxTemplate}, so rendering a
+ * ticker only stitches the document part together and zips it straight into the file channel.
+ */
+final class DocxReportRenderer implements ReportRenderer {
+
+	private static final String TERM_COMPANY_NAME = "{company_name}";
+
+	private static final String TERM_TICKER = "{ticker}";
+
+	private static final String TERM_STOCK_PRICE = "{stock_price}";
+
+	private static final String TERM_MARKET_CAP = "{market_cap}";
+
+	private static final String TERM_52_WEEK_LOW = "{52_week_low}";
+
+	private static final String TERM_52_WEEK_HIGH = "{52_week_high}";
+
+	private static final String TERM_AVERAGE_VOLUME = "{average_volume}";
+
+	private static final String TERM_SCRAPE_DATE = "{scrape_date}";
+
+	private static final String TERM_HEADLINE_TITLE = "{headline_title_###}";
+
+	private static final String TERM_HEADLINE_LINK = "{headline_link_###}";
+
+	private static final PlaceholderMatcher PLACEHOLDER_MATCHER = new PlaceholderMatcher(
+			List.of( TERM_COMPANY_NAME, TERM_TICKER, TERM_STOCK_PRICE, TERM_MARKET_CAP, TERM_52_WEEK_LOW, TERM_52_WEEK_HIGH,
+					TERM_AVERAGE_VOLUME, TERM_SCRAPE_DATE, TERM_HEADLINE_TITLE, TERM_HEADLINE_LINK ) );
+
+	private final Path templateFile;
+
+	DocxReportRenderer( Path templateFile ) {
+		this.templateFile = templateFile;
+	}
+
+	@Override
+	public ReportFormat getFormat( ) {
+		return ReportFormat.DOCX;
+	}
+
+	@Override
+	public boolean render( TickerReport report, Path destination ) throws IOException {
+		List<Article> articles = report.getHeadlines( );
+		PlaceholderValues values = ( term, index ) -> switch ( term ) {
+			case TERM_COMPANY_NAME -> report.getCompanyName( );
+			case TERM_TICKER -> report.getTicker( );
+			case TERM_STOCK_PRICE -> report.getStockPrice( );
+			case TERM_MARKET_CAP -> report.getMarketCap( );
+			case TERM_52_WEEK_LOW -> report.getYearLow( );
+			case TERM_52_WEEK_HIGH -> report.getYearHigh( );
+			case TERM_AVERAGE_VOLUME -> report.getAverageVolume( );
+			case TERM_SCRAPE_DATE -> report.getScrapeDate( );
+			case TERM_HEADLINE_TITLE -> index >= 1 && index <= articles.size( ) ? articles.get( index - 1 ).getTitle( ) : null;
+			case TERM_HEADLINE_LINK -> index >= 1 && index <= articles.size( ) ? articles.get( index - 1 ).getLink( ) : null;
+			default -> null;
+		};
+
+		DocxTemplate template = DocxTemplate.get( templateFile.toFile( ), PLACEHOLDER_MATCHER );
+		// A previous report is only replaced by a complete one
+		Path tempFile = Files.createTempFile( destination.toAbsolutePath( ).getParent( ), null, ".tmp" );
+		try {
+			try ( FileChannel channel = FileChannel.open( tempFile, StandardOpenOption.WRITE );
+					OutputStream out = new BufferedOutputStream( Channels.newOutputStream( channel ), 1 << 16 ) ) {
+				if ( !template.render( values, out ) ) {
+					return false;
+				}
+			}
+			Files.move( tempFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			return true;
+		} finally {
+			Files.deleteIfExists( tempFile );
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.denis_targansky.dailies.reports;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.denis_targansky.dailies.finance.Article;
+
+final class HtmlReportRenderer extends TextReportRenderer {
+
+	@Override
+	public ReportFormat getFormat( ) {
+		return ReportFormat.HTML;
+	}
+
+	@Override
+	protected void write( TickerReport report, Writer writer ) throws IOException {
+		String heading = escape( orEmpty( report.getCompanyName( ) ) ) + " (" + escape( report.getTicker( ) ) + ")";
+		writer.write( "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>" + heading
+				+ "</title>\n</head>\n<body>\n<h1>" + heading + "</h1>\n<table>\n" );
+		for ( String[] field : report.getFields( ) ) {
+			writer.write( "<tr><th>" + field[0] + "</th><td>" + escape( orEmpty( field[1] ) ) + "</td></tr>\n" );
+		}
+		writer.write( "</table>\n<p>Retrieved on " + escape( report.getScrapeDate( ) ) + "</p>\n" );
+
+		if ( !report.getHeadlines( ).isEmpty( ) ) {
+			writer.write( "<h2>Headlines</h2>\n<ul>\n" );
+			for ( Article article : report.getHeadlines( ) ) {
+				writer.write( "<li><a href=\"" + escape( orEmpty( article.getLink( ) ) ) + "\">"
+						+ escape( orEmpty( article.getTitle( ) ) ) + "</a></li>\n" );
+			}
+			writer.write( "</ul>\n" );
+		}
+		writer.write( "</body>\n</html>\n" );
+	}
+
+	private static String escape( String text ) {
+		StringBuilder escaped = new StringBuilder( text.length( ) );
+		for ( int index = 0; index < text.length( ); index++ ) {
+			char c = text.charAt( index );
+			switch ( c ) {
+				case '&' -> escaped.append( "&amp;" );
+				case '<' -> escaped.append( "&lt;" );
+				case '>' -> escaped.append( "&gt;" );
+				case '"' -> escaped.append( "&quot;" );
+				default -> escaped.append( c );
+			}
+		}
+		return escaped.toString( );
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.denis_targansky.dailies.reports;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.denis_targansky.dailies.finance.Article;
+
+final class MarkdownReportRenderer extends TextReportRenderer {
+
+	@Override
+	public ReportFormat getFormat( ) {
+		return ReportFormat.MARKDOWN;
+	}
+
+	@Override
+	protected void write( TickerReport report, Writer writer ) throws IOException {
+		writer.write( "# " + escape( orEmpty( report.getCompanyName( ) ) ) + " (" + escape( report.getTicker( ) ) + ")\n\n" );
+		writer.write( "| Field | Value |\n|---|---|\n" );
+		for ( String[] field : report.getFields( ) ) {
+			writer.write( "| " + field[0] + " | " + escape( orEmpty( field[1] ) ) + " |\n" );
+		}
+		writer.write( "\nRetrieved on " + report.getScrapeDate( ) + "\n" );
+
+		if ( !report.getHeadlines( ).isEmpty( ) ) {
+			writer.write( "\n## Headlines\n\n" );
+			for ( Article article : report.getHeadlines( ) ) {
+				writer.write( "- [" + escape( orEmpty( article.getTitle( ) ) ) + "](" + orEmpty( article.getLink( ) )
+						.replace( " ", "%20" ).replace( ")", "%29" ) + ")\n" );
+			}
+		}
+	}
+
+	private static String escape( String text ) {
+		StringBuilder escaped = new StringBuilder( text.length( ) );
+		for ( int index = 0; index < text.length( ); index++ ) {
+			char c = text.charAt( index );
+			if ( "\\`*_[]<>|#".indexOf( c ) >= 0 ) {
+				escaped.append( '\\' );
+			}
+			escaped.append( c == '\n' || c == '\r' ? ' ' : c );
+		}
+		return escaped.toString( );
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.denis_targansky.dailies.reports;
+
+/**
+ * The file format of the per-ticker reports.
+ */
+public enum ReportFormat {
+
+	/** The template document with its placeholders replaced. */
+	DOCX( "docx", "docx" ),
+
+	MARKDOWN( "markdown", "md" ),
+
+	HTML( "html", "html" ),
+
+	/** One field,value row per field. */
+	CSV( "csv", "csv" );
+
+	private final String propertyValue;
+
+	private final String fileExtension;
+
+	ReportFormat( String propertyValue, String fileExtension ) {
+		this.propertyValue = propertyValue;
+		this.fileExtension = fileExtension;
+	}
+
+	public String getPropertyValue( ) {
+		return propertyValue;
+	}
+
+	public String getFileExtension( ) {
+		return fileExtension;
+	}
+
+	public static ReportFormat fromPropertyValue( String propertyValue ) {
+		for ( ReportFormat format : values( ) ) {
+			if ( format.propertyValue.equalsIgnoreCase( propertyValue.trim( ) ) ) {
+				return format;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.denis_targansky.dailies.reports;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes the report of one ticker to a file. Renderers are shared by the threads rendering the tickers of a run.
+ */
+public interface ReportRenderer {
+
+	ReportFormat getFormat( );
+
+	/**
+	 * @return false, leaving no file behind, if there was nothing to render
+	 */
+	boolean render( TickerReport report, Path destination ) throws IOException;
+
+	static ReportRenderer of( ReportFormat format, Path templateFile ) {
+		return switch ( format ) {
+			case DOCX -> new DocxReportRenderer( templateFile );
+			case MARKDOWN -> new MarkdownReportRenderer( );
+			case HTML -> new HtmlReportRenderer( );
+			case CSV -> new CsvReportRenderer( );
+		};
+	}
+
+}
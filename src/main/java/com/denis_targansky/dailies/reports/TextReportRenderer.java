@@ -0,0 +1,41 @@
+package com.denis_targansky.dailies.reports;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base of the renderers that write text straight to the file channel through the channel writer's buffer, without
+ * building the document in memory first. The text goes to a temporary file that then replaces the destination, so a
+ * failed render leaves the previous report intact.
+ */
+abstract class TextReportRenderer implements ReportRenderer {
+
+	@Override
+	public final boolean render( TickerReport report, Path destination ) throws IOException {
+		Path tempFile = Files.createTempFile( destination.toAbsolutePath( ).getParent( ), null, ".tmp" );
+		try {
+			try ( FileChannel channel = FileChannel.open( tempFile, StandardOpenOption.WRITE );
+					Writer writer = Channels.newWriter( channel, StandardCharsets.UTF_8 ) ) {
+				write( report, writer );
+			}
+			Files.move( tempFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			return true;
+		} finally {
+			Files.deleteIfExists( tempFile );
+		}
+	}
+
+	protected abstract void write( TickerReport report, Writer writer ) throws IOException;
+
+	protected static String orEmpty( String value ) {
+		return value == null ? "" : value;
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.denis_targansky.dailies.reports;
+
+import java.util.List;
+
+import com.denis_targansky.dailies.finance.Article;
+
+/**
+ * What a report shows about one ticker, already formatted; values that could not be retrieved are {@code null}.
+ */
+public final class TickerReport {
+
+	private final String ticker;
+
+	private final String companyName;
+
+	private final String stockPrice;
+
+	private final String marketCap;
+
+	private final String yearLow;
+
+	private final String yearHigh;
+
+	private final String averageVolume;
+
+	private final String scrapeDate;
+
+	private final List<Article> headlines;
+
+	public TickerReport( String ticker, String companyName, String stockPrice, String marketCap, String yearLow,
+			String yearHigh, String averageVolume, String scrapeDate, List<Article> headlines ) {
+		this.ticker = ticker;
+		this.companyName = companyName;
+		this.stockPrice = stockPrice;
+		this.marketCap = marketCap;
+		this.yearLow = yearLow;
+		this.yearHigh = yearHigh;
+		this.averageVolume = averageVolume;
+		this.scrapeDate = scrapeDate;
+		this.headlines = headlines == null ? List.of( ) : headlines;
+	}
+
+	public String getTicker( ) {
+		return ticker;
+	}
+
+	public String getCompanyName( ) {
+		return companyName;
+	}
+
+	public String getStockPrice( ) {
+		return stockPrice;
+	}
+
+	public String getMarketCap( ) {
+		return marketCap;
+	}
+
+	public String getYearLow( ) {
+		return yearLow;
+	}
+
+	public String getYearHigh( ) {
+		return yearHigh;
+	}
+
+	public String getAverageVolume( ) {
+		return averageVolume;
+	}
+
+	public String getScrapeDate( ) {
+		return scrapeDate;
+	}
+
+	public List<Article> getHeadlines( ) {
+		return headlines;
+	}
+
+	/**
+	 * @return the label and value of every quote field, in the order the text reports show them
+	 */
+	public String[][] getFields( ) {
+		return new String[][] { { "Stock price", stockPrice }, { "Market cap", marketCap }, { "52 week low", yearLow },
+				{ "52 week high", yearHigh }, { "Average volume", averageVolume } };
+	}
+
+	@Override
+	public String toString( ) {
+		return "TickerReport [ticker=" + ticker + ", scrapeDate=" + scrapeDate + ", headlines=" + headlines.size( ) + "]";
+	}
+
+}
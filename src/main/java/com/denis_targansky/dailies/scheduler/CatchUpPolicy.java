@@ -0,0 +1,33 @@
+package com.denis_targansky.dailies.scheduler;
+
+/**
+ * What happens to the runs a task missed while the application was stopped.
+ */
+public enum CatchUpPolicy {
+
+	/** The missed runs are made up for by a single run shortly after startup. */
+	COALESCE( "coalesce" ),
+
+	/** The missed runs are dropped and the task runs next at its usual time. */
+	SKIP( "skip" );
+
+	private final String propertyValue;
+
+	CatchUpPolicy( String propertyValue ) {
+		this.propertyValue = propertyValue;
+	}
+
+	public String getPropertyValue( ) {
+		return propertyValue;
+	}
+
+	public static CatchUpPolicy fromPropertyValue( String propertyValue ) {
+		for ( CatchUpPolicy policy : values( ) ) {
+			if ( policy.propertyValue.equalsIgnoreCase( propertyValue.trim( ) ) ) {
+				return policy;
+			}
+		}
+		return null;
+	}
+
+}
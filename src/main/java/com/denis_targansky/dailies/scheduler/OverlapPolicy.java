@@ -0,0 +1,33 @@
+package com.denis_targansky.dailies.scheduler;
+
+/**
+ * What happens when a task is due while its previous run has not finished yet.
+ */
+public enum OverlapPolicy {
+
+	/** The due run is dropped. */
+	SKIP( "skip" ),
+
+	/** The due run starts as soon as the current one finishes; further due runs in the meantime are dropped. */
+	QUEUE_ONE( "queue-one" );
+
+	private final String propertyValue;
+
+	OverlapPolicy( String propertyValue ) {
+		this.propertyValue = propertyValue;
+	}
+
+	public String getPropertyValue( ) {
+		return propertyValue;
+	}
+
+	public static OverlapPolicy fromPropertyValue( String propertyValue ) {
+		for ( OverlapPolicy policy : values( ) ) {
+			if ( policy.propertyValue.equalsIgnoreCase( propertyValue.trim( ) ) ) {
+				return policy;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,346 @@
+package com.denis_targansky.dailies.scheduler;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import com.denis_targansky.dailies.state.TaskStateStore;
+
+/**
+ * Keeps time for every task on a single timer thread and runs the task bodies on a small worker pool, which also caps
+ * how many tasks can run at the same time. Each task decides through its {@link OverlapPolicy} what happens when it
+ * is due again before its previous run has finished.
+ * <p>
+ * When and when next every task runs is kept in the task state, so a restart neither repeats a run that just happened
+ * nor waits a whole period for one that is due. A run only counts as done once it finished, so a run cut short by a
+ * restart is overdue. Tasks found overdue at startup are started one catch-up stagger apart instead of all at once.
+ */
+public final class TaskScheduler {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final String STATE_LAST_RUN = "schedule.last-run";
+
+	private static final String STATE_NEXT_DUE = "schedule.next-due";
+
+	private static final String STATE_RUN_STARTED = "schedule.run-started";
+
+	private final ScheduledExecutorService timer;
+
+	private final ThreadPoolExecutor workers;
+
+	private final TaskStateStore stateStore;
+
+	private long catchUpStaggerMillis;
+
+	private final Clock clock;
+
+	private long nextCatchUpMillis;
+
+	/** Shared by every task scheduled under the same state key, so a replaced task never overlaps its successor. */
+	private final Map<String, RunSlot> runSlots = new ConcurrentHashMap<>( );
+
+	/**
+	 * @param stateStore     where the run times are kept, or null to schedule every task from its initial delay
+	 * @param catchUpStagger how far apart the overdue tasks are started
+	 */
+	public TaskScheduler( int maxConcurrentTasks, TaskStateStore stateStore, Duration catchUpStagger ) {
+		this( maxConcurrentTasks, stateStore, catchUpStagger, Clock.systemUTC( ) );
+	}
+
+	TaskScheduler( int maxConcurrentTasks, TaskStateStore stateStore, Duration catchUpStagger, Clock clock ) {
+		this.stateStore = stateStore;
+		this.catchUpStaggerMillis = catchUpStagger.toMillis( );
+		this.clock = clock;
+		timer = Executors.newSingleThreadScheduledExecutor( runnable -> newThread( runnable, "scheduler-timer" ) );
+		AtomicInteger workerCount = new AtomicInteger( );
+		workers = new ThreadPoolExecutor( maxConcurrentTasks, maxConcurrentTasks, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>( ), runnable -> newThread( runnable, "scheduler-worker-" + workerCount.incrementAndGet( ) ) );
+	}
+
+	/**
+	 * Changes how many tasks can run at the same time; lowering it lets the runs in progress finish.
+	 */
+	public synchronized void setMaxConcurrentTasks( int maxConcurrentTasks ) {
+		if ( maxConcurrentTasks > workers.getMaximumPoolSize( ) ) {
+			workers.setMaximumPoolSize( maxConcurrentTasks );
+			workers.setCorePoolSize( maxConcurrentTasks );
+		} else {
+			workers.setCorePoolSize( maxConcurrentTasks );
+			workers.setMaximumPoolSize( maxConcurrentTasks );
+		}
+	}
+
+	/**
+	 * Changes how far apart the overdue tasks scheduled from now on are started.
+	 */
+	public synchronized void setCatchUpStagger( Duration catchUpStagger ) {
+		catchUpStaggerMillis = catchUpStagger.toMillis( );
+	}
+
+	private static Thread newThread( Runnable runnable, String name ) {
+		Thread thread = new Thread( runnable, name );
+		thread.setDaemon( true );
+		return thread;
+	}
+
+	/**
+	 * Schedules a task from its saved run times, or from {@code initialDelay} if it never ran.
+	 *
+	 * @param stateKeyPrefix     prefix of the task state keys holding the run times of the task
+	 * @param initialDelayJitter a random delay between zero and this is added to the first run so tasks with the same
+	 *                           initial delay or catch-up slot do not all start together
+	 */
+	public ScheduledTask schedule( String name, String stateKeyPrefix, Runnable task, Duration initialDelay,
+			Duration initialDelayJitter, Duration period, OverlapPolicy overlapPolicy, CatchUpPolicy catchUpPolicy ) {
+		long jitterMillis = 0;
+		if ( initialDelayJitter.toMillis( ) > 0 ) {
+			jitterMillis = ThreadLocalRandom.current( ).nextLong( initialDelayJitter.toMillis( ) + 1 );
+		}
+
+		RunSlot slot = runSlots.computeIfAbsent( stateKeyPrefix, ignored -> new RunSlot( ) );
+		ScheduledTask scheduledTask = new ScheduledTask( name, stateKeyPrefix, task, period.toMillis( ), overlapPolicy,
+				slot );
+		long now = clock.millis( );
+		long periodMillis = period.toMillis( );
+		Long lastRun = scheduledTask.loadTime( STATE_LAST_RUN );
+		Long nextDue = scheduledTask.loadTime( STATE_NEXT_DUE );
+		Long runStarted = scheduledTask.loadTime( STATE_RUN_STARTED );
+		boolean running;
+		synchronized ( slot ) {
+			running = slot.running;
+		}
+		long dueMillis;
+		if ( lastRun == null && nextDue == null && runStarted == null ) {
+			dueMillis = now + initialDelay.toMillis( ) + jitterMillis;
+		} else {
+			if ( runStarted != null && ( lastRun == null || runStarted > lastRun ) && !running ) {
+				ms.info( "Task {} did not finish its run started at {}", name, Instant.ofEpochMilli( runStarted ) );
+				dueMillis = runStarted;
+			} else {
+				// A shorter period than the one the next run was planned with takes effect right away
+				dueMillis = lastRun == null ? nextDue
+						: nextDue == null ? lastRun + periodMillis : Math.min( nextDue, lastRun + periodMillis );
+			}
+			if ( dueMillis <= now ) {
+				long missedRuns = ( now - dueMillis ) / periodMillis + 1;
+				ms.info( "Task {} was due at {} and missed {} runs", name, Instant.ofEpochMilli( dueMillis ), missedRuns );
+				dueMillis = catchUpPolicy == CatchUpPolicy.SKIP ? dueMillis + missedRuns * periodMillis
+						: nextCatchUpSlot( now ) + jitterMillis;
+			}
+		}
+
+		synchronized ( slot ) {
+			scheduledTask.scheduleAt( dueMillis );
+		}
+		ms.info( "Scheduled task {} to run next at {} and then every {}", name, Instant.ofEpochMilli( dueMillis ), period );
+		return scheduledTask;
+	}
+
+	private synchronized long nextCatchUpSlot( long now ) {
+		long slot = Math.max( now, nextCatchUpMillis );
+		nextCatchUpMillis = slot + catchUpStaggerMillis;
+		return slot;
+	}
+
+	/**
+	 * Stops scheduling runs and waits for the ones in progress to finish.
+	 *
+	 * @return false if runs were still in progress after {@code timeout}; they are interrupted
+	 */
+	public boolean shutdown( Duration timeout ) {
+		timer.shutdownNow( );
+		workers.shutdown( );
+		try {
+			if ( workers.awaitTermination( timeout.toMillis( ), TimeUnit.MILLISECONDS ) ) {
+				return true;
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+		}
+		workers.shutdownNow( );
+		return false;
+	}
+
+	public final class ScheduledTask {
+
+		private final String name;
+
+		private final Runnable task;
+
+		private final String stateKeyPrefix;
+
+		private final long periodMillis;
+
+		private final OverlapPolicy overlapPolicy;
+
+		private final RunSlot slot;
+
+		private ScheduledFuture<?> timerFuture;
+
+		private long dueMillis;
+
+		private boolean cancelled;
+
+		private ScheduledTask( String name, String stateKeyPrefix, Runnable task, long periodMillis,
+				OverlapPolicy overlapPolicy, RunSlot slot ) {
+			this.name = name;
+			this.stateKeyPrefix = stateKeyPrefix;
+			this.task = task;
+			this.periodMillis = periodMillis;
+			this.overlapPolicy = overlapPolicy;
+			this.slot = slot;
+		}
+
+		public String getName( ) {
+			return name;
+		}
+
+		/**
+		 * @return whether a run of this task, or of a task it replaced, is in progress
+		 */
+		public boolean isRunning( ) {
+			synchronized ( slot ) {
+				return slot.running;
+			}
+		}
+
+		/**
+		 * Stops future runs; a run in progress is allowed to finish.
+		 */
+		public void cancel( ) {
+			synchronized ( slot ) {
+				cancelled = true;
+				if ( slot.queued == this ) {
+					slot.queued = null;
+				}
+				if ( timerFuture != null ) {
+					timerFuture.cancel( false );
+				}
+			}
+		}
+
+		private void scheduleAt( long dueMillis ) {
+			this.dueMillis = dueMillis;
+			saveTime( STATE_NEXT_DUE, dueMillis );
+			timerFuture = timer.schedule( this::due, Math.max( 0, dueMillis - clock.millis( ) ),
+					TimeUnit.MILLISECONDS );
+		}
+
+		private void due( ) {
+			synchronized ( slot ) {
+				if ( cancelled ) {
+					return;
+				}
+
+				// Keeps the cadence of the first run; runs missed while the timer was held up are coalesced
+				long nextDueMillis = dueMillis + periodMillis;
+				long now = clock.millis( );
+				if ( nextDueMillis <= now ) {
+					nextDueMillis += ( now - nextDueMillis ) / periodMillis * periodMillis + periodMillis;
+				}
+				scheduleAt( nextDueMillis );
+
+				if ( slot.running ) {
+					if ( overlapPolicy == OverlapPolicy.QUEUE_ONE && slot.queued == null ) {
+						ms.info( "Task {} is still running, queueing its next run", name );
+						slot.queued = this;
+					} else {
+						ms.warn( "Task {} is still running, skipping this run", name );
+					}
+					return;
+				}
+
+				slot.running = true;
+			}
+
+			workers.execute( this::runTask );
+		}
+
+		private void runTask( ) {
+			long startMillis = clock.millis( );
+			saveTime( STATE_RUN_STARTED, startMillis );
+			try {
+				task.run( );
+			} catch ( RuntimeException | Error e ) {
+				ms.error( new ParameterizedMessage( "Task {} failed unexpectedly", name ), e );
+			}
+			// Only a finished run moves the cadence on, a run cut short is caught up after a restart
+			saveTime( STATE_LAST_RUN, startMillis );
+
+			ScheduledTask next;
+			synchronized ( slot ) {
+				next = slot.queued;
+				slot.queued = null;
+				if ( next == null ) {
+					slot.running = false;
+					return;
+				}
+			}
+
+			// The queued run may belong to the task that replaced this one
+			try {
+				workers.execute( next::runTask );
+			} catch ( RejectedExecutionException e ) {
+				ms.info( "Dropping the queued run of task {} as the scheduler is shutting down", next.name );
+				synchronized ( slot ) {
+					slot.running = false;
+				}
+			}
+		}
+
+		private Long loadTime( String key ) {
+			String value = stateStore == null ? null : stateStore.get( stateKeyPrefix + key );
+			if ( value == null ) {
+				return null;
+			}
+			try {
+				return Instant.parse( value ).toEpochMilli( );
+			} catch ( DateTimeParseException e ) {
+				ms.warn( "Ignoring invalid {} '{}' of task {}", key, value, name );
+				return null;
+			}
+		}
+
+		private void saveTime( String key, long millis ) {
+			if ( stateStore == null ) {
+				return;
+			}
+			try {
+				stateStore.put( stateKeyPrefix + key, Instant.ofEpochMilli( millis ).toString( ) );
+			} catch ( IOException e ) {
+				ms.error( new ParameterizedMessage( "Could not save {} of task {}", key, name ), e );
+			}
+		}
+
+	}
+
+	/**
+	 * Whether a run is in progress under a state key, and which task runs next once it ends.
+	 */
+	private static final class RunSlot {
+
+		private boolean running;
+
+		private ScheduledTask queued;
+
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.denis_targansky.dailies.scraping;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector.SelectorParseException;
+
+/**
+ * How one field of a record is extracted: the first element matching a CSS selector, and either its text or, when the
+ * rule is written {@code selector@attribute}, one of its attributes ({@code @abs:href} resolves a link against the
+ * page URL).
+ */
+public final class FieldRule {
+
+	private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile( "(.+)@([\\w:-]+)" );
+
+	private final String rule;
+
+	private final Evaluator selector;
+
+	private final String attribute;
+
+	private FieldRule( String rule, Evaluator selector, String attribute ) {
+		this.rule = rule;
+		this.selector = selector;
+		this.attribute = attribute;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the selector is not valid CSS
+	 */
+	public static FieldRule parse( String rule ) {
+		String css = rule.trim( );
+		String attribute = null;
+		Matcher attributeMatcher = ATTRIBUTE_PATTERN.matcher( css );
+		if ( attributeMatcher.matches( ) ) {
+			css = attributeMatcher.group( 1 ).trim( );
+			attribute = attributeMatcher.group( 2 );
+		}
+
+		try {
+			return new FieldRule( rule, QueryParser.parse( css ), attribute );
+		} catch ( SelectorParseException e ) {
+			throw new IllegalArgumentException( "Invalid selector '" + rule + "': " + e.getMessage( ), e );
+		}
+	}
+
+	/**
+	 * @return the extracted value, or null if nothing under {@code root} matches
+	 */
+	public String extract( Element root ) {
+		Element element = root.selectFirst( selector );
+		if ( element == null ) {
+			return null;
+		}
+
+		if ( attribute == null ) {
+			return element.text( );
+		}
+
+		return element.hasAttr( attribute ) ? element.attr( attribute ) : null;
+	}
+
+	@Override
+	public String toString( ) {
+		return rule;
+	}
+
+}
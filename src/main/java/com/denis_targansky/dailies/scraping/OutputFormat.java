@@ -0,0 +1,37 @@
+package com.denis_targansky.dailies.scraping;
+
+/**
+ * The file format scraped records are written in.
+ */
+public enum OutputFormat {
+
+	/** One JSON object per line. */
+	NDJSON( "ndjson" ),
+
+	/** Comma separated values with a header row. */
+	CSV( "csv" );
+
+	private final String propertyValue;
+
+	OutputFormat( String propertyValue ) {
+		this.propertyValue = propertyValue;
+	}
+
+	public String getPropertyValue( ) {
+		return propertyValue;
+	}
+
+	public String getFileExtension( ) {
+		return propertyValue;
+	}
+
+	public static OutputFormat fromPropertyValue( String propertyValue ) {
+		for ( OutputFormat format : values( ) ) {
+			if ( format.propertyValue.equalsIgnoreCase( propertyValue.trim( ) ) ) {
+				return format;
+			}
+		}
+		return null;
+	}
+
+}
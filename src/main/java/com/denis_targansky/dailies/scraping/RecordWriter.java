@@ -0,0 +1,110 @@
+package com.denis_targansky.dailies.scraping;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Appends scraped records to a file as they come in, so the records of a run are never all held in memory. Safe to
+ * use from several threads.
+ */
+public final class RecordWriter implements Closeable {
+
+	public static final String URL_COLUMN = "url";
+
+	private static final ObjectMapper objectMapper = new ObjectMapper( );
+
+	private final OutputFormat format;
+
+	private final List<String> fields;
+
+	private final Writer writer;
+
+	private long recordCount;
+
+	/**
+	 * @param fields the fields every record may have, which are the CSV columns after {@value #URL_COLUMN}
+	 */
+	public RecordWriter( OutputFormat format, Path file, List<String> fields ) throws IOException {
+		this( format, Files.newBufferedWriter( file, StandardCharsets.UTF_8 ), fields );
+	}
+
+	/**
+	 * @param writer where the records are written, which is closed with this
+	 */
+	public RecordWriter( OutputFormat format, Writer writer, List<String> fields ) throws IOException {
+		this.format = format;
+		this.fields = List.copyOf( fields );
+		this.writer = writer;
+		if ( format == OutputFormat.CSV ) {
+			StringBuilder header = new StringBuilder( );
+			appendCsvValue( header, URL_COLUMN );
+			for ( String field : fields ) {
+				header.append( ',' );
+				appendCsvValue( header, field );
+			}
+			writer.write( header.append( "\r\n" ).toString( ) );
+		}
+	}
+
+	public synchronized void write( String url, Map<String, String> record ) throws IOException {
+		StringBuilder line = new StringBuilder( );
+		switch ( format ) {
+			case NDJSON -> {
+				Map<String, String> json = new LinkedHashMap<>( );
+				json.put( URL_COLUMN, url );
+				json.putAll( record );
+				line.append( objectMapper.writeValueAsString( json ) ).append( '\n' );
+			}
+			case CSV -> {
+				appendCsvValue( line, url );
+				for ( String field : fields ) {
+					line.append( ',' );
+					appendCsvValue( line, record.get( field ) );
+				}
+				line.append( "\r\n" );
+			}
+		}
+		writer.write( line.toString( ) );
+		recordCount++;
+	}
+
+	/**
+	 * Writes out the buffered records, so a failure to write them surfaces before anything depends on them.
+	 */
+	public synchronized void flush( ) throws IOException {
+		writer.flush( );
+	}
+
+	public synchronized long getRecordCount( ) {
+		return recordCount;
+	}
+
+	private static void appendCsvValue( StringBuilder line, String value ) {
+		if ( value == null ) {
+			return;
+		}
+
+		if ( value.indexOf( ',' ) < 0 && value.indexOf( '"' ) < 0 && value.indexOf( '\n' ) < 0
+				&& value.indexOf( '\r' ) < 0 ) {
+			line.append( value );
+			return;
+		}
+
+		line.append( '"' ).append( value.replace( "\"", "\"\"" ) ).append( '"' );
+	}
+
+	@Override
+	public synchronized void close( ) throws IOException {
+		writer.close( );
+	}
+
+}
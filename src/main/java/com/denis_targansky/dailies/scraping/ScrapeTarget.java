@@ -0,0 +1,67 @@
+package com.denis_targansky.dailies.scraping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector.SelectorParseException;
+
+/**
+ * A page to scrape and the rules to turn it into records. Without an item selector the whole page is one record;
+ * with one, every matching element is a record and the field rules are applied within it.
+ */
+public final class ScrapeTarget {
+
+	private final String url;
+
+	private final Evaluator itemSelector;
+
+	private final Map<String, FieldRule> fieldRules;
+
+	/**
+	 * @throws IllegalArgumentException if {@code itemSelector} is not valid CSS
+	 */
+	public ScrapeTarget( String url, String itemSelector, Map<String, FieldRule> fieldRules ) {
+		this.url = url;
+		try {
+			this.itemSelector = itemSelector == null || itemSelector.isBlank( ) ? null : QueryParser.parse( itemSelector );
+		} catch ( SelectorParseException e ) {
+			throw new IllegalArgumentException( "Invalid item selector '" + itemSelector + "': " + e.getMessage( ), e );
+		}
+		this.fieldRules = Collections.unmodifiableMap( new LinkedHashMap<>( fieldRules ) );
+	}
+
+	public String getUrl( ) {
+		return url;
+	}
+
+	public Map<String, FieldRule> getFieldRules( ) {
+		return fieldRules;
+	}
+
+	public List<Map<String, String>> extract( Element page ) {
+		if ( itemSelector == null ) {
+			return List.of( extractRecord( page ) );
+		}
+
+		List<Map<String, String>> records = new ArrayList<>( );
+		for ( Element item : page.select( itemSelector ) ) {
+			records.add( extractRecord( item ) );
+		}
+		return records;
+	}
+
+	private Map<String, String> extractRecord( Element root ) {
+		Map<String, String> record = new LinkedHashMap<>( );
+		for ( Map.Entry<String, FieldRule> fieldRule : fieldRules.entrySet( ) ) {
+			record.put( fieldRule.getKey( ), fieldRule.getValue( ).extract( root ) );
+		}
+		return record;
+	}
+
+}
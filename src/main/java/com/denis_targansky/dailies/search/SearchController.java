@@ -0,0 +1,40 @@
+package com.denis_targansky.dailies.search;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Serves the search index of the running tasks, e.g. {@code GET /search?q=apple+earnings&source=news&limit=10}.
+ */
+@RestController
+public class SearchController {
+
+	private static final int MAX_LIMIT = 100;
+
+	private final ObjectProvider<SearchIndex> searchIndex;
+
+	public SearchController( ObjectProvider<SearchIndex> searchIndex ) {
+		this.searchIndex = searchIndex;
+	}
+
+	@GetMapping( "/search" )
+	public SearchResults search( @RequestParam( "q" ) String query,
+			@RequestParam( name = "source", required = false ) String source,
+			@RequestParam( name = "limit", defaultValue = "20" ) int limit ) {
+		SearchIndex index = searchIndex.getIfAvailable( );
+		if ( index == null ) {
+			throw new ResponseStatusException( HttpStatus.SERVICE_UNAVAILABLE, "Search index is not available" );
+		}
+		if ( query.isBlank( ) || limit < 1 || limit > MAX_LIMIT ) {
+			throw new ResponseStatusException( HttpStatus.BAD_REQUEST,
+					"Query must not be blank and limit must be between 1 and " + MAX_LIMIT );
+		}
+
+		return index.search( query, source == null || source.isBlank( ) ? null : source, limit );
+	}
+
+}
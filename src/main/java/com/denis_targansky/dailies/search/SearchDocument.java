@@ -0,0 +1,58 @@
+package com.denis_targansky.dailies.search;
+
+/**
+ * A piece of text to make searchable. Adding a document with the key of one already in the index replaces it.
+ */
+public final class SearchDocument {
+
+	private final String key;
+
+	private final String source;
+
+	private final String title;
+
+	private final String url;
+
+	private final String text;
+
+	private final long timestampMillis;
+
+	public SearchDocument( String key, String source, String title, String url, String text, long timestampMillis ) {
+		this.key = key;
+		this.source = source;
+		this.title = title == null ? "" : title;
+		this.url = url == null ? "" : url;
+		this.text = text == null ? "" : text;
+		this.timestampMillis = timestampMillis;
+	}
+
+	public String getKey( ) {
+		return key;
+	}
+
+	public String getSource( ) {
+		return source;
+	}
+
+	public String getTitle( ) {
+		return title;
+	}
+
+	public String getUrl( ) {
+		return url;
+	}
+
+	public String getText( ) {
+		return text;
+	}
+
+	public long getTimestampMillis( ) {
+		return timestampMillis;
+	}
+
+	@Override
+	public String toString( ) {
+		return "SearchDocument [key=" + key + ", source=" + source + ", title=" + title + "]";
+	}
+
+}
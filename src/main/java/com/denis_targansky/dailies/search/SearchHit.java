@@ -0,0 +1,65 @@
+package com.denis_targansky.dailies.search;
+
+public final class SearchHit {
+
+	private final String key;
+
+	private final String source;
+
+	private final String title;
+
+	private final String url;
+
+	private final String snippet;
+
+	private final long timestampMillis;
+
+	private final float score;
+
+	SearchHit( String key, String source, String title, String url, String snippet, long timestampMillis, float score ) {
+		this.key = key;
+		this.source = source;
+		this.title = title;
+		this.url = url;
+		this.snippet = snippet;
+		this.timestampMillis = timestampMillis;
+		this.score = score;
+	}
+
+	public String getKey( ) {
+		return key;
+	}
+
+	public String getSource( ) {
+		return source;
+	}
+
+	public String getTitle( ) {
+		return title;
+	}
+
+	public String getUrl( ) {
+		return url;
+	}
+
+	/**
+	 * @return the beginning of the document's text
+	 */
+	public String getSnippet( ) {
+		return snippet;
+	}
+
+	public long getTimestampMillis( ) {
+		return timestampMillis;
+	}
+
+	public float getScore( ) {
+		return score;
+	}
+
+	@Override
+	public String toString( ) {
+		return "SearchHit [key=" + key + ", source=" + source + ", title=" + title + ", score=" + score + "]";
+	}
+
+}
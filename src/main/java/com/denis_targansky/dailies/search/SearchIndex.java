@@ -0,0 +1,634 @@
+package com.denis_targansky.dailies.search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.denis_targansky.dailies.search.Segment.StoredDocument;
+
+/**
+ * An embedded full-text index of the documents the tasks produce. Added documents are buffered in memory and written
+ * as a new immutable {@link Segment} on {@link #commit()}; a document whose key is already indexed replaces the older
+ * one. Once there are more than {@value #MERGE_FACTOR} segments, a background thread merges adjacent small ones, so
+ * the number of segments a query visits stays bounded while commits stay cheap.
+ * <p>
+ * Queries match documents containing any of the query terms, ranked by BM25. They run against an immutable list of
+ * segments, so they never wait for commits or merges. The list of segments making up the index is kept in a manifest
+ * that is replaced atomically, and segment files it does not list are deleted when the index is opened.
+ */
+public final class SearchIndex implements Closeable {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final String MANIFEST_FILE_NAME = "segments";
+
+	private static final String SEGMENT_FILE_PREFIX = "segment-";
+
+	private static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+	private static final int MAX_BUFFERED_DOCUMENTS = 10_000;
+
+	private static final int MERGE_FACTOR = 10;
+
+	/**
+	 * Segments are mapped as a single buffer, which cannot exceed 2GB.
+	 */
+	private static final long MAX_MERGED_SEGMENT_BYTES = 1L << 30;
+
+	private static final int SNIPPET_LENGTH = 300;
+
+	private static final float BM25_K1 = 1.2f;
+
+	private static final float BM25_B = 0.75f;
+
+	private static final Map<Path, SearchIndex> sharedIndexes = new ConcurrentHashMap<>( );
+
+	private final Path folder;
+
+	private final Map<String, SearchDocument> bufferedDocuments = new LinkedHashMap<>( );
+
+	/** Held from draining the buffer to publishing its segment, so segments are appended in the order of the drains. */
+	private final Object commitLock = new Object( );
+
+	private final ExecutorService mergeExecutor;
+
+	private volatile List<Segment> segments;
+
+	private long nextGeneration;
+
+	private boolean mergeScheduled;
+
+	private SearchIndex( Path folder ) throws IOException {
+		this.folder = folder;
+		Files.createDirectories( folder );
+
+		List<Segment> openedSegments = new ArrayList<>( );
+		Set<String> liveFileNames = new HashSet<>( );
+		try {
+			for ( String fileName : Files.readAllLines( folder.resolve( MANIFEST_FILE_NAME ), StandardCharsets.UTF_8 ) ) {
+				if ( !fileName.isBlank( ) ) {
+					openedSegments.add( Segment.open( folder.resolve( fileName ) ) );
+					liveFileNames.add( fileName );
+				}
+			}
+		} catch ( NoSuchFileException e ) {
+			ms.debug( "Creating new search index in {}", folder );
+		}
+
+		try ( DirectoryStream<Path> files = Files.newDirectoryStream( folder, SEGMENT_FILE_PREFIX + "*" ) ) {
+			for ( Path file : files ) {
+				String fileName = file.getFileName( ).toString( );
+				nextGeneration = Math.max( nextGeneration, parseGeneration( fileName ) + 1 );
+				if ( !liveFileNames.contains( fileName ) ) {
+					deleteSegmentFile( file );
+				}
+			}
+		}
+
+		for ( int segment = 1; segment < openedSegments.size( ); segment++ ) {
+			applyDeletes( openedSegments.get( segment ), openedSegments.subList( 0, segment ) );
+		}
+		segments = List.copyOf( openedSegments );
+
+		mergeExecutor = Executors.newSingleThreadExecutor( runnable -> {
+			Thread thread = new Thread( runnable, "SearchIndex-merge" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		ms.info( "Opened search index {} with {} segments", folder, segments.size( ) );
+	}
+
+	/**
+	 * @return the index kept in {@code folder}, opening it on first use
+	 */
+	public static SearchIndex shared( Path folder ) throws IOException {
+		Path key = folder.toAbsolutePath( ).normalize( );
+		SearchIndex index = sharedIndexes.get( key );
+		if ( index != null ) {
+			return index;
+		}
+
+		synchronized ( sharedIndexes ) {
+			index = sharedIndexes.get( key );
+			if ( index == null ) {
+				index = new SearchIndex( key );
+				sharedIndexes.put( key, index );
+			}
+			return index;
+		}
+	}
+
+	public static void closeAll( ) {
+		synchronized ( sharedIndexes ) {
+			for ( SearchIndex index : sharedIndexes.values( ) ) {
+				try {
+					index.close( );
+				} catch ( IOException e ) {
+					ms.error( "Error closing search index {}", index.folder, e );
+				}
+			}
+			sharedIndexes.clear( );
+		}
+	}
+
+	/**
+	 * Buffers the document; it becomes searchable with the next commit, which happens on its own once
+	 * {@value #MAX_BUFFERED_DOCUMENTS} documents are buffered.
+	 */
+	public void add( SearchDocument document ) throws IOException {
+		synchronized ( bufferedDocuments ) {
+			bufferedDocuments.remove( document.getKey( ) );
+			bufferedDocuments.put( document.getKey( ), document );
+			if ( bufferedDocuments.size( ) < MAX_BUFFERED_DOCUMENTS ) {
+				return;
+			}
+		}
+		commit( );
+	}
+
+	/**
+	 * Writes the buffered documents as a new segment and makes them searchable.
+	 */
+	public void commit( ) throws IOException {
+		// Otherwise a concurrent commit holding an older version of a key could be appended last and win
+		synchronized ( commitLock ) {
+			List<SearchDocument> documents;
+			synchronized ( bufferedDocuments ) {
+				if ( bufferedDocuments.isEmpty( ) ) {
+					return;
+				}
+				documents = new ArrayList<>( bufferedDocuments.values( ) );
+				bufferedDocuments.clear( );
+			}
+
+			Path file = newSegmentFile( );
+			try {
+				writeSegment( file, documents );
+				Segment segment = Segment.open( file );
+				synchronized ( this ) {
+					List<Segment> newSegments = new ArrayList<>( segments );
+					List<BitSet> previousDeletes = new ArrayList<>( );
+					for ( Segment olderSegment : newSegments ) {
+						previousDeletes.add( olderSegment.getDeletedDocuments( ) );
+					}
+					// Replaced versions are deleted first, so searches never see two versions of a document
+					applyDeletes( segment, newSegments );
+					newSegments.add( segment );
+					try {
+						publish( newSegments );
+					} catch ( IOException | RuntimeException e ) {
+						for ( int olderSegment = 0; olderSegment < previousDeletes.size( ); olderSegment++ ) {
+							newSegments.get( olderSegment ).setDeletedDocuments( previousDeletes.get( olderSegment ) );
+						}
+						throw e;
+					}
+					scheduleMerge( );
+				}
+				ms.debug( "Committed {} documents to {}", documents.size( ), file.getFileName( ) );
+			} catch ( IOException | RuntimeException e ) {
+				deleteSegmentFile( file );
+				throw e;
+			}
+		}
+	}
+
+	private static void writeSegment( Path file, List<SearchDocument> documents ) throws IOException {
+		TreeMap<String, Postings> postings = new TreeMap<>( );
+		try ( SegmentWriter writer = new SegmentWriter( file ) ) {
+			for ( int document = 0; document < documents.size( ); document++ ) {
+				SearchDocument searchDocument = documents.get( document );
+				List<String> tokens = Tokenizer.tokenize( searchDocument.getTitle( ) + "\n" + searchDocument.getText( ) );
+				Map<String, Integer> frequencies = new LinkedHashMap<>( );
+				for ( String token : tokens ) {
+					frequencies.merge( token, 1, Integer::sum );
+				}
+				frequencies.put( Tokenizer.getSourceTerm( searchDocument.getSource( ) ), 1 );
+				for ( Map.Entry<String, Integer> frequency : frequencies.entrySet( ) ) {
+					postings.computeIfAbsent( frequency.getKey( ), ignored -> new Postings( ) ).add( document,
+							frequency.getValue( ) );
+				}
+
+				String text = searchDocument.getText( );
+				writer.addDocument( searchDocument.getKey( ), searchDocument.getSource( ), searchDocument.getTitle( ),
+						searchDocument.getUrl( ), text.length( ) > SNIPPET_LENGTH ? text.substring( 0, SNIPPET_LENGTH ) : text,
+						searchDocument.getTimestampMillis( ), tokens.size( ) );
+			}
+
+			for ( Map.Entry<String, Postings> termPostings : postings.entrySet( ) ) {
+				Postings termPosting = termPostings.getValue( );
+				writer.addTerm( termPostings.getKey( ), termPosting.documents, termPosting.frequencies, termPosting.count );
+			}
+			writer.finish( );
+		}
+	}
+
+	/**
+	 * @param source only documents of this source are matched, or any source if {@code null}
+	 */
+	public SearchResults search( String query, String source, int limit ) {
+		List<String> queryTerms = new ArrayList<>( new LinkedHashSet<>( Tokenizer.tokenize( query ) ) );
+		List<Segment> searchedSegments = segments;
+		if ( queryTerms.isEmpty( ) || searchedSegments.isEmpty( ) || limit <= 0 ) {
+			return new SearchResults( 0, List.of( ) );
+		}
+
+		long documentCount = 0;
+		long totalLength = 0;
+		long[] documentFrequencies = new long[queryTerms.size( )];
+		for ( Segment segment : searchedSegments ) {
+			documentCount += segment.getDocumentCount( );
+			totalLength += segment.getTotalLength( );
+			for ( int queryTerm = 0; queryTerm < queryTerms.size( ); queryTerm++ ) {
+				int term = segment.findTerm( queryTerms.get( queryTerm ) );
+				if ( term >= 0 ) {
+					documentFrequencies[queryTerm] += segment.getDocumentFrequency( term );
+				}
+			}
+		}
+		float averageLength = Math.max( 1f, ( float ) totalLength / documentCount );
+		float[] idfs = new float[queryTerms.size( )];
+		for ( int queryTerm = 0; queryTerm < queryTerms.size( ); queryTerm++ ) {
+			long frequency = documentFrequencies[queryTerm];
+			idfs[queryTerm] = ( float ) Math.log( 1 + ( documentCount - frequency + 0.5 ) / ( frequency + 0.5 ) );
+		}
+
+		long totalHits = 0;
+		PriorityQueue<ScoredDocument> best = new PriorityQueue<>( limit + 1 );
+		for ( Segment segment : searchedSegments ) {
+			BitSet deleted = segment.getDeletedDocuments( );
+			BitSet allowed = source == null ? null : segment.getTermDocuments( Tokenizer.getSourceTerm( source ) );
+			if ( allowed != null && allowed.isEmpty( ) ) {
+				continue;
+			}
+
+			float[] scores = null;
+			BitSet matched = new BitSet( );
+			for ( int queryTerm = 0; queryTerm < queryTerms.size( ); queryTerm++ ) {
+				int term = segment.findTerm( queryTerms.get( queryTerm ) );
+				if ( term < 0 ) {
+					continue;
+				}
+				if ( scores == null ) {
+					scores = new float[segment.getDocumentCount( )];
+				}
+
+				int postingCount = segment.getDocumentFrequency( term );
+				for ( int posting = 0; posting < postingCount; posting++ ) {
+					int document = segment.getPostingDocument( term, posting );
+					if ( deleted.get( document ) || ( allowed != null && !allowed.get( document ) ) ) {
+						continue;
+					}
+
+					float frequency = segment.getPostingFrequency( term, posting );
+					float lengthNorm = 1 - BM25_B + BM25_B * segment.getDocumentLength( document ) / averageLength;
+					scores[document] += idfs[queryTerm] * frequency * ( BM25_K1 + 1 ) / ( frequency + BM25_K1 * lengthNorm );
+					matched.set( document );
+				}
+			}
+
+			for ( int document = matched.nextSetBit( 0 ); document >= 0; document = matched.nextSetBit( document + 1 ) ) {
+				totalHits++;
+				if ( best.size( ) < limit || scores[document] > best.peek( ).score ) {
+					best.add( new ScoredDocument( segment, document, scores[document] ) );
+					if ( best.size( ) > limit ) {
+						best.poll( );
+					}
+				}
+			}
+		}
+
+		SearchHit[] hits = new SearchHit[best.size( )];
+		for ( int hit = hits.length - 1; hit >= 0; hit-- ) {
+			ScoredDocument scored = best.poll( );
+			StoredDocument stored = scored.segment.getDocument( scored.document );
+			hits[hit] = new SearchHit( stored.key, stored.source, stored.title, stored.url, stored.snippet,
+					stored.timestampMillis, scored.score );
+		}
+		return new SearchResults( totalHits, Arrays.asList( hits ) );
+	}
+
+	/**
+	 * Marks the documents of {@code olderSegments} that {@code segment} holds a newer version of as deleted.
+	 */
+	private static void applyDeletes( Segment segment, List<Segment> olderSegments ) {
+		for ( Segment olderSegment : olderSegments ) {
+			BitSet deleted = null;
+			for ( int keyEntry = 0; keyEntry < segment.getDocumentCount( ); keyEntry++ ) {
+				int document = olderSegment.findDocument( segment.getKeyHash( keyEntry ) );
+				if ( document >= 0 && !olderSegment.getDeletedDocuments( ).get( document ) ) {
+					if ( deleted == null ) {
+						deleted = ( BitSet ) olderSegment.getDeletedDocuments( ).clone( );
+					}
+					deleted.set( document );
+				}
+			}
+			if ( deleted != null ) {
+				olderSegment.setDeletedDocuments( deleted );
+			}
+		}
+	}
+
+	private void scheduleMerge( ) {
+		if ( mergeScheduled || segments.size( ) <= MERGE_FACTOR || mergeExecutor.isShutdown( ) ) {
+			return;
+		}
+
+		mergeScheduled = true;
+		mergeExecutor.execute( ( ) -> {
+			try {
+				mergeSmallestSegments( );
+			} catch ( IOException | RuntimeException e ) {
+				ms.error( "Error merging segments of search index {}", folder, e );
+			} finally {
+				synchronized ( this ) {
+					mergeScheduled = false;
+					scheduleMerge( );
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Merges the run of {@value #MERGE_FACTOR} adjacent segments with the smallest total size. Only adjacent segments
+	 * are merged, so newer versions of a document always stay in later segments.
+	 */
+	private void mergeSmallestSegments( ) throws IOException {
+		List<Segment> mergedSegments = segments;
+		int first = -1;
+		long smallestSize = MAX_MERGED_SEGMENT_BYTES;
+		for ( int start = 0; start + MERGE_FACTOR <= mergedSegments.size( ); start++ ) {
+			long size = 0;
+			for ( Segment segment : mergedSegments.subList( start, start + MERGE_FACTOR ) ) {
+				size += segment.getFileSize( );
+			}
+			if ( size < smallestSize ) {
+				smallestSize = size;
+				first = start;
+			}
+		}
+		if ( first < 0 ) {
+			ms.debug( "Segments of search index {} are too large to be merged", folder );
+			return;
+		}
+
+		List<Segment> window = List.copyOf( mergedSegments.subList( first, first + MERGE_FACTOR ) );
+		Path file = newSegmentFile( );
+		Segment merged;
+		try {
+			writeMergedSegment( file, window );
+			merged = Segment.open( file );
+		} catch ( IOException | RuntimeException e ) {
+			deleteSegmentFile( file );
+			throw e;
+		}
+
+		synchronized ( this ) {
+			// Commits only ever append, so the merged segments are still adjacent
+			List<Segment> newSegments = new ArrayList<>( segments );
+			int windowStart = newSegments.indexOf( window.get( 0 ) );
+			newSegments.subList( windowStart, windowStart + window.size( ) ).clear( );
+			newSegments.add( windowStart, merged );
+			// Documents replaced while the merge was running
+			for ( Segment newerSegment : newSegments.subList( windowStart + 1, newSegments.size( ) ) ) {
+				applyDeletes( newerSegment, List.of( merged ) );
+			}
+			publish( newSegments );
+		}
+
+		for ( Segment segment : window ) {
+			deleteSegmentFile( segment.getFile( ) );
+		}
+		ms.info( "Merged {} segments of search index {} into {} with {} documents", window.size( ), folder,
+				file.getFileName( ), merged.getDocumentCount( ) );
+	}
+
+	private static void writeMergedSegment( Path file, List<Segment> window ) throws IOException {
+		try ( SegmentWriter writer = new SegmentWriter( file ) ) {
+			// Deletes made while merging are applied to the merged segment afterwards
+			List<BitSet> deletedDocuments = new ArrayList<>( );
+			int[][] documentMaps = new int[window.size( )][];
+			int nextDocument = 0;
+			for ( int segmentIndex = 0; segmentIndex < window.size( ); segmentIndex++ ) {
+				Segment segment = window.get( segmentIndex );
+				BitSet deleted = segment.getDeletedDocuments( );
+				deletedDocuments.add( deleted );
+				documentMaps[segmentIndex] = new int[segment.getDocumentCount( )];
+				for ( int document = 0; document < segment.getDocumentCount( ); document++ ) {
+					if ( deleted.get( document ) ) {
+						documentMaps[segmentIndex][document] = -1;
+						continue;
+					}
+					StoredDocument stored = segment.getDocument( document );
+					writer.addDocument( stored.key, stored.source, stored.title, stored.url, stored.snippet,
+							stored.timestampMillis, stored.length );
+					documentMaps[segmentIndex][document] = nextDocument++;
+				}
+			}
+
+			// Merge the sorted term dictionaries; segments are visited in order, so documents stay in order
+			PriorityQueue<TermCursor> cursors = new PriorityQueue<>( );
+			for ( int segmentIndex = 0; segmentIndex < window.size( ); segmentIndex++ ) {
+				if ( window.get( segmentIndex ).getTermCount( ) > 0 ) {
+					cursors.add( new TermCursor( segmentIndex, window.get( segmentIndex ) ) );
+				}
+			}
+			Postings postings = new Postings( );
+			List<TermCursor> sameTerm = new ArrayList<>( );
+			while ( !cursors.isEmpty( ) ) {
+				String term = cursors.peek( ).getTerm( );
+				sameTerm.clear( );
+				while ( !cursors.isEmpty( ) && cursors.peek( ).getTerm( ).equals( term ) ) {
+					sameTerm.add( cursors.poll( ) );
+				}
+				sameTerm.sort( ( firstCursor, secondCursor ) -> Integer.compare( firstCursor.segmentIndex,
+						secondCursor.segmentIndex ) );
+
+				postings.count = 0;
+				for ( TermCursor cursor : sameTerm ) {
+					Segment segment = cursor.segment;
+					int[] documentMap = documentMaps[cursor.segmentIndex];
+					for ( int posting = 0; posting < segment.getDocumentFrequency( cursor.term ); posting++ ) {
+						int document = documentMap[segment.getPostingDocument( cursor.term, posting )];
+						if ( document >= 0 ) {
+							postings.add( document, segment.getPostingFrequency( cursor.term, posting ) );
+						}
+					}
+					if ( ++cursor.term < segment.getTermCount( ) ) {
+						cursors.add( cursor );
+					}
+				}
+				if ( postings.count > 0 ) {
+					writer.addTerm( term, postings.documents, postings.frequencies, postings.count );
+				}
+			}
+			writer.finish( );
+		}
+	}
+
+	private void publish( List<Segment> newSegments ) throws IOException {
+		Path manifestFile = folder.resolve( MANIFEST_FILE_NAME );
+		Path tempFile = Files.createTempFile( folder, MANIFEST_FILE_NAME, ".tmp" );
+		List<String> fileNames = new ArrayList<>( );
+		for ( Segment segment : newSegments ) {
+			fileNames.add( segment.getFile( ).getFileName( ).toString( ) );
+		}
+		Files.write( tempFile, fileNames, StandardCharsets.UTF_8 );
+		Files.move( tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		segments = List.copyOf( newSegments );
+	}
+
+	private synchronized Path newSegmentFile( ) {
+		return folder.resolve( String.format( "%s%08d%s", SEGMENT_FILE_PREFIX, nextGeneration++, SEGMENT_FILE_SUFFIX ) );
+	}
+
+	private static long parseGeneration( String fileName ) {
+		try {
+			return Long.parseLong( fileName.substring( SEGMENT_FILE_PREFIX.length( ),
+					fileName.length( ) - SEGMENT_FILE_SUFFIX.length( ) ) );
+		} catch ( NumberFormatException | IndexOutOfBoundsException e ) {
+			return -1;
+		}
+	}
+
+	private static void deleteSegmentFile( Path file ) {
+		try {
+			Files.deleteIfExists( file );
+		} catch ( IOException e ) {
+			// Windows refuses to delete files that are still mapped; they are deleted when the index is opened again
+			ms.debug( "Could not delete segment file {} yet: {}", file, e.getMessage( ) );
+		}
+	}
+
+	public int getSegmentCount( ) {
+		return segments.size( );
+	}
+
+	public long getDocumentCount( ) {
+		long documentCount = 0;
+		for ( Segment segment : segments ) {
+			documentCount += segment.getLiveDocumentCount( );
+		}
+		return documentCount;
+	}
+
+	/**
+	 * Waits for the merges scheduled so far to complete.
+	 */
+	void awaitMerges( ) throws InterruptedException {
+		while ( true ) {
+			synchronized ( this ) {
+				if ( !mergeScheduled ) {
+					return;
+				}
+			}
+			Thread.sleep( 10 );
+		}
+	}
+
+	@Override
+	public void close( ) throws IOException {
+		mergeExecutor.shutdown( );
+		try {
+			if ( !mergeExecutor.awaitTermination( 1, TimeUnit.MINUTES ) ) {
+				ms.warn( "Merge of search index {} did not complete in time", folder );
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+		}
+		commit( );
+	}
+
+	@Override
+	public String toString( ) {
+		return "SearchIndex [folder=" + folder + ", segments=" + segments + "]";
+	}
+
+	private static final class Postings {
+
+		private int[] documents = new int[16];
+
+		private int[] frequencies = new int[16];
+
+		private int count;
+
+		private void add( int document, int frequency ) {
+			if ( count == documents.length ) {
+				documents = Arrays.copyOf( documents, count * 2 );
+				frequencies = Arrays.copyOf( frequencies, count * 2 );
+			}
+			documents[count] = document;
+			frequencies[count] = frequency;
+			count++;
+		}
+
+	}
+
+	private static final class TermCursor implements Comparable<TermCursor> {
+
+		private final int segmentIndex;
+
+		private final Segment segment;
+
+		private int term;
+
+		private TermCursor( int segmentIndex, Segment segment ) {
+			this.segmentIndex = segmentIndex;
+			this.segment = segment;
+		}
+
+		private String getTerm( ) {
+			return segment.getTerm( term );
+		}
+
+		@Override
+		public int compareTo( TermCursor other ) {
+			return getTerm( ).compareTo( other.getTerm( ) );
+		}
+
+	}
+
+	private static final class ScoredDocument implements Comparable<ScoredDocument> {
+
+		private final Segment segment;
+
+		private final int document;
+
+		private final float score;
+
+		private ScoredDocument( Segment segment, int document, float score ) {
+			this.segment = segment;
+			this.document = document;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo( ScoredDocument other ) {
+			return Float.compare( score, other.score );
+		}
+
+	}
+
+}
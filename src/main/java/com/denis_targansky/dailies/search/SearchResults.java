@@ -0,0 +1,27 @@
+package com.denis_targansky.dailies.search;
+
+import java.util.List;
+
+public final class SearchResults {
+
+	private final long totalHits;
+
+	private final List<SearchHit> hits;
+
+	SearchResults( long totalHits, List<SearchHit> hits ) {
+		this.totalHits = totalHits;
+		this.hits = hits;
+	}
+
+	/**
+	 * @return the number of documents that matched, of which only the best are in {@link #getHits()}
+	 */
+	public long getTotalHits( ) {
+		return totalHits;
+	}
+
+	public List<SearchHit> getHits( ) {
+		return hits;
+	}
+
+}
@@ -0,0 +1,282 @@
+package com.denis_targansky.dailies.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable part of the index, memory-mapped as a whole. Only the term dictionary is held on the heap; postings,
+ * document lengths, keys and stored fields are read from the mapping when a query needs them. The file is laid out as
+ * <ol>
+ * <li>stored documents: key, source, title, url and snippet as length-prefixed UTF-8, then the timestamp</li>
+ * <li>postings: (document, term frequency) pairs per term, in document order</li>
+ * <li>document table: offset of the stored document and its length in tokens</li>
+ * <li>key table: (key hash, document) pairs in hash order</li>
+ * <li>term dictionary: term, offset of its postings and document frequency, in term order</li>
+ * <li>footer: offsets of the tables, the total length in tokens, the counts and a magic number</li>
+ * </ol>
+ * Documents replaced by a newer segment are only marked as deleted in memory, and are dropped when segments are
+ * merged.
+ */
+final class Segment {
+
+	static final int MAGIC = 0x44534731;
+
+	static final int POSTING_BYTES = Integer.BYTES + Integer.BYTES;
+
+	static final int DOCUMENT_ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+
+	static final int KEY_ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+
+	private static final int FOOTER_BYTES = 4 * Long.BYTES + 3 * Integer.BYTES;
+
+	private final Path file;
+
+	private final ByteBuffer buffer;
+
+	private final long documentTableOffset;
+
+	private final long keyTableOffset;
+
+	private final long totalLength;
+
+	private final int documentCount;
+
+	private final String[] terms;
+
+	private final long[] postingOffsets;
+
+	private final int[] documentFrequencies;
+
+	private final Map<String, BitSet> filterCache = new ConcurrentHashMap<>( );
+
+	private volatile BitSet deletedDocuments = new BitSet( );
+
+	private Segment( Path file, ByteBuffer buffer, long documentTableOffset, long keyTableOffset, long totalLength,
+			int documentCount, String[] terms, long[] postingOffsets, int[] documentFrequencies ) {
+		this.file = file;
+		this.buffer = buffer;
+		this.documentTableOffset = documentTableOffset;
+		this.keyTableOffset = keyTableOffset;
+		this.totalLength = totalLength;
+		this.documentCount = documentCount;
+		this.terms = terms;
+		this.postingOffsets = postingOffsets;
+		this.documentFrequencies = documentFrequencies;
+	}
+
+	static Segment open( Path file ) throws IOException {
+		MappedByteBuffer buffer;
+		try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+			long size = channel.size( );
+			if ( size < FOOTER_BYTES || size > Integer.MAX_VALUE ) {
+				throw new IOException( "Invalid segment size " + size + " of " + file );
+			}
+			// The mapping stays valid after the channel is closed
+			buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+		}
+
+		int footer = buffer.capacity( ) - FOOTER_BYTES;
+		long documentTableOffset = buffer.getLong( footer );
+		long keyTableOffset = buffer.getLong( footer + Long.BYTES );
+		long dictionaryOffset = buffer.getLong( footer + 2 * Long.BYTES );
+		long totalLength = buffer.getLong( footer + 3 * Long.BYTES );
+		int documentCount = buffer.getInt( footer + 4 * Long.BYTES );
+		int termCount = buffer.getInt( footer + 4 * Long.BYTES + Integer.BYTES );
+		if ( buffer.getInt( footer + 4 * Long.BYTES + 2 * Integer.BYTES ) != MAGIC || dictionaryOffset > footer
+				|| documentCount < 0 || termCount < 0 ) {
+			throw new IOException( "Segment " + file + " is incomplete or corrupted" );
+		}
+
+		String[] terms = new String[termCount];
+		long[] postingOffsets = new long[termCount];
+		int[] documentFrequencies = new int[termCount];
+		ByteBuffer dictionary = buffer.duplicate( ).position( ( int ) dictionaryOffset ).limit( footer );
+		for ( int term = 0; term < termCount; term++ ) {
+			byte[] termBytes = new byte[dictionary.getInt( )];
+			dictionary.get( termBytes );
+			terms[term] = new String( termBytes, StandardCharsets.UTF_8 );
+			postingOffsets[term] = dictionary.getLong( );
+			documentFrequencies[term] = dictionary.getInt( );
+		}
+
+		return new Segment( file, buffer, documentTableOffset, keyTableOffset, totalLength, documentCount, terms,
+				postingOffsets, documentFrequencies );
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of the key; at 64 bits collisions are not a concern for the number of documents kept here.
+	 */
+	static long hashKey( String key ) {
+		long hash = 0xcbf29ce484222325L;
+		for ( int index = 0; index < key.length( ); index++ ) {
+			hash ^= key.charAt( index );
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	Path getFile( ) {
+		return file;
+	}
+
+	int getDocumentCount( ) {
+		return documentCount;
+	}
+
+	long getTotalLength( ) {
+		return totalLength;
+	}
+
+	long getFileSize( ) {
+		return buffer.capacity( );
+	}
+
+	int getTermCount( ) {
+		return terms.length;
+	}
+
+	String getTerm( int term ) {
+		return terms[term];
+	}
+
+	/**
+	 * @return the position of {@code term} in the dictionary, or a negative number if the segment does not contain it
+	 */
+	int findTerm( String term ) {
+		return Arrays.binarySearch( terms, term );
+	}
+
+	int getDocumentFrequency( int term ) {
+		return documentFrequencies[term];
+	}
+
+	/**
+	 * @return the documents containing {@code term}, as a set that is cached since it is used to filter every query
+	 *         by source; callers must not modify it
+	 */
+	BitSet getTermDocuments( String term ) {
+		int termIndex = findTerm( term );
+		if ( termIndex < 0 ) {
+			return new BitSet( );
+		}
+
+		return filterCache.computeIfAbsent( term, ignored -> {
+			BitSet documents = new BitSet( documentCount );
+			for ( int posting = 0; posting < documentFrequencies[termIndex]; posting++ ) {
+				documents.set( getPostingDocument( termIndex, posting ) );
+			}
+			return documents;
+		} );
+	}
+
+	int getPostingDocument( int term, int posting ) {
+		return buffer.getInt( ( int ) ( postingOffsets[term] + ( long ) posting * POSTING_BYTES ) );
+	}
+
+	int getPostingFrequency( int term, int posting ) {
+		return buffer.getInt( ( int ) ( postingOffsets[term] + ( long ) posting * POSTING_BYTES + Integer.BYTES ) );
+	}
+
+	int getDocumentLength( int document ) {
+		return buffer.getInt( ( int ) ( documentTableOffset + ( long ) document * DOCUMENT_ENTRY_BYTES + Long.BYTES ) );
+	}
+
+	/**
+	 * @return the document stored under the key with {@code keyHash}, or -1
+	 */
+	int findDocument( long keyHash ) {
+		int low = 0;
+		int high = documentCount - 1;
+		while ( low <= high ) {
+			int middle = ( low + high ) >>> 1;
+			int entry = ( int ) ( keyTableOffset + ( long ) middle * KEY_ENTRY_BYTES );
+			long middleHash = buffer.getLong( entry );
+			if ( middleHash < keyHash ) {
+				low = middle + 1;
+			} else if ( middleHash > keyHash ) {
+				high = middle - 1;
+			} else {
+				return buffer.getInt( entry + Long.BYTES );
+			}
+		}
+		return -1;
+	}
+
+	long getKeyHash( int keyEntry ) {
+		return buffer.getLong( ( int ) ( keyTableOffset + ( long ) keyEntry * KEY_ENTRY_BYTES ) );
+	}
+
+	StoredDocument getDocument( int document ) {
+		int offset = ( int ) buffer.getLong( ( int ) ( documentTableOffset + ( long ) document * DOCUMENT_ENTRY_BYTES ) );
+		ByteBuffer stored = buffer.duplicate( ).position( offset );
+		return new StoredDocument( readString( stored ), readString( stored ), readString( stored ), readString( stored ),
+				readString( stored ), stored.getLong( ), getDocumentLength( document ) );
+	}
+
+	BitSet getDeletedDocuments( ) {
+		return deletedDocuments;
+	}
+
+	/**
+	 * Replaces the set of deleted documents; the set is never modified once published, so searches can read it without
+	 * locking.
+	 */
+	void setDeletedDocuments( BitSet deletedDocuments ) {
+		this.deletedDocuments = deletedDocuments;
+	}
+
+	int getLiveDocumentCount( ) {
+		return documentCount - deletedDocuments.cardinality( );
+	}
+
+	private static String readString( ByteBuffer buffer ) {
+		byte[] bytes = new byte[buffer.getInt( )];
+		buffer.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	@Override
+	public String toString( ) {
+		return "Segment [file=" + file.getFileName( ) + ", documentCount=" + documentCount + ", deleted="
+				+ deletedDocuments.cardinality( ) + "]";
+	}
+
+	static final class StoredDocument {
+
+		final String key;
+
+		final String source;
+
+		final String title;
+
+		final String url;
+
+		final String snippet;
+
+		final long timestampMillis;
+
+		final int length;
+
+		StoredDocument( String key, String source, String title, String url, String snippet, long timestampMillis,
+				int length ) {
+			this.key = key;
+			this.source = source;
+			this.title = title;
+			this.url = url;
+			this.snippet = snippet;
+			this.timestampMillis = timestampMillis;
+			this.length = length;
+		}
+
+	}
+
+}
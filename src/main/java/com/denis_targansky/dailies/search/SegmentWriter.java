@@ -0,0 +1,157 @@
+package com.denis_targansky.dailies.search;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Writes a segment file in one pass: the stored documents first, then the postings of every term in term order, then
+ * the tables {@link Segment} needs to find them. See {@link Segment} for the layout.
+ */
+final class SegmentWriter implements Closeable {
+
+	private final FileOutputStream fileOut;
+
+	private final DataOutputStream out;
+
+	private long position;
+
+	private long[] documentOffsets = new long[1024];
+
+	private long[] keyHashes = new long[1024];
+
+	private int[] documentLengths = new int[1024];
+
+	private int documentCount;
+
+	private long totalLength;
+
+	private final DataOutputStream dictionary;
+
+	private final ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream( );
+
+	private int termCount;
+
+	private String lastTerm;
+
+	private boolean postingsStarted;
+
+	SegmentWriter( Path file ) throws IOException {
+		fileOut = new FileOutputStream( file.toFile( ) );
+		out = new DataOutputStream( new BufferedOutputStream( fileOut, 1 << 16 ) );
+		dictionary = new DataOutputStream( dictionaryBytes );
+	}
+
+	/**
+	 * Stores a document under the next document number. All documents have to be added before the first term.
+	 */
+	void addDocument( String key, String source, String title, String url, String snippet, long timestampMillis,
+			int length ) throws IOException {
+		if ( postingsStarted ) {
+			throw new IllegalStateException( "Documents have to be added before the postings" );
+		}
+
+		if ( documentCount == documentOffsets.length ) {
+			int capacity = documentCount * 2;
+			documentOffsets = Arrays.copyOf( documentOffsets, capacity );
+			keyHashes = Arrays.copyOf( keyHashes, capacity );
+			documentLengths = Arrays.copyOf( documentLengths, capacity );
+		}
+		documentOffsets[documentCount] = position;
+		keyHashes[documentCount] = Segment.hashKey( key );
+		documentLengths[documentCount] = length;
+		documentCount++;
+		totalLength += length;
+
+		writeString( key );
+		writeString( source );
+		writeString( title );
+		writeString( url );
+		writeString( snippet );
+		out.writeLong( timestampMillis );
+		position += Long.BYTES;
+	}
+
+	/**
+	 * Writes the postings of {@code term}, which has to come after the previous term in {@link String} order.
+	 */
+	void addTerm( String term, int[] documents, int[] frequencies, int count ) throws IOException {
+		if ( lastTerm != null && lastTerm.compareTo( term ) >= 0 ) {
+			throw new IllegalArgumentException( "Term '" + term + "' is not after '" + lastTerm + "'" );
+		}
+		postingsStarted = true;
+		lastTerm = term;
+
+		byte[] termBytes = term.getBytes( StandardCharsets.UTF_8 );
+		dictionary.writeInt( termBytes.length );
+		dictionary.write( termBytes );
+		dictionary.writeLong( position );
+		dictionary.writeInt( count );
+		termCount++;
+
+		for ( int index = 0; index < count; index++ ) {
+			out.writeInt( documents[index] );
+			out.writeInt( frequencies[index] );
+		}
+		position += ( long ) count * Segment.POSTING_BYTES;
+	}
+
+	/**
+	 * Writes the tables and forces the file to disk.
+	 */
+	void finish( ) throws IOException {
+		long documentTableOffset = position;
+		for ( int document = 0; document < documentCount; document++ ) {
+			out.writeLong( documentOffsets[document] );
+			out.writeInt( documentLengths[document] );
+		}
+		position += ( long ) documentCount * Segment.DOCUMENT_ENTRY_BYTES;
+
+		long keyTableOffset = position;
+		int[] documentsByKey = IntStream.range( 0, documentCount ).boxed( )
+				.sorted( ( first, second ) -> Long.compare( keyHashes[first], keyHashes[second] ) ).mapToInt( Integer::intValue )
+				.toArray( );
+		for ( int document : documentsByKey ) {
+			out.writeLong( keyHashes[document] );
+			out.writeInt( document );
+		}
+		position += ( long ) documentCount * Segment.KEY_ENTRY_BYTES;
+
+		long dictionaryOffset = position;
+		dictionaryBytes.writeTo( out );
+
+		out.writeLong( documentTableOffset );
+		out.writeLong( keyTableOffset );
+		out.writeLong( dictionaryOffset );
+		out.writeLong( totalLength );
+		out.writeInt( documentCount );
+		out.writeInt( termCount );
+		out.writeInt( Segment.MAGIC );
+		out.flush( );
+		fileOut.getFD( ).sync( );
+	}
+
+	int getDocumentCount( ) {
+		return documentCount;
+	}
+
+	private void writeString( String value ) throws IOException {
+		byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+		position += Integer.BYTES + bytes.length;
+	}
+
+	@Override
+	public void close( ) throws IOException {
+		out.close( );
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.denis_targansky.dailies.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into lower case runs of letters and digits. Runs longer than {@value #MAX_TOKEN_LENGTH} characters are
+ * dropped, as they are almost always encoded data rather than words.
+ */
+final class Tokenizer {
+
+	static final int MAX_TOKEN_LENGTH = 64;
+
+	/**
+	 * Prefix of the term every document of a source is indexed under; tokens never contain the colon.
+	 */
+	static final String SOURCE_TERM_PREFIX = "source:";
+
+	private Tokenizer( ) {
+	}
+
+	static List<String> tokenize( String text ) {
+		List<String> tokens = new ArrayList<>( );
+		StringBuilder token = new StringBuilder( );
+		for ( int index = 0; index <= text.length( ); index++ ) {
+			int c = index < text.length( ) ? text.charAt( index ) : ' ';
+			if ( Character.isLetterOrDigit( c ) ) {
+				token.append( ( char ) Character.toLowerCase( c ) );
+				continue;
+			}
+
+			if ( token.length( ) > 0 && token.length( ) <= MAX_TOKEN_LENGTH ) {
+				tokens.add( token.toString( ) );
+			}
+			token.setLength( 0 );
+		}
+		return tokens;
+	}
+
+	static String getSourceTerm( String source ) {
+		return SOURCE_TERM_PREFIX + source.toLowerCase( Locale.ROOT );
+	}
+
+}
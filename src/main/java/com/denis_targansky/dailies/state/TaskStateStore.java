@@ -0,0 +1,297 @@
+package com.denis_targansky.dailies.state;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Small mutable state of the tasks (e.g. up to when data was last retrieved), kept apart from the configuration. Every
+ * change is one appended line in a journal, so updates cost a single sequential write. The journal is only forced to
+ * disk every {@value #SYNC_BATCH_SIZE} records and on {@link #sync()}, and is compacted into a snapshot of the live
+ * values once it holds mostly superseded records. Every record carries a CRC, so a record torn by a crash is detected
+ * and cut off when the journal is opened again.
+ */
+public final class TaskStateStore {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final String JOURNAL_FILE_NAME = "tasks.journal";
+
+	private static final int SYNC_BATCH_SIZE = 256;
+
+	private static final int MIN_COMPACTION_RECORDS = 1024;
+
+	private static final char OPERATION_PUT = 'P';
+
+	private static final char OPERATION_REMOVE = 'R';
+
+	private static final Map<Path, TaskStateStore> sharedStores = new ConcurrentHashMap<>( );
+
+	private final Path journalFile;
+
+	private final Map<String, String> values = new HashMap<>( );
+
+	private FileChannel journal;
+
+	private int journalRecords;
+
+	private int unsyncedRecords;
+
+	private TaskStateStore( Path folder ) throws IOException {
+		Files.createDirectories( folder );
+		journalFile = folder.resolve( JOURNAL_FILE_NAME );
+		recover( );
+		journal = FileChannel.open( journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND );
+		if ( shouldCompact( ) ) {
+			compact( );
+		}
+	}
+
+	/**
+	 * @return the store kept in {@code folder}, opening it on first use
+	 */
+	public static TaskStateStore shared( Path folder ) throws IOException {
+		Path key = folder.toAbsolutePath( ).normalize( );
+		TaskStateStore store = sharedStores.get( key );
+		if ( store != null ) {
+			return store;
+		}
+
+		synchronized ( sharedStores ) {
+			store = sharedStores.get( key );
+			if ( store == null ) {
+				store = new TaskStateStore( key );
+				sharedStores.put( key, store );
+			}
+			return store;
+		}
+	}
+
+	public static void closeAll( ) {
+		synchronized ( sharedStores ) {
+			for ( TaskStateStore store : sharedStores.values( ) ) {
+				try {
+					store.close( );
+				} catch ( IOException e ) {
+					ms.error( "Error closing task state journal {}", store.journalFile, e );
+				}
+			}
+			sharedStores.clear( );
+		}
+	}
+
+	public synchronized String get( String key ) {
+		return values.get( key );
+	}
+
+	public synchronized void put( String key, String value ) throws IOException {
+		if ( value == null ) {
+			remove( key );
+			return;
+		}
+
+		if ( value.equals( values.get( key ) ) ) {
+			return;
+		}
+
+		append( OPERATION_PUT, key, value );
+		values.put( key, value );
+	}
+
+	public synchronized void remove( String key ) throws IOException {
+		if ( !values.containsKey( key ) ) {
+			return;
+		}
+
+		append( OPERATION_REMOVE, key, "" );
+		values.remove( key );
+	}
+
+	/**
+	 * Forces every change made so far to disk, compacting the journal first if it has grown enough.
+	 */
+	public synchronized void sync( ) throws IOException {
+		if ( shouldCompact( ) ) {
+			compact( );
+		} else if ( unsyncedRecords > 0 ) {
+			journal.force( false );
+			unsyncedRecords = 0;
+		}
+	}
+
+	private synchronized void close( ) throws IOException {
+		sync( );
+		journal.close( );
+	}
+
+	private void append( char operation, String key, String value ) throws IOException {
+		ByteBuffer record = ByteBuffer.wrap( encodeRecord( operation, key, value ) );
+		while ( record.hasRemaining( ) ) {
+			journal.write( record );
+		}
+		journalRecords++;
+
+		if ( ++unsyncedRecords >= SYNC_BATCH_SIZE ) {
+			journal.force( false );
+			unsyncedRecords = 0;
+		}
+	}
+
+	private boolean shouldCompact( ) {
+		return journalRecords >= MIN_COMPACTION_RECORDS && journalRecords > 2 * values.size( );
+	}
+
+	private void compact( ) throws IOException {
+		ms.debug( "Compacting task state journal {} from {} records to {}", journalFile, journalRecords, values.size( ) );
+		Path tempFile = Files.createTempFile( journalFile.getParent( ), JOURNAL_FILE_NAME, ".tmp" );
+		try ( FileChannel snapshot = FileChannel.open( tempFile, StandardOpenOption.WRITE ) ) {
+			for ( Map.Entry<String, String> entry : values.entrySet( ) ) {
+				ByteBuffer record = ByteBuffer.wrap( encodeRecord( OPERATION_PUT, entry.getKey( ), entry.getValue( ) ) );
+				while ( record.hasRemaining( ) ) {
+					snapshot.write( record );
+				}
+			}
+			snapshot.force( true );
+		}
+
+		journal.close( );
+		Files.move( tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		journal = FileChannel.open( journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+		journalRecords = values.size( );
+		unsyncedRecords = 0;
+	}
+
+	private void recover( ) throws IOException {
+		if ( !Files.exists( journalFile ) ) {
+			return;
+		}
+
+		byte[] content = Files.readAllBytes( journalFile );
+		int recordStart = 0;
+		while ( recordStart < content.length ) {
+			int recordEnd = recordStart;
+			while ( recordEnd < content.length && content[recordEnd] != '\n' ) {
+				recordEnd++;
+			}
+
+			if ( recordEnd == content.length || !applyRecord( content, recordStart, recordEnd ) ) {
+				break;
+			}
+			journalRecords++;
+			recordStart = recordEnd + 1;
+		}
+
+		if ( recordStart < content.length ) {
+			ms.warn( "Discarding {} bytes of incomplete or corrupted records at the end of task state journal {}",
+					content.length - recordStart, journalFile );
+			try ( FileChannel channel = FileChannel.open( journalFile, StandardOpenOption.WRITE ) ) {
+				channel.truncate( recordStart );
+				channel.force( true );
+			}
+		}
+
+		ms.info( "Recovered {} task state values from {} journal records in {}", values.size( ), journalRecords,
+				journalFile );
+	}
+
+	private boolean applyRecord( byte[] content, int start, int end ) {
+		// <crc32 as 8 hex digits> <operation> <key>\t<value>, with the key and value escaped
+		if ( end - start < 11 || content[start + 8] != ' ' || content[start + 10] != ' ' ) {
+			return false;
+		}
+
+		CRC32 crc = new CRC32( );
+		crc.update( content, start + 9, end - start - 9 );
+		long expectedCrc;
+		try {
+			expectedCrc = Long.parseLong( new String( content, start, 8, StandardCharsets.US_ASCII ), 16 );
+		} catch ( NumberFormatException e ) {
+			return false;
+		}
+		if ( crc.getValue( ) != expectedCrc ) {
+			return false;
+		}
+
+		String body = new String( content, start + 11, end - start - 11, StandardCharsets.UTF_8 );
+		int separator = body.indexOf( '\t' );
+		if ( separator < 0 ) {
+			return false;
+		}
+
+		String key = unescape( body.substring( 0, separator ) );
+		switch ( content[start + 9] ) {
+			case OPERATION_PUT -> values.put( key, unescape( body.substring( separator + 1 ) ) );
+			case OPERATION_REMOVE -> values.remove( key );
+			default -> {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] encodeRecord( char operation, String key, String value ) {
+		byte[] body = ( operation + " " + escape( key ) + "\t" + escape( value ) ).getBytes( StandardCharsets.UTF_8 );
+		CRC32 crc = new CRC32( );
+		crc.update( body );
+		byte[] record = new byte[9 + body.length + 1];
+		System.arraycopy( String.format( "%08x ", crc.getValue( ) ).getBytes( StandardCharsets.US_ASCII ), 0, record, 0, 9 );
+		System.arraycopy( body, 0, record, 9, body.length );
+		record[record.length - 1] = '\n';
+		return record;
+	}
+
+	private static String escape( String text ) {
+		StringBuilder escaped = new StringBuilder( text.length( ) );
+		for ( int index = 0; index < text.length( ); index++ ) {
+			char c = text.charAt( index );
+			switch ( c ) {
+				case '\\' -> escaped.append( "\\\\" );
+				case '\t' -> escaped.append( "\\t" );
+				case '\n' -> escaped.append( "\\n" );
+				case '\r' -> escaped.append( "\\r" );
+				default -> escaped.append( c );
+			}
+		}
+		return escaped.toString( );
+	}
+
+	private static String unescape( String text ) {
+		StringBuilder unescaped = new StringBuilder( text.length( ) );
+		for ( int index = 0; index < text.length( ); index++ ) {
+			char c = text.charAt( index );
+			if ( c != '\\' || index + 1 == text.length( ) ) {
+				unescaped.append( c );
+				continue;
+			}
+
+			char escapedChar = text.charAt( ++index );
+			switch ( escapedChar ) {
+				case 't' -> unescaped.append( '\t' );
+				case 'n' -> unescaped.append( '\n' );
+				case 'r' -> unescaped.append( '\r' );
+				default -> unescaped.append( escapedChar );
+			}
+		}
+		return unescaped.toString( );
+	}
+
+	@Override
+	public String toString( ) {
+		return "TaskStateStore [journalFile=" + journalFile + ", values=" + values.size( ) + ", journalRecords="
+				+ journalRecords + "]";
+	}
+
+}
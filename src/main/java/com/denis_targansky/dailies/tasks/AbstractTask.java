@@ -2,41 +2,98 @@ package com.denis_targansky.dailies.tasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.denis_targansky.dailies.Configuration;
 import com.denis_targansky.dailies.Configuration.TaskConfiguration;
+import com.denis_targansky.dailies.http.HttpService;
+import com.denis_targansky.dailies.http.RateLimitPolicy;
+import com.denis_targansky.dailies.http.RateLimiter;
+import com.denis_targansky.dailies.metrics.TaskMetrics;
+import com.denis_targansky.dailies.search.SearchIndex;
+import com.denis_targansky.dailies.state.TaskStateStore;
 
 public abstract class AbstractTask implements Runnable {
 
+	public static final String STATE_FOLDER = "state";
+
+	public static final String SEARCH_INDEX_FOLDER = "search";
+
 	protected final Logger log = LogManager.getLogger( );
 
 	protected final Map<String, String> taskProperties;
 
-	private final Configuration config;
+	protected final TaskMetrics metrics = new TaskMetrics( getClass( ).getSimpleName( ) );
 
 	private final TaskConfiguration taskConfig;
 
 	private final String mainOutputFolder;
 
+	private final RateLimitPolicy rateLimitPolicy;
+
+	private final TaskStateStore stateStore;
+
+	private final SearchIndex searchIndex;
+
 	protected AbstractTask( Configuration config, TaskConfiguration taskConfig )
 			throws InvalidTaskConfigurationException {
 		super( );
-		this.config = config;
 		this.taskConfig = taskConfig;
 		this.taskProperties = taskConfig.getTaskProperties( );
 		this.mainOutputFolder = config.getMainOutputFolder( );
+		this.rateLimitPolicy = new RateLimitPolicy(
+				getDoubleTaskProperty( RateLimitPolicy.PROPERTY_REQUESTS_PER_SECOND,
+						RateLimitPolicy.DEFAULT_REQUESTS_PER_SECOND, RateLimiter.MIN_REQUESTS_PER_SECOND ),
+				getIntTaskProperty( RateLimitPolicy.PROPERTY_BURST, RateLimitPolicy.DEFAULT_BURST, 1 ),
+				getIntTaskProperty( RateLimitPolicy.PROPERTY_MAX_RETRIES, RateLimitPolicy.DEFAULT_MAX_RETRIES, 0 ),
+				Duration.ofSeconds( getIntTaskProperty( RateLimitPolicy.PROPERTY_MAX_BACKOFF_SECONDS,
+						RateLimitPolicy.DEFAULT_MAX_BACKOFF_SECONDS, 1 ) ) );
+
+		Path stateFolder = getMainOutputFolder( ).toPath( ).resolve( STATE_FOLDER );
+		try {
+			this.stateStore = TaskStateStore.shared( stateFolder );
+		} catch ( IOException e ) {
+			throw new InvalidTaskConfigurationException( "Could not open task state in " + stateFolder.toAbsolutePath( ), e );
+		}
+
+		Path searchIndexFolder = getMainOutputFolder( ).toPath( ).resolve( SEARCH_INDEX_FOLDER );
+		try {
+			this.searchIndex = SearchIndex.shared( searchIndexFolder );
+		} catch ( IOException e ) {
+			throw new InvalidTaskConfigurationException(
+					"Could not open search index in " + searchIndexFolder.toAbsolutePath( ), e );
+		}
 	}
 
 	@Override
 	public final void run( ) {
 		log.info( "{} is running at {}", getClass( ).getName( ), LocalDateTime.now( ) );
-		boolean taskSucceeded = runTask( );
+		long startNanos = System.nanoTime( );
+		boolean taskSucceeded = false;
+		try {
+			taskSucceeded = runTask( );
+		} finally {
+			metrics.recordTaskRun( System.nanoTime( ) - startNanos, taskSucceeded );
+			try {
+				stateStore.sync( );
+			} catch ( IOException e ) {
+				log.error( "Could not save task state", e );
+			}
+			try {
+				searchIndex.commit( );
+			} catch ( IOException e ) {
+				log.error( "Could not update the search index", e );
+			}
+		}
 		log.info( "{} has completed running {} at {}", getClass( ).getName( ),
 				( taskSucceeded ? "successfully" : "with errors" ), LocalDateTime.now( ) );
 	}
@@ -54,6 +111,26 @@ public abstract class AbstractTask implements Runnable {
 		}
 	}
 
+	protected HttpService getHttpService( ) {
+		return HttpService.getShared( );
+	}
+
+	/**
+	 * @return the index shared by every task writing to the same output folder; documents added to it become
+	 *         searchable when the current run completes
+	 */
+	protected SearchIndex getSearchIndex( ) {
+		return searchIndex;
+	}
+
+	protected RateLimitPolicy getRateLimitPolicy( ) {
+		return rateLimitPolicy;
+	}
+
+	protected File getMainOutputFolder( ) {
+		return new File( mainOutputFolder );
+	}
+
 	protected File getEnsuredOutputFolder( ) {
 		File outputFolder = new File( mainOutputFolder + File.separator + getClass( ).getSimpleName( ) );
 		if ( !outputFolder.exists( ) ) {
@@ -63,8 +140,75 @@ public abstract class AbstractTask implements Runnable {
 		return outputFolder;
 	}
 
-	protected void updateTaskProperty( String key, Object value ) throws IOException, ConfigurationException {
-		config.updateProperty( taskConfig.getTaskPropertyPrefix( ) + key, value );
+	protected ExecutorService newStageExecutor( String stageName, int threads ) {
+		String threadNamePrefix = getClass( ).getSimpleName( ) + "-" + stageName + "-";
+		AtomicInteger threadCount = new AtomicInteger( );
+		return Executors.newFixedThreadPool( threads, runnable -> {
+			Thread thread = new Thread( runnable, threadNamePrefix + threadCount.incrementAndGet( ) );
+			thread.setDaemon( true );
+			return thread;
+		} );
+	}
+
+	protected int getIntTaskProperty( String key, int defaultValue, int minimumValue )
+			throws InvalidTaskConfigurationException {
+		String value = taskProperties.get( key );
+		if ( value == null || value.isBlank( ) ) {
+			return defaultValue;
+		}
+
+		int intValue;
+		try {
+			intValue = Integer.parseInt( value.trim( ) );
+		} catch ( NumberFormatException e ) {
+			throw new InvalidTaskConfigurationException( "Invalid number '" + value + "' in " + key + " property", e );
+		}
+
+		if ( intValue < minimumValue ) {
+			throw new InvalidTaskConfigurationException( key + " property must be at least " + minimumValue );
+		}
+
+		return intValue;
+	}
+
+	protected double getDoubleTaskProperty( String key, double defaultValue, double minimumValue )
+			throws InvalidTaskConfigurationException {
+		String value = taskProperties.get( key );
+		if ( value == null || value.isBlank( ) ) {
+			return defaultValue;
+		}
+
+		double doubleValue;
+		try {
+			doubleValue = Double.parseDouble( value.trim( ) );
+		} catch ( NumberFormatException e ) {
+			throw new InvalidTaskConfigurationException( "Invalid number '" + value + "' in " + key + " property", e );
+		}
+
+		if ( !( doubleValue >= minimumValue ) ) {
+			throw new InvalidTaskConfigurationException( key + " property must be at least " + minimumValue );
+		}
+
+		return doubleValue;
+	}
+
+	protected String getTaskPropertyPrefix( ) {
+		return taskConfig.getTaskPropertyPrefix( );
+	}
+
+	/**
+	 * @return the value last saved under {@code key} by this task, which outlives restarts and configuration changes
+	 */
+	protected String getTaskState( String key ) {
+		return stateStore.get( taskConfig.getTaskPropertyPrefix( ) + key );
+	}
+
+	/**
+	 * Saves {@code value} under {@code key}; a {@code null} value removes the key. The change is appended to the state
+	 * journal right away and forced to disk at the latest when the current run completes.
+	 */
+	protected void putTaskState( String key, String value ) throws IOException {
+		stateStore.put( taskConfig.getTaskPropertyPrefix( ) + key, value );
 	}
 
 }
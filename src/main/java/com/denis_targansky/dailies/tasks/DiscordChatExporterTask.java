@@ -2,19 +2,35 @@ package com.denis_targansky.dailies.tasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.configuration2.ex.ConfigurationException;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 
 import com.denis_targansky.dailies.Configuration;
 import com.denis_targansky.dailies.Configuration.TaskConfiguration;
+import com.denis_targansky.dailies.discord.ExportParser;
+import com.denis_targansky.dailies.discord.MessageStore;
+import com.denis_targansky.dailies.search.SearchDocument;
 
 public class DiscordChatExporterTask extends AbstractTask {
 
@@ -32,18 +48,60 @@ public class DiscordChatExporterTask extends AbstractTask {
 
 	private static final String OUTPUT_FOLDER_CHATS = "chats";
 
+	private static final String OUTPUT_FOLDER_EXPORT_LOGS = "export-logs";
+
+	private static final String OUTPUT_FOLDER_MESSAGES = "messages";
+
+	private static final String SEARCH_SOURCE_DISCORD = "discord";
+
+	private static final String SEARCH_KEY_PREFIX_MESSAGE = "discord:";
+
+	private static final DateTimeFormatter EXPORT_FILE_TIMESTAMP = DateTimeFormatter.ofPattern( "yyyyMMdd-HHmmss" );
+
 	private static final String DCE_DLL_NAME = "DiscordChatExporter.Cli.dll";
 
+	private static final String PROPERTY_MAX_CONCURRENT_EXPORTS = "max-concurrent-exports";
+
+	private static final int DEFAULT_MAX_CONCURRENT_EXPORTS = 2;
+
+	private static final String PROPERTY_EXPORT_TIMEOUT_SECONDS = "export-timeout-seconds";
+
+	private static final int DEFAULT_EXPORT_TIMEOUT_SECONDS = 1800;
+
+	private static final String PROPERTY_EXPORT_MAX_RETRIES = "export-max-retries";
+
+	private static final int DEFAULT_EXPORT_MAX_RETRIES = 3;
+
+	private static final String PROPERTY_EXPORT_RETRY_BACKOFF_SECONDS = "export-retry-backoff-seconds";
+
+	private static final int DEFAULT_EXPORT_RETRY_BACKOFF_SECONDS = 30;
+
+	private static final String PROPERTY_KEEP_RAW_EXPORTS = "keep-raw-exports";
+
+	private static final long MAX_RETRY_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis( 15 );
+
+	private static final int OUTPUT_TAIL_LINES = 20;
+
 	private final File dcePath;
 
 	private final String discordAuthToken;
 
 	private final Map<Integer, String> indexToChannelIdMap = new HashMap<>( );
 
-	private final Map<Integer, LocalDateTime> indexToLastQueryTimeMap = new HashMap<>( );
+	private final Map<Integer, LocalDateTime> indexToLastQueryTimeMap = new ConcurrentHashMap<>( );
 
 	private final Map<Integer, String> indexToFilterMap = new HashMap<>( );
 
+	private final int maxConcurrentExports;
+
+	private final Duration exportTimeout;
+
+	private final int exportMaxRetries;
+
+	private final Duration exportRetryBackoff;
+
+	private final boolean keepRawExports;
+
 	public DiscordChatExporterTask( Configuration config, TaskConfiguration taskConfig )
 			throws InvalidTaskConfigurationException {
 		super( config, taskConfig );
@@ -79,7 +137,7 @@ public class DiscordChatExporterTask extends AbstractTask {
 			}
 
 			if ( key.endsWith( PROPERTY_CHANNEL_LAST_QUERY_TIME_SUFFIX ) ) {
-				indexToLastQueryTimeMap.put( index, LocalDateTime.parse( value ) );
+				indexToLastQueryTimeMap.put( index, parseLastQueryTime( key, value ) );
 			}
 
 			if ( key.endsWith( PROPERTY_CHANNEL_FILTER_SUFFIX ) ) {
@@ -91,61 +149,216 @@ public class DiscordChatExporterTask extends AbstractTask {
 			throw new InvalidTaskConfigurationException( "Must specify at least one Discord channel ID through "
 					+ PROPERTY_CHANNEL_PREFIX + "#" + PROPERTY_CHANNEL_ID_SUFFIX + " property" );
 		}
+
+		maxConcurrentExports = getIntTaskProperty( PROPERTY_MAX_CONCURRENT_EXPORTS, DEFAULT_MAX_CONCURRENT_EXPORTS, 1 );
+		exportTimeout = Duration
+				.ofSeconds( getIntTaskProperty( PROPERTY_EXPORT_TIMEOUT_SECONDS, DEFAULT_EXPORT_TIMEOUT_SECONDS, 1 ) );
+		exportMaxRetries = getIntTaskProperty( PROPERTY_EXPORT_MAX_RETRIES, DEFAULT_EXPORT_MAX_RETRIES, 0 );
+		exportRetryBackoff = Duration.ofSeconds(
+				getIntTaskProperty( PROPERTY_EXPORT_RETRY_BACKOFF_SECONDS, DEFAULT_EXPORT_RETRY_BACKOFF_SECONDS, 1 ) );
+		keepRawExports = Boolean.parseBoolean( taskProperties.getOrDefault( PROPERTY_KEEP_RAW_EXPORTS, "true" ).trim( ) );
+
+		// The last query times used to be written back into the configuration, which now only holds the starting point
+		for ( int index : indexToChannelIdMap.keySet( ) ) {
+			String stateKey = getChannelLastQueryTimeKey( index );
+			String savedLastQueryTime = getTaskState( stateKey );
+			if ( savedLastQueryTime != null ) {
+				indexToLastQueryTimeMap.put( index, parseLastQueryTime( stateKey, savedLastQueryTime ) );
+			} else if ( indexToLastQueryTimeMap.containsKey( index ) ) {
+				try {
+					putTaskState( stateKey, indexToLastQueryTimeMap.get( index ).toString( ) );
+				} catch ( IOException e ) {
+					throw new InvalidTaskConfigurationException( "Could not migrate " + stateKey + " into the task state", e );
+				}
+			}
+		}
+	}
+
+	private static LocalDateTime parseLastQueryTime( String key, String value ) throws InvalidTaskConfigurationException {
+		try {
+			return LocalDateTime.parse( value );
+		} catch ( DateTimeParseException e ) {
+			throw new InvalidTaskConfigurationException( "Invalid date and time '" + value + "' in " + key, e );
+		}
+	}
+
+	private static String getChannelLastQueryTimeKey( int index ) {
+		return PROPERTY_CHANNEL_PREFIX + index + PROPERTY_CHANNEL_LAST_QUERY_TIME_SUFFIX;
 	}
 
 	@Override
 	protected boolean runTask( ) {
-		for ( Map.Entry<Integer, String> indexChannelIdEntry : indexToChannelIdMap.entrySet( ) ) {
-			int index = indexChannelIdEntry.getKey( );
-			String channelId = indexChannelIdEntry.getValue( );
-			String filter = indexToFilterMap.get( index );
-			List<String> arguments = new ArrayList<>( );
-			arguments.add( "cmd.exe" );
-			arguments.add( "/c" );
-			arguments.add( "dotnet" );
-			arguments.add( "\"" + DCE_DLL_NAME + "\"" );
-			arguments.add( "export" );
-			arguments.add( "-t" );
-			arguments.add( discordAuthToken );
-			arguments.add( "-c" );
-			arguments.add( channelId );
-			arguments.add( "-o" );
-			arguments.add( "\"" + getEnsuredChatExportFolder( ).getAbsolutePath( ) + "\"" );
-			arguments.add( "-f" );
-			arguments.add( "Json" );
-			arguments.add( "--after" );
-			arguments.add( "\""
-					+ indexToLastQueryTimeMap.getOrDefault( index, LocalDateTime.now( ).minusDays( 1 ) ).toString( ) + "\"" );
-			if ( filter != null && !filter.isBlank( ) ) {
-				arguments.add( "--filter" );
-				arguments.add( filter );
+		ExecutorService exportExecutor = newStageExecutor( "export", maxConcurrentExports );
+		try {
+			List<Future<Boolean>> exports = new ArrayList<>( );
+			for ( Map.Entry<Integer, String> indexChannelIdEntry : indexToChannelIdMap.entrySet( ) ) {
+				int index = indexChannelIdEntry.getKey( );
+				String channelId = indexChannelIdEntry.getValue( );
+				ChannelExport export = new ChannelExport( index, channelId, exportExecutor );
+				exportExecutor.execute( ( ) -> export.attempt( 0 ) );
+				exports.add( export.result );
+			}
+
+			boolean errors = false;
+			for ( Future<Boolean> export : exports ) {
+				try {
+					errors |= !export.get( );
+				} catch ( ExecutionException e ) {
+					log.error( "Unexpected error exporting channel", e.getCause( ) );
+					errors = true;
+				}
 			}
-			ProcessBuilder processBuilder = new ProcessBuilder( arguments );
-			processBuilder.directory( dcePath );
+			return !errors;
+		} catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			return false;
+		} finally {
+			exportExecutor.shutdownNow( );
+		}
+	}
+
+	private boolean runExporter( int index, String channelId, List<String> arguments, File outputLogFile )
+			throws InterruptedException {
+		ProcessBuilder processBuilder = new ProcessBuilder( arguments );
+		processBuilder.directory( dcePath );
+		processBuilder.redirectErrorStream( true );
+		processBuilder.redirectOutput( outputLogFile );
 
-			processBuilder.redirectErrorStream( true );
+		Process process;
+		try {
+			process = processBuilder.start( );
+		} catch ( IOException e ) {
+			log.error( new ParameterizedMessage( "Error starting Discord chat exporter for channel {} ({})", index, channelId ),
+					e );
+			return false;
+		}
 
+		try {
+			if ( !process.waitFor( exportTimeout.toMillis( ), TimeUnit.MILLISECONDS ) ) {
+				log.error( "Discord chat exporter for channel {} ({}) did not finish within {}", index, channelId,
+						exportTimeout );
+				return false;
+			}
+		} finally {
+			if ( process.isAlive( ) ) {
+				// The exporter runs under a shell, which would leave it running if only the shell was stopped
+				process.descendants( ).forEach( ProcessHandle::destroyForcibly );
+				process.destroyForcibly( );
+			}
+		}
+
+		if ( process.exitValue( ) != 0 ) {
+			log.error( "Discord chat exporter for channel {} ({}) failed with exit code {}:{}{}", index, channelId,
+					process.exitValue( ), System.lineSeparator( ), readOutputTail( outputLogFile ) );
+			return false;
+		}
+
+		log.debug( "Exported channel {} ({})", index, channelId );
+		return true;
+	}
+
+	/**
+	 * Appends the messages of the export to the channel's message store, skipping the ones it already holds, and
+	 * deletes the export afterwards unless raw exports are kept.
+	 */
+	private boolean ingestExport( int index, String channelId, File exportFile ) {
+		if ( !exportFile.exists( ) ) {
+			// The exporter does not write a file when there was nothing to export
+			log.debug( "No new messages in channel {} ({})", index, channelId );
+			return true;
+		}
+
+		long startNanos = metrics.startStep( );
+		Path storeFolder = getEnsuredOutputFolder( ).toPath( ).resolve( OUTPUT_FOLDER_MESSAGES ).resolve( channelId );
+		try ( MessageStore store = MessageStore.open( storeFolder );
+				InputStream in = Files.newInputStream( exportFile.toPath( ) ) ) {
+			int sizeBefore = store.size( );
+			int messageCount = ExportParser.parse( in, message -> {
+				if ( store.add( message ) ) {
+					getSearchIndex( ).add( new SearchDocument( SEARCH_KEY_PREFIX_MESSAGE + channelId + ":" + message.getId( ),
+							SEARCH_SOURCE_DISCORD, message.getAuthorName( ), null, message.getContent( ),
+							message.getTimestampMillis( ) ) );
+				}
+			} );
+			store.flush( );
+			log.info( "Ingested {} new of {} exported messages from channel {} ({})", store.size( ) - sizeBefore,
+					messageCount, index, channelId );
+		} catch ( IOException e ) {
+			log.error( new ParameterizedMessage( "Error ingesting export {} of channel {} ({})",
+					exportFile.getAbsolutePath( ), index, channelId ), e );
+			return false;
+		} finally {
+			metrics.endStep( "ingest", startNanos );
+		}
+
+		if ( !keepRawExports ) {
 			try {
-				processBuilder.inheritIO( ).start( );
+				Files.delete( exportFile.toPath( ) );
 			} catch ( IOException e ) {
-				log.error( new ParameterizedMessage( "Error running Discord chat exporter with arguments {}", arguments ), e );
+				log.warn( "Could not delete raw export {}", exportFile.getAbsolutePath( ), e );
 			}
-
-			updateChannelLastQuery( index, LocalDateTime.now( ) );
 		}
 		return true;
 	}
 
+	private static String readOutputTail( File outputLogFile ) {
+		try {
+			List<String> lines = Files.readAllLines( outputLogFile.toPath( ) );
+			return String.join( System.lineSeparator( ),
+					lines.subList( Math.max( 0, lines.size( ) - OUTPUT_TAIL_LINES ), lines.size( ) ) );
+		} catch ( IOException | UncheckedIOException e ) {
+			return "(output not available: " + e.getMessage( ) + ")";
+		}
+	}
+
+	List<String> buildExportArguments( int index, String channelId, File exportFile ) {
+		String filter = indexToFilterMap.get( index );
+		List<String> arguments = new ArrayList<>( );
+		arguments.add( "cmd.exe" );
+		arguments.add( "/c" );
+		arguments.add( "dotnet" );
+		arguments.add( "\"" + DCE_DLL_NAME + "\"" );
+		arguments.add( "export" );
+		arguments.add( "-t" );
+		arguments.add( discordAuthToken );
+		arguments.add( "-c" );
+		arguments.add( channelId );
+		arguments.add( "-o" );
+		arguments.add( "\"" + exportFile.getAbsolutePath( ) + "\"" );
+		arguments.add( "-f" );
+		arguments.add( "Json" );
+		arguments.add( "--after" );
+		arguments.add( "\""
+				+ indexToLastQueryTimeMap.getOrDefault( index, LocalDateTime.now( ).minusDays( 1 ) ).toString( ) + "\"" );
+		if ( filter != null && !filter.isBlank( ) ) {
+			arguments.add( "--filter" );
+			arguments.add( filter );
+		}
+		return arguments;
+	}
+
+	Map<Integer, String> getChannelIds( ) {
+		return indexToChannelIdMap;
+	}
+
 	private void updateChannelLastQuery( int index, LocalDateTime lastQueryTime ) {
 		indexToLastQueryTimeMap.put( index, lastQueryTime );
 		try {
-			updateTaskProperty( PROPERTY_CHANNEL_PREFIX + index + PROPERTY_CHANNEL_LAST_QUERY_TIME_SUFFIX,
-					lastQueryTime.toString( ) );
-		} catch ( IOException | ConfigurationException e ) {
+			putTaskState( getChannelLastQueryTimeKey( index ), lastQueryTime.toString( ) );
+		} catch ( IOException e ) {
 			log.error( new ParameterizedMessage( "Could not update channel last query time for index {}", index ), e );
 		}
 	}
 
+	private File getEnsuredExportLogFolder( ) {
+		File logFolder = new File( getEnsuredOutputFolder( ), OUTPUT_FOLDER_EXPORT_LOGS );
+		if ( !logFolder.exists( ) ) {
+			logFolder.mkdirs( );
+		}
+
+		return logFolder;
+	}
+
 	private File getEnsuredChatExportFolder( ) {
 		File outputFolder = new File( getEnsuredOutputFolder( ), OUTPUT_FOLDER_CHATS );
 		if ( !outputFolder.exists( ) ) {
@@ -155,4 +368,86 @@ public class DiscordChatExporterTask extends AbstractTask {
 		return outputFolder;
 	}
 
+	/**
+	 * Exports the channel, retrying with exponential backoff, ingests the export into the channel's message store, and
+	 * only moves its last query time forward once both succeeded. Retries wait on a timer instead of an export thread,
+	 * so other channels can export in the meantime.
+	 */
+	private final class ChannelExport {
+
+		private final int index;
+
+		private final String channelId;
+
+		private final Executor exportExecutor;
+
+		private final CompletableFuture<Boolean> result = new CompletableFuture<>( );
+
+		// Messages posted while the export runs are picked up by the next run
+		private final LocalDateTime queryTime = LocalDateTime.now( );
+
+		private final File exportFile;
+
+		private final File outputLogFile;
+
+		private final List<String> arguments;
+
+		private ChannelExport( int index, String channelId, Executor exportExecutor ) {
+			this.index = index;
+			this.channelId = channelId;
+			this.exportExecutor = exportExecutor;
+			exportFile = new File( getEnsuredChatExportFolder( ),
+					channelId + "-" + EXPORT_FILE_TIMESTAMP.format( queryTime ) + ".json" );
+			outputLogFile = new File( getEnsuredExportLogFolder( ), "channel-" + index + ".log" );
+			arguments = buildExportArguments( index, channelId, exportFile );
+		}
+
+		private void attempt( int attempt ) {
+			try {
+				long startNanos = metrics.startStep( );
+				boolean succeeded = runExporter( index, channelId, arguments, outputLogFile );
+				metrics.endStep( "export", startNanos );
+				if ( succeeded ) {
+					succeeded = ingestExport( index, channelId, exportFile );
+				}
+				if ( succeeded ) {
+					updateChannelLastQuery( index, queryTime );
+					result.complete( true );
+					return;
+				}
+
+				metrics.countError( "export" );
+				if ( attempt >= exportMaxRetries ) {
+					log.error( "Giving up exporting channel {} ({}) after {} attempts, see {}", index, channelId,
+							attempt + 1, outputLogFile.getAbsolutePath( ) );
+					result.complete( false );
+					return;
+				}
+
+				long backoffMillis = Math.min( exportRetryBackoff.toMillis( ) << Math.min( attempt, 20 ),
+						MAX_RETRY_BACKOFF_MILLIS );
+				backoffMillis += ThreadLocalRandom.current( ).nextLong( backoffMillis / 2 + 1 );
+				log.warn( "Retrying export of channel {} ({}) in {}", index, channelId,
+						Duration.ofMillis( backoffMillis ) );
+				CompletableFuture.delayedExecutor( backoffMillis, TimeUnit.MILLISECONDS )
+						.execute( ( ) -> retry( attempt + 1 ) );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread( ).interrupt( );
+				result.complete( false );
+			} catch ( RuntimeException e ) {
+				result.completeExceptionally( e );
+			}
+		}
+
+		private void retry( int attempt ) {
+			try {
+				exportExecutor.execute( ( ) -> attempt( attempt ) );
+			} catch ( RejectedExecutionException e ) {
+				// The run was stopped while waiting for the retry
+				result.complete( false );
+			}
+		}
+
+	}
+
 }
@@ -1,57 +1,390 @@
 package com.denis_targansky.dailies.tasks;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import org.jsoup.Connection;
+import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
 import com.denis_targansky.dailies.Configuration;
 import com.denis_targansky.dailies.Configuration.TaskConfiguration;
+import com.denis_targansky.dailies.http.HttpService;
+import com.denis_targansky.dailies.http.HttpService.Response;
+import com.denis_targansky.dailies.scraping.FieldRule;
+import com.denis_targansky.dailies.scraping.OutputFormat;
+import com.denis_targansky.dailies.scraping.RecordWriter;
+import com.denis_targansky.dailies.scraping.ScrapeTarget;
+import com.denis_targansky.dailies.search.SearchDocument;
 
 public class WebScraperTask extends AbstractTask {
 
 	private static final String PROPERTY_SCRAPING_URL_PREFIX = "scraping-url";
 
-	private final List<String> scrapingUrls = new ArrayList<>( );
+	private static final String PROPERTY_SELECTOR_PREFIX = "selector.";
+
+	private static final String PROPERTY_ITEM_SELECTOR = "item-selector";
+
+	private static final String PROPERTY_OUTPUT_FORMAT = "output-format";
+
+	private static final String PROPERTY_MAX_CONCURRENT_FETCHES = "max-concurrent-fetches";
+
+	private static final int DEFAULT_MAX_CONCURRENT_FETCHES = 16;
+
+	private static final String PROPERTY_MAX_PAGE_BYTES = "max-page-bytes";
+
+	private static final int DEFAULT_MAX_PAGE_BYTES = 10 * 1024 * 1024;
+
+	private static final Pattern SCRAPING_URL_KEY_PATTERN = Pattern
+			.compile( Pattern.quote( PROPERTY_SCRAPING_URL_PREFIX ) + "\\.(\\d+)(?:\\.(.+))?" );
+
+	private static final String DEFAULT_FIELD = "title";
+
+	private static final String STATE_PAGE_PREFIX = "page.";
+
+	private static final String SEARCH_SOURCE_PAGES = "pages";
+
+	private static final String SEARCH_KEY_PREFIX_PAGE = "page:";
+
+	private static final String STATE_ETAG_SUFFIX = ".etag";
+
+	private static final String STATE_LAST_MODIFIED_SUFFIX = ".last-modified";
+
+	private static final String STATE_CONTENT_HASH_SUFFIX = ".content-hash";
+
+	private static final String REPORT_FIELD_CHANGE = "change";
+
+	private static final String REPORT_FIELD_RECORDS = "records";
+
+	private static final List<String> REPORT_FIELDS = List.of( REPORT_FIELD_CHANGE, REPORT_FIELD_RECORDS );
+
+	private static final DateTimeFormatter OUTPUT_FILE_TIMESTAMP = DateTimeFormatter.ofPattern( "yyyyMMdd-HHmmss" );
+
+	private final List<ScrapeTarget> scrapeTargets = new ArrayList<>( );
+
+	private final List<String> fields;
+
+	private final OutputFormat outputFormat;
+
+	private final int maxConcurrentFetches;
+
+	private final int maxPageBytes;
 
 	public WebScraperTask( Configuration config, TaskConfiguration taskConfig ) throws InvalidTaskConfigurationException {
 		super( config, taskConfig );
+		Map<String, String> defaultSelectors = new TreeMap<>( );
+		Map<Integer, String> indexToUrlMap = new TreeMap<>( );
+		Map<Integer, String> indexToItemSelectorMap = new TreeMap<>( );
+		Map<Integer, Map<String, String>> indexToSelectorsMap = new TreeMap<>( );
 		for ( Map.Entry<String, String> taskPropertyEntry : taskProperties.entrySet( ) ) {
 			String key = taskPropertyEntry.getKey( );
 			String value = taskPropertyEntry.getValue( );
 
-			if ( key.isBlank( ) ) {
+			if ( key.startsWith( PROPERTY_SELECTOR_PREFIX ) ) {
+				defaultSelectors.put( key.substring( PROPERTY_SELECTOR_PREFIX.length( ) ), value );
+				continue;
+			}
+
+			Matcher keyMatcher = SCRAPING_URL_KEY_PATTERN.matcher( key );
+			if ( !keyMatcher.matches( ) || value.isBlank( ) ) {
 				continue;
 			}
 
-			if ( key.matches( PROPERTY_SCRAPING_URL_PREFIX + "\\.\\d+" ) ) {
-				scrapingUrls.add( value );
+			int index = Integer.parseInt( keyMatcher.group( 1 ) );
+			String suffix = keyMatcher.group( 2 );
+			if ( suffix == null ) {
+				indexToUrlMap.put( index, value.trim( ) );
+			} else if ( suffix.equals( PROPERTY_ITEM_SELECTOR ) ) {
+				indexToItemSelectorMap.put( index, value );
+			} else if ( suffix.startsWith( PROPERTY_SELECTOR_PREFIX ) ) {
+				indexToSelectorsMap.computeIfAbsent( index, ignored -> new TreeMap<>( ) )
+						.put( suffix.substring( PROPERTY_SELECTOR_PREFIX.length( ) ), value );
 			}
 		}
 
-		if ( scrapingUrls.isEmpty( ) ) {
+		if ( indexToUrlMap.isEmpty( ) ) {
 			throw new InvalidTaskConfigurationException(
 					"No URLs specified through " + PROPERTY_SCRAPING_URL_PREFIX + " property" );
 		}
+
+		Set<String> allFields = new LinkedHashSet<>( );
+		for ( Map.Entry<Integer, String> indexUrlEntry : indexToUrlMap.entrySet( ) ) {
+			int index = indexUrlEntry.getKey( );
+			Map<String, String> selectors = new LinkedHashMap<>( defaultSelectors );
+			selectors.putAll( indexToSelectorsMap.getOrDefault( index, Map.of( ) ) );
+			if ( selectors.isEmpty( ) ) {
+				selectors.put( DEFAULT_FIELD, DEFAULT_FIELD );
+			}
+
+			try {
+				Map<String, FieldRule> fieldRules = new LinkedHashMap<>( );
+				for ( Map.Entry<String, String> selector : selectors.entrySet( ) ) {
+					fieldRules.put( selector.getKey( ), FieldRule.parse( selector.getValue( ) ) );
+				}
+				scrapeTargets.add( new ScrapeTarget( indexUrlEntry.getValue( ), indexToItemSelectorMap.get( index ), fieldRules ) );
+			} catch ( IllegalArgumentException e ) {
+				throw new InvalidTaskConfigurationException(
+						"Invalid extraction rules for " + PROPERTY_SCRAPING_URL_PREFIX + "." + index + ": " + e.getMessage( ), e );
+			}
+			allFields.addAll( selectors.keySet( ) );
+		}
+		fields = List.copyOf( allFields );
+
+		outputFormat = OutputFormat
+				.fromPropertyValue( taskProperties.getOrDefault( PROPERTY_OUTPUT_FORMAT, OutputFormat.NDJSON.getPropertyValue( ) ) );
+		if ( outputFormat == null ) {
+			throw new InvalidTaskConfigurationException( "Invalid " + PROPERTY_OUTPUT_FORMAT + " property" );
+		}
+
+		maxConcurrentFetches = getIntTaskProperty( PROPERTY_MAX_CONCURRENT_FETCHES, DEFAULT_MAX_CONCURRENT_FETCHES, 1 );
+		maxPageBytes = getIntTaskProperty( PROPERTY_MAX_PAGE_BYTES, DEFAULT_MAX_PAGE_BYTES, 1 );
 	}
 
 	@Override
 	protected boolean runTask( ) {
-		for ( String scrapingUrl : scrapingUrls ) {
-			Connection connection = Jsoup.connect( scrapingUrl );
-			try {
-				Document document = connection.get( );
-			} catch ( IOException e ) {
-				log.error( "Error getting document from {}", scrapingUrl );
-				continue;
+		HttpService http = getHttpService( );
+		String timestamp = LocalDateTime.now( ).format( OUTPUT_FILE_TIMESTAMP );
+		File outputFile = new File( getEnsuredOutputFolder( ), "scrape-" + timestamp + "." + outputFormat.getFileExtension( ) );
+		File reportFile = new File( getEnsuredOutputFolder( ),
+				"changes-" + timestamp + "." + outputFormat.getFileExtension( ) );
+		ExecutorService parseExecutor = newStageExecutor( "parse", Runtime.getRuntime( ).availableProcessors( ) );
+		Semaphore inFlightFetches = new Semaphore( maxConcurrentFetches );
+		AtomicBoolean errors = new AtomicBoolean( );
+		Map<PageChange, AtomicInteger> pageChangeCounts = new EnumMap<>( PageChange.class );
+		for ( PageChange change : PageChange.values( ) ) {
+			pageChangeCounts.put( change, new AtomicInteger( ) );
+		}
+
+		try ( RecordWriter writer = newRecordWriter( outputFile.toPath( ), fields );
+				RecordWriter reportWriter = newRecordWriter( reportFile.toPath( ), REPORT_FIELDS ) ) {
+			for ( ScrapeTarget target : scrapeTargets ) {
+				inFlightFetches.acquireUninterruptibly( );
+				http.sendAsync( newConditionalRequest( http, target ), getRateLimitPolicy( ) )
+						.thenApplyAsync( response -> metrics.timeStep( "parse", ( ) -> scrape( target, response ) ), parseExecutor )
+						.thenAccept( page -> {
+							save( writer, reportWriter, page );
+							pageChangeCounts.get( page.change ).incrementAndGet( );
+						} ).whenComplete( ( ignored, e ) -> {
+							if ( e != null ) {
+								log.error( new ParameterizedMessage( "Error scraping {}", target.getUrl( ) ),
+										HttpService.asIOException( e ) );
+								metrics.countError( "scrape" );
+								errors.set( true );
+							}
+							inFlightFetches.release( );
+						} );
 			}
 
+			inFlightFetches.acquireUninterruptibly( maxConcurrentFetches );
+			log.info( "Scraped {} pages ({}), wrote {} records to {}", scrapeTargets.size( ), pageChangeCounts,
+					writer.getRecordCount( ), outputFile.getAbsolutePath( ) );
+		} catch ( IOException e ) {
+			log.error( new ParameterizedMessage( "Error writing scraped records to '{}'", outputFile.getAbsolutePath( ) ), e );
+			errors.set( true );
+		} finally {
+			parseExecutor.shutdown( );
+		}
+
+		deleteIfNothingChanged( outputFile, reportFile, pageChangeCounts );
+		// Deleted files have no length, so only the kept ones are counted
+		metrics.recordBytesWritten( outputFile.length( ) + reportFile.length( ) );
+		return !errors.get( );
+	}
+
+	RecordWriter newRecordWriter( Path file, List<String> recordFields ) throws IOException {
+		return new RecordWriter( outputFormat, file, recordFields );
+	}
+
+	private HttpRequest newConditionalRequest( HttpService http, ScrapeTarget target ) {
+		HttpRequest.Builder request = http.newRequest( target.getUrl( ) );
+		String etag = getTaskState( getPageStateKey( target, STATE_ETAG_SUFFIX ) );
+		if ( etag != null ) {
+			request.header( "If-None-Match", etag );
+		}
+		String lastModified = getTaskState( getPageStateKey( target, STATE_LAST_MODIFIED_SUFFIX ) );
+		if ( lastModified != null ) {
+			request.header( "If-Modified-Since", lastModified );
 		}
-		return true;
+		return request.build( );
+	}
+
+	/**
+	 * Reads the page and parses it only if its content differs from the previous run.
+	 */
+	private ScrapedPage scrape( ScrapeTarget target, Response response ) {
+		try ( response ) {
+			String etag = response.headers( ).firstValue( "ETag" ).orElse( null );
+			String lastModified = response.headers( ).firstValue( "Last-Modified" ).orElse( null );
+			String previousHash = getTaskState( getPageStateKey( target, STATE_CONTENT_HASH_SUFFIX ) );
+			if ( response.statusCode( ) == 304 ) {
+				// A 304 only has to repeat the validators that changed
+				return new ScrapedPage( target, PageChange.NOT_MODIFIED, List.of( ),
+						etag != null ? etag : getTaskState( getPageStateKey( target, STATE_ETAG_SUFFIX ) ),
+						lastModified != null ? lastModified : getTaskState( getPageStateKey( target, STATE_LAST_MODIFIED_SUFFIX ) ),
+						previousHash );
+			}
+
+			if ( response.statusCode( ) != 200 ) {
+				// Throttled responses only get here once the rate limit policy's retries are exhausted
+				throw new IOException( "HTTP " + response.statusCode( ) );
+			}
+
+			byte[] content = response.body( ).readNBytes( maxPageBytes );
+			if ( response.body( ).read( ) >= 0 ) {
+				log.warn( "Page {} is larger than {} bytes, only its beginning was scraped", target.getUrl( ), maxPageBytes );
+			}
+
+			String hash = HexFormat.of( ).formatHex( MessageDigest.getInstance( "SHA-256" ).digest( content ) );
+			if ( hash.equals( previousHash ) ) {
+				return new ScrapedPage( target, PageChange.UNCHANGED, List.of( ), etag, lastModified, hash );
+			}
+
+			Document document = Jsoup.parse( new ByteArrayInputStream( content ), getCharset( response ),
+					response.uri( ).toString( ) );
+			return new ScrapedPage( target, previousHash == null ? PageChange.NEW : PageChange.CHANGED,
+					target.extract( document ), etag, lastModified, hash );
+		} catch ( IOException e ) {
+			throw new CompletionException( e );
+		} catch ( NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 * Writes the records of a changed page, then remembers what was seen so the next run can skip it if it stays the
+	 * same. Nothing is remembered for a page whose records could not be written, so it is scraped again next time.
+	 */
+	private void save( RecordWriter writer, RecordWriter reportWriter, ScrapedPage page ) {
+		ScrapeTarget target = page.target;
+		try {
+			for ( Map<String, String> record : page.records ) {
+				writer.write( target.getUrl( ), record );
+			}
+			if ( page.change == PageChange.NEW || page.change == PageChange.CHANGED ) {
+				indexPage( page );
+				reportWriter.write( target.getUrl( ), Map.of( REPORT_FIELD_CHANGE, page.change.getReportValue( ),
+						REPORT_FIELD_RECORDS, String.valueOf( page.records.size( ) ) ) );
+			}
+			writer.flush( );
+			reportWriter.flush( );
+
+			putTaskState( getPageStateKey( target, STATE_ETAG_SUFFIX ), page.etag );
+			putTaskState( getPageStateKey( target, STATE_LAST_MODIFIED_SUFFIX ), page.lastModified );
+			putTaskState( getPageStateKey( target, STATE_CONTENT_HASH_SUFFIX ), page.contentHash );
+		} catch ( IOException e ) {
+			throw new CompletionException( e );
+		}
+	}
+
+	/**
+	 * Indexes the records of a page as one document, which replaces the one indexed for the previous version of the
+	 * page.
+	 */
+	private void indexPage( ScrapedPage page ) throws IOException {
+		String title = null;
+		StringBuilder text = new StringBuilder( );
+		for ( Map<String, String> record : page.records ) {
+			String recordTitle = record.get( DEFAULT_FIELD );
+			if ( title == null && recordTitle != null && !recordTitle.isBlank( ) ) {
+				title = recordTitle;
+			}
+			for ( String value : record.values( ) ) {
+				text.append( value ).append( '\n' );
+			}
+		}
+		getSearchIndex( ).add( new SearchDocument( SEARCH_KEY_PREFIX_PAGE + page.target.getUrl( ), SEARCH_SOURCE_PAGES,
+				title == null ? page.target.getUrl( ) : title, page.target.getUrl( ), text.toString( ), System.currentTimeMillis( ) ) );
+	}
+
+	private void deleteIfNothingChanged( File outputFile, File reportFile, Map<PageChange, AtomicInteger> pageChangeCounts ) {
+		if ( pageChangeCounts.get( PageChange.NEW ).get( ) + pageChangeCounts.get( PageChange.CHANGED ).get( ) == 0 ) {
+			outputFile.delete( );
+			reportFile.delete( );
+		}
+	}
+
+	private static String getPageStateKey( ScrapeTarget target, String suffix ) {
+		return STATE_PAGE_PREFIX + target.getUrl( ) + suffix;
+	}
+
+	private static String getCharset( Response response ) {
+		String contentType = response.headers( ).firstValue( "Content-Type" ).orElse( "" );
+		int charsetIndex = contentType.toLowerCase( ).indexOf( "charset=" );
+		if ( charsetIndex < 0 ) {
+			return null;
+		}
+
+		return contentType.substring( charsetIndex + "charset=".length( ) ).split( ";" )[0].replace( "\"", "" ).trim( );
+	}
+
+	private enum PageChange {
+
+		NEW( "new" ), CHANGED( "changed" ), UNCHANGED( "unchanged" ), NOT_MODIFIED( "not-modified" );
+
+		private final String reportValue;
+
+		PageChange( String reportValue ) {
+			this.reportValue = reportValue;
+		}
+
+		private String getReportValue( ) {
+			return reportValue;
+		}
+
+		@Override
+		public String toString( ) {
+			return reportValue;
+		}
+
+	}
+
+	private static final class ScrapedPage {
+
+		private final ScrapeTarget target;
+
+		private final PageChange change;
+
+		private final List<Map<String, String>> records;
+
+		private final String etag;
+
+		private final String lastModified;
+
+		private final String contentHash;
+
+		private ScrapedPage( ScrapeTarget target, PageChange change, List<Map<String, String>> records, String etag,
+				String lastModified, String contentHash ) {
+			this.target = target;
+			this.change = change;
+			this.records = records;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+		}
+
 	}
 
 }
@@ -1,77 +1,181 @@
 package com.denis_targansky.dailies.tasks;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.net.URLConnection;
-import java.time.Instant;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.message.ParameterizedMessage;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
 
 import com.denis_targansky.dailies.Configuration;
 import com.denis_targansky.dailies.Configuration.TaskConfiguration;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.denis_targansky.dailies.cache.TtlCache;
+import com.denis_targansky.dailies.cache.TtlCache.Codec;
+import com.denis_targansky.dailies.finance.Article;
+import com.denis_targansky.dailies.finance.NewsSearchParser;
+import com.denis_targansky.dailies.finance.QuoteSnapshot;
+import com.denis_targansky.dailies.finance.SeenArticleFilter;
+import com.denis_targansky.dailies.http.HttpService;
+import com.denis_targansky.dailies.http.HttpService.Response;
+import com.denis_targansky.dailies.http.RateLimitPolicy;
+import com.denis_targansky.dailies.http.RateLimiter;
+import com.denis_targansky.dailies.metrics.TaskMetrics;
+import com.denis_targansky.dailies.reports.ConsolidatedReport;
+import com.denis_targansky.dailies.reports.ReportFormat;
+import com.denis_targansky.dailies.reports.ReportRenderer;
+import com.denis_targansky.dailies.reports.TickerReport;
+import com.denis_targansky.dailies.search.SearchDocument;
+import com.denis_targansky.dailies.timeseries.HistoryBackfill;
+import com.denis_targansky.dailies.timeseries.QuoteHistoryStore;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import yahoofinance.Stock;
 import yahoofinance.Utils;
 import yahoofinance.YahooFinance;
-import yahoofinance.quotes.stock.StockQuote;
-import yahoofinance.quotes.stock.StockStats;
-import yahoofinance.util.RedirectableRequest;
+import yahoofinance.histquotes.HistoricalQuote;
+import yahoofinance.histquotes.Interval;
+import yahoofinance.histquotes2.HistQuotes2Request;
 
 public class YahooFinanceTask extends AbstractTask {
 
 	private static final String PROPERTY_TEMPLATE_FILE_PATH = "template-file-path";
 
+	private static final String PROPERTY_REPORT_FORMAT = "report-format";
+
+	private static final String PROPERTY_CONSOLIDATED_REPORT = "consolidated-report";
+
+	private static final String PROPERTY_CONSOLIDATED_REPORT_ROW_WINDOW = "consolidated-report.row-window";
+
+	private static final int DEFAULT_CONSOLIDATED_REPORT_ROW_WINDOW = 100;
+
+	/** Replaces TCKR in the file name of the consolidated report, which holds every ticker. */
+	private static final String CONSOLIDATED_REPORT_TICKER = "ALL";
+
 	private static final String PROPERTY_TICKERS = "tickers";
 
-	private static final String TERM_COMPANY_NAME = "{company_name}";
+	private static final String PROPERTY_BATCH_SIZE = "batch-size";
+
+	private static final int DEFAULT_BATCH_SIZE = 50;
+
+	private static final String PROPERTY_MAX_IN_FLIGHT_TICKERS = "max-in-flight-tickers";
+
+	private static final int DEFAULT_MAX_IN_FLIGHT_TICKERS = 4;
+
+	private static final String PROPERTY_QUOTE_CACHE_TTL_SECONDS = "cache.quote-ttl-seconds";
+
+	private static final int DEFAULT_QUOTE_CACHE_TTL_SECONDS = 300;
+
+	private static final String HISTORY_FOLDER = "history";
+
+	private static final String PROPERTY_BACKFILL_YEARS = "backfill.years";
+
+	private static final int DEFAULT_BACKFILL_YEARS = 0;
+
+	private static final String PROPERTY_BACKFILL_CHUNK_MONTHS = "backfill.chunk-months";
+
+	private static final int DEFAULT_BACKFILL_CHUNK_MONTHS = 12;
+
+	private static final String PROPERTY_BACKFILL_MAX_CONCURRENT_CHUNKS = "backfill.max-concurrent-chunks";
+
+	private static final int DEFAULT_BACKFILL_MAX_CONCURRENT_CHUNKS = 8;
+
+	private static final String PROPERTY_BACKFILL_MAX_CHUNKS_PER_RUN = "backfill.max-chunks-per-run";
+
+	private static final int DEFAULT_BACKFILL_MAX_CHUNKS_PER_RUN = 100;
+
+	private static final String BACKFILL_FOLDER = "backfill";
+
+	private static final String SEARCH_SOURCE_NEWS = "news";
 
-	private static final String TERM_TICKER = "{ticker}";
+	private static final String SEARCH_KEY_PREFIX_NEWS = "news:";
 
-	private static final String TERM_STOCK_PRICE = "{stock_price}";
+	private static final String PROPERTY_NEWS_CACHE_TTL_SECONDS = "cache.news-ttl-seconds";
 
-	private static final String TERM_MARKET_CAP = "{market_cap}";
+	private static final int DEFAULT_NEWS_CACHE_TTL_SECONDS = 1800;
 
-	private static final String TERM_52_WEEK_LOW = "{52_week_low}";
+	private static final String PROPERTY_CACHE_MAX_ENTRIES = "cache.max-entries";
 
-	private static final String TERM_52_WEEK_HIGH = "{52_week_high}";
+	private static final int DEFAULT_CACHE_MAX_ENTRIES = 10000;
 
-	private static final String TERM_AVERAGE_VOLUME = "{average_volume}";
+	private static final String PROPERTY_CACHE_PERSISTENT = "cache.persistent";
 
-	private static final String TERM_SCRAPE_DATE = "{scrape_date}";
+	private static final String CACHE_FOLDER = "cache";
 
-	private static final String TERM_HEADLINE_TITLE = "{headline_title_###}";
+	private static final String PROPERTY_SEEN_ARTICLES_MAX_AGE_DAYS = "seen-articles.max-age-days";
 
-	private static final String TERM_HEADLINE_LINK = "{headline_link_###}";
+	private static final int DEFAULT_SEEN_ARTICLES_MAX_AGE_DAYS = 30;
+
+	private static final String PROPERTY_SEEN_ARTICLES_CAPACITY = "seen-articles.capacity";
+
+	private static final int DEFAULT_SEEN_ARTICLES_CAPACITY = 100_000;
+
+	private static final String SEEN_ARTICLES_FILE_PREFIX = "seen-articles-";
+
+	private static final String SEEN_ARTICLES_FILE_EXTENSION = ".bloom";
 
 	private static final String YAHOO_FINANCE_API_SEARCH_URL = "https://query2.finance.yahoo.com/v1/finance/search";
 
+	private static final String YAHOO_FINANCE_QUOTES_HOST = URI.create( YahooFinance.QUOTES_QUERY1V7_BASE_URL ).getHost( );
+
+	private static final Pattern HTTP_STATUS_PATTERN = Pattern.compile( "HTTP response code: (\\d{3})" );
+
 	private static final ObjectMapper objectMapper = new ObjectMapper( );
 
 	private final String templateFilePath;
 
+	private final ReportRenderer reportRenderer;
+
+	private final boolean consolidatedReport;
+
+	private final int consolidatedReportRowWindow;
+
 	private final List<String> tickers;
 
+	private final int batchSize;
+
+	private final int maxInFlightTickers;
+
+	private final Duration quoteCacheTtl;
+
+	private final Duration newsCacheTtl;
+
+	private final TtlCache<QuoteSnapshot> quoteCache;
+
+	private final QuoteHistoryStore quoteHistory;
+
+	private final TtlCache<List<Article>> newsCache;
+
+	/** The headlines already put in a report, or null if every run reports all the headlines found. */
+	private final SeenArticleFilter seenArticles;
+
+	/** The history backfill of new tickers, or null if backfill.years is 0. */
+	private final HistoryBackfill backfill;
+
+	private final int backfillMaxConcurrentChunks;
+
 	public YahooFinanceTask( Configuration config, TaskConfiguration taskConfig )
 			throws InvalidTaskConfigurationException {
 		super( config, taskConfig );
@@ -79,22 +183,81 @@ public class YahooFinanceTask extends AbstractTask {
 		if ( templateFilePath == null || templateFilePath.isEmpty( ) ) {
 			throw new InvalidTaskConfigurationException( "Missing " + PROPERTY_TEMPLATE_FILE_PATH + " property" );
 		}
+		ReportFormat reportFormat = ReportFormat
+				.fromPropertyValue( taskProperties.getOrDefault( PROPERTY_REPORT_FORMAT, ReportFormat.DOCX.getPropertyValue( ) ) );
+		if ( reportFormat == null ) {
+			throw new InvalidTaskConfigurationException( "Invalid " + PROPERTY_REPORT_FORMAT + " property" );
+		}
+		consolidatedReport = Boolean.parseBoolean( taskProperties.get( PROPERTY_CONSOLIDATED_REPORT ) );
+		consolidatedReportRowWindow = getIntTaskProperty( PROPERTY_CONSOLIDATED_REPORT_ROW_WINDOW,
+				DEFAULT_CONSOLIDATED_REPORT_ROW_WINDOW, 1 );
+		// Only the DOCX reports are built from the template, the other formats just take their file name from it
 		File templateFile = new File( templateFilePath );
-		if ( !templateFile.exists( ) ) {
+		if ( !consolidatedReport && reportFormat == ReportFormat.DOCX && !templateFile.exists( ) ) {
 			throw new InvalidTaskConfigurationException( "File " + templateFile.getAbsolutePath( ) + " does not exist" );
 		}
+		reportRenderer = consolidatedReport ? null : ReportRenderer.of( reportFormat, templateFile.toPath( ) );
 
 		tickers = Arrays.asList( taskProperties.get( PROPERTY_TICKERS ).split( "," ) ).stream( )
-				.filter( Predicate.not( String::isEmpty ) ).toList( );
+				.map( ticker -> ticker.trim( ).toUpperCase( ) ).filter( Predicate.not( String::isEmpty ) ).distinct( ).toList( );
 		if ( tickers.isEmpty( ) ) {
 			throw new InvalidTaskConfigurationException(
 					"Missing comma separated tickers in " + PROPERTY_TICKERS + " property" );
 		}
+
+		batchSize = getIntTaskProperty( PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE, 1 );
+		maxInFlightTickers = getIntTaskProperty( PROPERTY_MAX_IN_FLIGHT_TICKERS, DEFAULT_MAX_IN_FLIGHT_TICKERS, 1 );
+
+		quoteCacheTtl = Duration
+				.ofSeconds( getIntTaskProperty( PROPERTY_QUOTE_CACHE_TTL_SECONDS, DEFAULT_QUOTE_CACHE_TTL_SECONDS, 0 ) );
+		newsCacheTtl = Duration
+				.ofSeconds( getIntTaskProperty( PROPERTY_NEWS_CACHE_TTL_SECONDS, DEFAULT_NEWS_CACHE_TTL_SECONDS, 0 ) );
+		int cacheMaxEntries = getIntTaskProperty( PROPERTY_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_ENTRIES, 1 );
+		Path cacheFolder = Boolean.parseBoolean( taskProperties.get( PROPERTY_CACHE_PERSISTENT ) )
+				? getMainOutputFolder( ).toPath( ).resolve( CACHE_FOLDER )
+				: null;
+		quoteCache = TtlCache.shared( "yahoo-quotes", cacheMaxEntries, cacheFolder,
+				Codec.json( objectMapper, objectMapper.constructType( QuoteSnapshot.class ) ) );
+		newsCache = TtlCache.shared( "yahoo-news", cacheMaxEntries, cacheFolder, Codec.json( objectMapper,
+				objectMapper.getTypeFactory( ).constructCollectionType( List.class, Article.class ) ) );
+		TaskMetrics.monitorCache( quoteCache );
+		TaskMetrics.monitorCache( newsCache );
+		quoteHistory = QuoteHistoryStore.shared( getEnsuredOutputFolder( ).toPath( ).resolve( HISTORY_FOLDER ) );
+		int seenArticlesMaxAgeDays = getIntTaskProperty( PROPERTY_SEEN_ARTICLES_MAX_AGE_DAYS,
+				DEFAULT_SEEN_ARTICLES_MAX_AGE_DAYS, 0 );
+		// Every task remembers its own headlines, as another task may publish them in another report
+		String seenArticlesFile = SEEN_ARTICLES_FILE_PREFIX + getTaskPropertyPrefix( ).replaceAll( "\\.$", "" )
+				+ SEEN_ARTICLES_FILE_EXTENSION;
+		seenArticles = seenArticlesMaxAgeDays == 0 ? null
+				: SeenArticleFilter.shared( getEnsuredOutputFolder( ).toPath( ).resolve( seenArticlesFile ),
+						getIntTaskProperty( PROPERTY_SEEN_ARTICLES_CAPACITY, DEFAULT_SEEN_ARTICLES_CAPACITY, 1 ),
+						Duration.ofDays( seenArticlesMaxAgeDays ) );
+
+		int backfillYears = getIntTaskProperty( PROPERTY_BACKFILL_YEARS, DEFAULT_BACKFILL_YEARS, 0 );
+		backfill = backfillYears == 0 ? null
+				: new HistoryBackfill( getEnsuredOutputFolder( ).toPath( ).resolve( BACKFILL_FOLDER ),
+						new HistoryBackfill.State( ) {
+
+							@Override
+							public String get( String key ) {
+								return getTaskState( key );
+							}
+
+							@Override
+							public void put( String key, String value ) throws IOException {
+								putTaskState( key, value );
+							}
+
+						}, this::getDailyHistory, metrics, backfillYears,
+						getIntTaskProperty( PROPERTY_BACKFILL_CHUNK_MONTHS, DEFAULT_BACKFILL_CHUNK_MONTHS, 1 ),
+						getIntTaskProperty( PROPERTY_BACKFILL_MAX_CHUNKS_PER_RUN, DEFAULT_BACKFILL_MAX_CHUNKS_PER_RUN, 1 ) );
+		backfillMaxConcurrentChunks = getIntTaskProperty( PROPERTY_BACKFILL_MAX_CONCURRENT_CHUNKS,
+				DEFAULT_BACKFILL_MAX_CONCURRENT_CHUNKS, 1 );
 	}
 
 	@Override
 	protected boolean runTask( ) {
-		boolean errors = false;
+		AtomicBoolean errors = new AtomicBoolean( );
 		LocalDateTime now = LocalDateTime.now( );
 		File templateFile = new File( templateFilePath );
 		String datedFileName = templateFile.getName( ).replace( "yyyy", String.format( "%04d", now.getYear( ) ) )
@@ -103,239 +266,391 @@ public class YahooFinanceTask extends AbstractTask {
 				.replace( "HH", String.format( "%02d", now.getHour( ) ) )
 				.replace( "mm", String.format( "%02d", now.getMinute( ) ) )
 				.replace( "ss", String.format( "%02d", now.getSecond( ) ) );
-		for ( String ticker : tickers ) {
-			ticker = ticker.trim( ).toUpperCase( );
-			Stock stock;
-			try {
-				stock = YahooFinance.get( ticker );
-			} catch ( IOException e ) {
-				log.error( new ParameterizedMessage( "Error retrieving information for ticker '{}'", ticker ), e );
-				errors = true;
-				continue;
-			}
-
-			StockQuote quote = stock.getQuote( );
-			StockStats stats = stock.getStats( );
-			List<Article> articles = getTickerNews( ticker, true );
-
-			Map<String, String> termToValueMap = new HashMap<>( );
-			termToValueMap.put( TERM_COMPANY_NAME, stock.getName( ) );
-			termToValueMap.put( TERM_TICKER, ticker );
-			termToValueMap.put( TERM_STOCK_PRICE, quote.getPrice( ).toString( ) );
-			termToValueMap.put( TERM_MARKET_CAP, stats.getMarketCap( ).toString( ) );
-			termToValueMap.put( TERM_52_WEEK_LOW, quote.getYearLow( ).toString( ) );
-			termToValueMap.put( TERM_52_WEEK_HIGH, quote.getYearHigh( ).toString( ) );
-			termToValueMap.put( TERM_AVERAGE_VOLUME, quote.getAvgVolume( ).toString( ) );
-			termToValueMap.put( TERM_SCRAPE_DATE, now.toLocalDate( ).toString( ) );
-			for ( int index = 0; index < articles.size( ); index++ ) {
-				Article article = articles.get( index );
-				termToValueMap.put( TERM_HEADLINE_TITLE.replace( "###", String.valueOf( index + 1 ) ), article.getTitle( ) );
-				termToValueMap.put( TERM_HEADLINE_LINK.replace( "###", String.valueOf( index + 1 ) ), article.getLink( ) );
+		int extensionIndex = datedFileName.lastIndexOf( '.' );
+		datedFileName = ( extensionIndex > 0 ? datedFileName.substring( 0, extensionIndex ) : datedFileName ) + "."
+				+ ( consolidatedReport ? ConsolidatedReport.FILE_EXTENSION : reportRenderer.getFormat( ).getFileExtension( ) );
+
+		ExecutorService fetchExecutor = newStageExecutor( "fetch", 1 );
+		ExecutorService newsExecutor = newStageExecutor( "news", maxInFlightTickers );
+		ExecutorService renderExecutor = newStageExecutor( "render",
+				Math.min( maxInFlightTickers, Runtime.getRuntime( ).availableProcessors( ) ) );
+		Semaphore inFlightTickers = new Semaphore( maxInFlightTickers );
+		ConsolidatedReport consolidated = consolidatedReport ? new ConsolidatedReport( consolidatedReportRowWindow ) : null;
+		// The headlines of the consolidated report are only published once the workbook is written
+		Queue<TickerJob> consolidatedJobs = new ConcurrentLinkedQueue<>( );
+		try {
+			List<List<String>> batches = new ArrayList<>( );
+			for ( int batchStart = 0; batchStart < tickers.size( ); batchStart += batchSize ) {
+				batches.add( tickers.subList( batchStart, Math.min( batchStart + batchSize, tickers.size( ) ) ) );
 			}
 
-			log.debug( "Term to value map for ticker {}: {}", ticker, termToValueMap );
-
-			File destinationFile = new File( getEnsureTickerOutputFolder( ticker ).getAbsolutePath( ) + File.separator
-					+ datedFileName.replace( "TCKR", ticker ) );
-			try ( XWPFDocument document = new XWPFDocument( new FileInputStream( templateFile ) ) ) {
-				boolean changesMade = false;
-				for ( XWPFParagraph paragraph : document.getParagraphs( ) ) {
-					for ( XWPFRun run : paragraph.getRuns( ) ) {
-						String runText = run.getText( 0 );
-						if ( runText == null || runText.isEmpty( ) ) {
-							continue;
-						}
-
-						boolean replacementOccurred = false;
-						for ( Entry<String, String> termEntry : termToValueMap.entrySet( ) ) {
-							String term = termEntry.getKey( );
-							String value = termEntry.getValue( );
-							if ( runText.contains( term ) ) {
-								runText = runText.replace( term, value );
-								replacementOccurred = true;
-								log.debug( "Replaced match for {} to {}", term, value );
-							}
-						}
+			// The next batch of quotes is requested while the tickers of the current batch move through the pipeline
+			CompletableFuture<Map<String, QuoteSnapshot>> nextQuotes = CompletableFuture
+					.supplyAsync( ( ) -> getQuotes( batches.get( 0 ) ), fetchExecutor );
+			for ( int batchIndex = 0; batchIndex < batches.size( ); batchIndex++ ) {
+				Map<String, QuoteSnapshot> quotes = nextQuotes.join( );
+				if ( batchIndex + 1 < batches.size( ) ) {
+					List<String> nextBatch = batches.get( batchIndex + 1 );
+					nextQuotes = CompletableFuture.supplyAsync( ( ) -> getQuotes( nextBatch ), fetchExecutor );
+				}
 
-						if ( replacementOccurred ) {
-							run.setText( runText, 0 );
-							changesMade = true;
-						}
+				for ( String ticker : batches.get( batchIndex ) ) {
+					QuoteSnapshot quote = quotes.get( ticker );
+					if ( quote == null ) {
+						metrics.countError( "fetch" );
+						errors.set( true );
+						continue;
 					}
+
+					inFlightTickers.acquireUninterruptibly( );
+					TickerJob job = new TickerJob( ticker, quote, consolidated != null ? null
+							: new File( getEnsureTickerOutputFolder( ticker ), datedFileName.replace( "TCKR", ticker ) ) );
+					CompletableFuture
+							.runAsync( ( ) -> job.articles = metrics.timeStep( "news", ( ) -> getCachedTickerNews( ticker, true ) ),
+									newsExecutor )
+							.thenRunAsync( ( ) -> renderTickerReport( job, now, consolidated, consolidatedJobs ),
+									renderExecutor )
+							.whenComplete( ( ignored, e ) -> {
+								if ( e != null ) {
+									log.error( new ParameterizedMessage( "Error generating file for ticker '{}'", ticker ), e );
+									errors.set( true );
+								} else if ( job.failed ) {
+									errors.set( true );
+								}
+								inFlightTickers.release( );
+							} );
 				}
+			}
 
-				if ( changesMade ) {
-					try ( FileOutputStream out = new FileOutputStream( destinationFile ) ) {
-						document.write( out );
-					} catch ( IOException e ) {
-						log.error( new ParameterizedMessage( "Error writing template file to '{}' for ticker '{}'",
-								destinationFile.getAbsolutePath( ), ticker ), e );
-						errors = true;
-					}
+			inFlightTickers.acquireUninterruptibly( maxInFlightTickers );
+			log.info( "Cache statistics: {}, {}", quoteCache, newsCache );
+
+			if ( consolidated != null ) {
+				if ( writeConsolidatedReport( consolidated, datedFileName.replace( "TCKR", CONSOLIDATED_REPORT_TICKER ) ) ) {
+					consolidatedJobs.forEach( this::markPublished );
+				} else {
+					errors.set( true );
+				}
+			}
+		} finally {
+			if ( consolidated != null ) {
+				try {
+					consolidated.close( );
+				} catch ( IOException e ) {
+					log.error( "Could not delete the temporary files of the consolidated report", e );
 				}
+			}
+			try {
+				quoteHistory.sync( );
 			} catch ( IOException e ) {
-				log.error( new ParameterizedMessage( "Error reading template file '{}' for ticker '{}'",
-						templateFile.getAbsolutePath( ), ticker ), e );
-				errors = true;
+				log.error( "Could not save quote history", e );
 			}
+			if ( seenArticles != null ) {
+				try {
+					seenArticles.save( );
+				} catch ( IOException e ) {
+					log.error( "Could not save seen articles", e );
+				}
+			}
+			fetchExecutor.shutdown( );
+			newsExecutor.shutdown( );
+			renderExecutor.shutdown( );
+		}
+
+		if ( backfill != null && !runBackfill( ) ) {
+			errors.set( true );
 		}
 
-		return !errors;
+		return !errors.get( );
 	}
 
-	private List<Article> getTickerNews( String ticker, boolean onlyExclusive ) {
-		Map<String, String> params = new LinkedHashMap<>( );
-		params.put( "q", ticker );
+	/**
+	 * Fetches the next chunks of daily history of the tickers that have not been backfilled yet. A run fetches at most
+	 * backfill.max-chunks-per-run chunks, so adding tickers does not hold up the daily run until the whole history is
+	 * retrieved.
+	 */
+	private boolean runBackfill( ) {
+		ExecutorService backfillExecutor = newStageExecutor( "backfill", backfillMaxConcurrentChunks );
+		try {
+			return backfill.run( tickers, LocalDate.now( ZoneOffset.UTC ), backfillExecutor );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			return false;
+		} finally {
+			backfillExecutor.shutdownNow( );
+		}
+	}
 
-		String url = YAHOO_FINANCE_API_SEARCH_URL + "?" + Utils.getURLParameters( params );
+	private List<HistoricalQuote> getDailyHistory( String ticker, LocalDate from, LocalDate until ) throws IOException {
+		return callYahooFinance( ( ) -> new HistQuotes2Request( ticker, toCalendar( from ), toCalendar( until ),
+				Interval.DAILY ).getResult( ) );
+	}
 
-		// Get JSON from Yahoo
-		log.info( "Sending request: {}", url );
+	private static Calendar toCalendar( LocalDate date ) {
+		return GregorianCalendar.from( date.atStartOfDay( ZoneOffset.UTC ) );
+	}
 
-		List<Article> articles = new ArrayList<>( );
-		JsonNode node;
+	private Map<String, QuoteSnapshot> getQuotes( List<String> batch ) {
+		long startNanos = metrics.startStep( );
 		try {
-			URL request = new URL( url );
-			RedirectableRequest redirectableRequest = new RedirectableRequest( request, 5 );
-			redirectableRequest.setConnectTimeout( YahooFinance.CONNECTION_TIMEOUT );
-			redirectableRequest.setReadTimeout( YahooFinance.CONNECTION_TIMEOUT );
-			URLConnection connection = redirectableRequest.openConnection( );
-
-			InputStreamReader is = new InputStreamReader( connection.getInputStream( ) );
-			node = objectMapper.readTree( is );
-		} catch ( IOException e ) {
-			log.error( new ParameterizedMessage( "Error searching news for ticker {}", ticker ), e );
-			return articles;
+			return quoteCache.getAll( batch, quoteCacheTtl, this::getStocks );
+		} catch ( IOException | RuntimeException e ) {
+			// The tickers of the batch count as failed, the other batches still go ahead
+			log.error( new ParameterizedMessage( "Error retrieving information for tickers {}", batch ), e );
+			return Map.of( );
+		} finally {
+			metrics.endStep( "fetch", startNanos );
 		}
+	}
 
-		if ( !node.has( "news" ) || !node.get( "news" ).has( 0 ) ) {
-			log.info( "No news found for ticker '{}'", ticker );
-			return articles;
+	private Map<String, QuoteSnapshot> getStocks( Collection<String> batch ) {
+		Map<String, QuoteSnapshot> stocks = new HashMap<>( );
+		if ( batch.size( ) > 1 ) {
+			try {
+				Map<String, Stock> batchStocks = callYahooFinance( ( ) -> YahooFinance.get( batch.toArray( new String[0] ) ) );
+				for ( String ticker : batch ) {
+					Stock stock = batchStocks.get( ticker );
+					if ( stock != null && stock.isValid( ) ) {
+						stocks.put( ticker, QuoteSnapshot.of( ticker, stock ) );
+					}
+				}
+			} catch ( IOException | RuntimeException e ) {
+				log.warn( new ParameterizedMessage( "Error retrieving information for batch of tickers {}", batch ), e );
+			}
+
+			log.debug( "Retrieved {} of {} tickers in batch request", stocks.size( ), batch.size( ) );
 		}
 
-		node = node.get( "news" );
-		for ( int i = 0; i < node.size( ); i++ ) {
-			Article article = new Article( node.get( i ) );
-			if ( article.getRelatedTickers( ).isEmpty( ) ) {
-				log.error( "Could not parse related tickers on article found for ticker {}: {}", ticker, article );
+		for ( String ticker : batch ) {
+			if ( stocks.containsKey( ticker ) ) {
 				continue;
 			}
 
-			if ( !article.getRelatedTickers( ).contains( ticker ) ) {
-				log.debug( "Filtering out unrelated article for ticker {}: {}", ticker, article );
-				continue;
+			try {
+				Stock stock = callYahooFinance( ( ) -> YahooFinance.get( ticker ) );
+				if ( stock == null || !stock.isValid( ) ) {
+					log.error( "No information found for ticker '{}'", ticker );
+					continue;
+				}
+				stocks.put( ticker, QuoteSnapshot.of( ticker, stock ) );
+			} catch ( IOException | RuntimeException e ) {
+				log.error( new ParameterizedMessage( "Error retrieving information for ticker '{}'", ticker ), e );
 			}
+		}
+
+		recordHistory( stocks.values( ) );
+		return stocks;
+	}
 
-			articles.add( article );
+	/**
+	 * Appends freshly retrieved quotes to the quote history; cached ones were appended when they were retrieved.
+	 */
+	private void recordHistory( Collection<QuoteSnapshot> quotes ) {
+		long now = System.currentTimeMillis( );
+		for ( QuoteSnapshot quote : quotes ) {
+			try {
+				quoteHistory.append( quote.getTicker( ), now, quote );
+			} catch ( IOException e ) {
+				log.error( new ParameterizedMessage( "Error saving quote history of ticker '{}'", quote.getTicker( ) ), e );
+			}
 		}
+	}
+
+	/**
+	 * Runs a call through the YahooFinance library under the same rate limiting as requests sent through the
+	 * {@link HttpService}. The library does not expose response codes, so throttling is detected from the exception.
+	 */
+	private <T> T callYahooFinance( YahooFinanceCall<T> call ) throws IOException {
+		RateLimiter rateLimiter = getHttpService( ).getRateLimiter( );
+		RateLimitPolicy policy = getRateLimitPolicy( );
+		for ( int attempt = 0;; attempt++ ) {
+			rateLimiter.acquire( YAHOO_FINANCE_QUOTES_HOST, policy );
+			try {
+				T result = call.call( );
+				rateLimiter.onSuccess( YAHOO_FINANCE_QUOTES_HOST, policy );
+				return result;
+			} catch ( IOException e ) {
+				Matcher statusMatcher = HTTP_STATUS_PATTERN.matcher( String.valueOf( e.getMessage( ) ) );
+				if ( !statusMatcher.find( ) || !RateLimiter.isThrottled( Integer.parseInt( statusMatcher.group( 1 ) ) ) ) {
+					throw e;
+				}
 
-		if ( onlyExclusive ) {
-			for ( Iterator<Article> articleIter = articles.iterator( ); articleIter.hasNext( ); ) {
-				Article article = articleIter.next( );
-				if ( article.getRelatedTickers( ).size( ) > 1 ) {
-					log.debug( "Filtering out non-exclusive article for ticker {}: {}", ticker, article );
-					articleIter.remove( );
+				rateLimiter.onThrottled( YAHOO_FINANCE_QUOTES_HOST, policy, Optional.empty( ) );
+				if ( attempt >= policy.getMaxRetries( ) ) {
+					throw e;
 				}
 			}
 		}
-
-		return articles;
 	}
 
-	private File getEnsureTickerOutputFolder( String ticker ) {
-		File outputFolder = new File( getEnsuredOutputFolder( ).getAbsolutePath( ) + File.separator + ticker );
-		if ( !outputFolder.exists( ) ) {
-			outputFolder.mkdirs( );
+	private void renderTickerReport( TickerJob job, LocalDateTime now, ConsolidatedReport consolidated,
+			Queue<TickerJob> consolidatedJobs ) {
+		QuoteSnapshot quote = job.quote;
+		TickerReport report = new TickerReport( job.ticker, quote.getName( ), toStringOrNull( quote.getPrice( ) ),
+				toStringOrNull( quote.getMarketCap( ) ), toStringOrNull( quote.getYearLow( ) ),
+				toStringOrNull( quote.getYearHigh( ) ), toStringOrNull( quote.getAverageVolume( ) ),
+				now.toLocalDate( ).toString( ), job.articles );
+
+		if ( consolidated != null ) {
+			addToConsolidatedReport( job, report, consolidated, consolidatedJobs );
+			return;
 		}
 
-		return outputFolder;
+		long startNanos = metrics.startStep( );
+		try {
+			if ( reportRenderer.render( report, job.destinationFile.toPath( ) ) ) {
+				metrics.recordBytesWritten( job.destinationFile.length( ) );
+				markPublished( job );
+			}
+		} catch ( IOException e ) {
+			log.error( new ParameterizedMessage( "Error rendering {} report to '{}' for ticker '{}'",
+					reportRenderer.getFormat( ).getPropertyValue( ), job.destinationFile.getAbsolutePath( ), job.ticker ), e );
+			metrics.countError( "render" );
+			job.failed = true;
+		} finally {
+			metrics.endStep( "render", startNanos );
+		}
 	}
 
-	private static final class Article {
-
-		private final String uuid;
+	private void addToConsolidatedReport( TickerJob job, TickerReport report, ConsolidatedReport consolidated,
+			Queue<TickerJob> consolidatedJobs ) {
+		long startNanos = metrics.startStep( );
+		try {
+			consolidated.add( report );
+			consolidatedJobs.add( job );
+		} catch ( IOException e ) {
+			log.error( new ParameterizedMessage( "Error adding ticker '{}' to the consolidated report", job.ticker ), e );
+			metrics.countError( "render" );
+			job.failed = true;
+		} finally {
+			metrics.endStep( "render", startNanos );
+		}
+	}
 
-		private final String title;
+	private void markPublished( TickerJob job ) {
+		if ( seenArticles == null ) {
+			return;
+		}
+		for ( Article article : job.articles ) {
+			if ( article.getUuid( ) != null ) {
+				seenArticles.add( job.ticker, article.getUuid( ) );
+			}
+		}
+	}
 
-		private final String link;
+	private boolean writeConsolidatedReport( ConsolidatedReport consolidated, String fileName ) {
+		File destinationFile = new File( getEnsuredOutputFolder( ), fileName );
+		long startNanos = metrics.startStep( );
+		try {
+			metrics.recordBytesWritten( consolidated.write( destinationFile.toPath( ) ) );
+			log.info( "Wrote {} tickers to {}", consolidated.getTickerCount( ), destinationFile.getAbsolutePath( ) );
+			return true;
+		} catch ( IOException e ) {
+			log.error( new ParameterizedMessage( "Error writing consolidated report to '{}'",
+					destinationFile.getAbsolutePath( ) ), e );
+			metrics.countError( "write" );
+			return false;
+		} finally {
+			metrics.endStep( "write", startNanos );
+		}
+	}
 
-		private final ZonedDateTime providerPublishTime;
+	private static String toStringOrNull( Object value ) {
+		return value == null ? null : value.toString( );
+	}
 
-		private final String publisher;
+	private List<Article> getCachedTickerNews( String ticker, boolean onlyExclusive ) {
+		try {
+			List<Article> articles = newsCache.get( ticker + ( onlyExclusive ? "-exclusive" : "" ), newsCacheTtl,
+					key -> getTickerNews( ticker, onlyExclusive ) );
+			if ( articles == null ) {
+				return List.of( );
+			}
+			// Cached headlines may have been published since they were retrieved
+			return seenArticles == null ? articles
+					: articles.stream( )
+							.filter( article -> article.getUuid( ) == null || !seenArticles.contains( ticker, article.getUuid( ) ) )
+							.toList( );
+		} catch ( IOException e ) {
+			log.error( new ParameterizedMessage( "Error searching news for ticker {}", ticker ), e );
+			return List.of( );
+		}
+	}
 
-		private final List<String> relatedTickers = new ArrayList<>( );
+	private List<Article> getTickerNews( String ticker, boolean onlyExclusive ) throws IOException {
+		Map<String, String> params = new LinkedHashMap<>( );
+		params.put( "q", ticker );
 
-		public Article( JsonNode node ) {
-			super( );
-			this.uuid = getStringValue( node, "uuid" );
-			this.title = getStringValue( node, "title" );
-			this.link = getStringValue( node, "link" );
-			this.providerPublishTime = ZonedDateTime
-					.ofInstant( Instant.ofEpochSecond( getLongValue( node, "providerPublishTime" ) ), ZoneId.of( "GMT" ) );
-			this.publisher = getStringValue( node, "publisher" );
+		String url = YAHOO_FINANCE_API_SEARCH_URL + "?" + Utils.getURLParameters( params );
 
-			if ( node.has( "relatedTickers" ) ) {
-				JsonNode tickersNode = node.get( "relatedTickers" );
-				for ( int index = 0; index < tickersNode.size( ); index++ ) {
-					String ticker = getStringValue( tickersNode, index );
-					if ( ticker == null || ticker.isEmpty( ) ) {
-						break;
-					}
+		// Get JSON from Yahoo
+		log.info( "Sending request: {}", url );
 
-					relatedTickers.add( ticker );
-				}
+		List<Article> articles;
+		try ( Response response = getHttpService( ).send( getHttpService( ).newRequest( url ).build( ), getRateLimitPolicy( ) ) ) {
+			if ( response.statusCode( ) != 200 ) {
+				throw new IOException( "News search for ticker " + ticker + " returned HTTP " + response.statusCode( ) );
 			}
+			articles = NewsSearchParser.parse( response.body( ), ticker, onlyExclusive,
+					uuid -> seenArticles != null && seenArticles.contains( ticker, uuid ) );
 		}
 
-		public String getUuid( ) {
-			return uuid;
+		if ( articles.isEmpty( ) ) {
+			log.info( "No news found for ticker '{}'", ticker );
 		}
 
-		public String getTitle( ) {
-			return title;
-		}
+		indexArticles( articles );
+		return articles;
+	}
 
-		public String getLink( ) {
-			return link;
+	/**
+	 * Adds freshly retrieved headlines to the search index; cached ones were indexed when they were retrieved.
+	 */
+	private void indexArticles( List<Article> articles ) {
+		for ( Article article : articles ) {
+			try {
+				getSearchIndex( ).add( new SearchDocument( SEARCH_KEY_PREFIX_NEWS + article.getUuid( ), SEARCH_SOURCE_NEWS,
+						article.getTitle( ), article.getLink( ),
+						article.getPublisher( ) + " " + String.join( " ", article.getRelatedTickers( ) ),
+						article.getProviderPublishEpochSecond( ) * 1000 ) );
+			} catch ( IOException e ) {
+				log.error( new ParameterizedMessage( "Error indexing article {}", article.getUuid( ) ), e );
+			}
 		}
+	}
 
-		public ZonedDateTime getProviderPublishTime( ) {
-			return providerPublishTime;
+	private File getEnsureTickerOutputFolder( String ticker ) {
+		File outputFolder = new File( getEnsuredOutputFolder( ).getAbsolutePath( ) + File.separator + ticker );
+		if ( !outputFolder.exists( ) ) {
+			outputFolder.mkdirs( );
 		}
 
-		public String getPublisher( ) {
-			return publisher;
-		}
+		return outputFolder;
+	}
 
-		public List<String> getRelatedTickers( ) {
-			return relatedTickers;
-		}
+	@FunctionalInterface
+	private interface YahooFinanceCall<T> {
 
-		@Override
-		public String toString( ) {
-			return "Article [uuid=" + uuid + ", title=" + title + ", link=" + link + ", providerPublishTime="
-					+ providerPublishTime + ", publisher=" + publisher + ", relatedTickers=" + relatedTickers + "]";
-		}
+		T call( ) throws IOException;
 
-		private static String getStringValue( JsonNode node, String field ) {
-			if ( node.has( field ) ) {
-				return node.get( field ).asText( );
-			}
-			return null;
-		}
+	}
 
-		private static String getStringValue( JsonNode node, int index ) {
-			if ( node.has( index ) ) {
-				return node.get( index ).asText( );
-			}
-			return null;
-		}
+	private static final class TickerJob {
 
-		private static long getLongValue( JsonNode node, String field ) {
-			if ( node.has( field ) ) {
-				return node.get( field ).asLong( );
-			}
-			return 0;
+		private final String ticker;
+
+		private final QuoteSnapshot quote;
+
+		private final File destinationFile;
+
+		private volatile List<Article> articles;
+
+		private volatile boolean failed;
+
+		private TickerJob( String ticker, QuoteSnapshot quote, File destinationFile ) {
+			this.ticker = ticker;
+			this.quote = quote;
+			this.destinationFile = destinationFile;
 		}
 
 	}
@@ -0,0 +1,310 @@
+package com.denis_targansky.dailies.templates;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.impl.xb.xmlschema.SpaceAttribute;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
+
+import com.denis_targansky.dailies.templates.PlaceholderMatcher.Match;
+
+/**
+ * A DOCX template compiled once into memory. Placeholders that Word split across several runs or text elements are
+ * first merged into the text element they start in, then every part of the package is kept inflated and the main
+ * document part is split around the placeholders found inside its text runs, so rendering a copy only has to stitch
+ * the document part back together and re-zip the package.
+ */
+public final class DocxTemplate {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final String DOCUMENT_PART_NAME = "word/document.xml";
+
+	private static final Pattern RUN_TEXT_PATTERN = Pattern.compile( "<w:t(?:\\s[^>]*)?>([^<]*)</w:t>" );
+
+	private static final Map<String, DocxTemplate> templateCache = new ConcurrentHashMap<>( );
+
+	private final PlaceholderMatcher matcher;
+
+	private final long lastModified;
+
+	private final long length;
+
+	private final List<Part> parts;
+
+	private final List<String> documentLiterals;
+
+	private final List<Match> documentPlaceholders;
+
+	private final List<String> documentPlaceholderTexts;
+
+	private DocxTemplate( PlaceholderMatcher matcher, long lastModified, long length, List<Part> parts,
+			List<String> documentLiterals, List<Match> documentPlaceholders, List<String> documentPlaceholderTexts ) {
+		this.matcher = matcher;
+		this.lastModified = lastModified;
+		this.length = length;
+		this.parts = parts;
+		this.documentLiterals = documentLiterals;
+		this.documentPlaceholders = documentPlaceholders;
+		this.documentPlaceholderTexts = documentPlaceholderTexts;
+	}
+
+	public static DocxTemplate get( File templateFile, PlaceholderMatcher matcher ) throws IOException {
+		String key = templateFile.getCanonicalPath( );
+		DocxTemplate template = templateCache.get( key );
+		if ( template != null && template.matcher == matcher && template.lastModified == templateFile.lastModified( )
+				&& template.length == templateFile.length( ) ) {
+			return template;
+		}
+
+		template = compile( templateFile, matcher );
+		templateCache.put( key, template );
+		return template;
+	}
+
+	private static DocxTemplate compile( File templateFile, PlaceholderMatcher matcher ) throws IOException {
+		ms.info( "Compiling template file {}", templateFile.getAbsolutePath( ) );
+		long lastModified = templateFile.lastModified( );
+		long length = templateFile.length( );
+		byte[] templateBytes = mergeSplitPlaceholders( Files.readAllBytes( templateFile.toPath( ) ), matcher );
+
+		List<Part> parts = new ArrayList<>( );
+		String documentXml = null;
+		try ( ZipInputStream in = new ZipInputStream( new ByteArrayInputStream( templateBytes ) ) ) {
+			for ( ZipEntry entry = in.getNextEntry( ); entry != null; entry = in.getNextEntry( ) ) {
+				byte[] content = in.readAllBytes( );
+				parts.add( new Part( entry.getName( ), entry.getMethod( ), content ) );
+				if ( DOCUMENT_PART_NAME.equals( entry.getName( ) ) ) {
+					documentXml = new String( content, StandardCharsets.UTF_8 );
+				}
+			}
+		}
+
+		if ( documentXml == null ) {
+			throw new IOException( "Template file " + templateFile.getAbsolutePath( ) + " has no " + DOCUMENT_PART_NAME );
+		}
+
+		List<String> literals = new ArrayList<>( );
+		List<Match> placeholders = new ArrayList<>( );
+		List<String> placeholderTexts = new ArrayList<>( );
+		int literalStart = 0;
+		Matcher runTextMatcher = RUN_TEXT_PATTERN.matcher( documentXml );
+		while ( runTextMatcher.find( ) ) {
+			int textStart = runTextMatcher.start( 1 );
+			for ( Match match : matcher.findAll( documentXml.subSequence( textStart, runTextMatcher.end( 1 ) ) ) ) {
+				literals.add( documentXml.substring( literalStart, textStart + match.getStart( ) ) );
+				placeholders.add( match );
+				placeholderTexts.add( documentXml.substring( textStart + match.getStart( ), textStart + match.getEnd( ) ) );
+				literalStart = textStart + match.getEnd( );
+			}
+		}
+		literals.add( documentXml.substring( literalStart ) );
+
+		ms.debug( "Found placeholders {} in template file {}", placeholderTexts, templateFile.getAbsolutePath( ) );
+		return new DocxTemplate( matcher, lastModified, length, parts, literals, placeholders, placeholderTexts );
+	}
+
+	private static byte[] mergeSplitPlaceholders( byte[] templateBytes, PlaceholderMatcher matcher ) throws IOException {
+		try ( XWPFDocument document = new XWPFDocument( new ByteArrayInputStream( templateBytes ) ) ) {
+			boolean changesMade = false;
+			for ( XWPFParagraph paragraph : getAllParagraphs( document.getBodyElements( ), new ArrayList<>( ) ) ) {
+				changesMade |= mergeSplitPlaceholders( paragraph, matcher );
+			}
+
+			if ( !changesMade ) {
+				return templateBytes;
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream( templateBytes.length );
+			document.write( out );
+			return out.toByteArray( );
+		}
+	}
+
+	private static List<XWPFParagraph> getAllParagraphs( List<IBodyElement> bodyElements, List<XWPFParagraph> paragraphs ) {
+		for ( IBodyElement bodyElement : bodyElements ) {
+			if ( bodyElement instanceof XWPFParagraph paragraph ) {
+				paragraphs.add( paragraph );
+			} else if ( bodyElement instanceof XWPFTable table ) {
+				for ( XWPFTableRow row : table.getRows( ) ) {
+					for ( XWPFTableCell cell : row.getTableCells( ) ) {
+						getAllParagraphs( cell.getBodyElements( ), paragraphs );
+					}
+				}
+			}
+		}
+
+		return paragraphs;
+	}
+
+	/**
+	 * Moves every placeholder spread over several text elements into the first of them. A run can hold several text
+	 * elements, e.g. around a tab, so the text elements are collected across the runs; tabs and breaks end the text a
+	 * placeholder can span.
+	 */
+	private static boolean mergeSplitPlaceholders( XWPFParagraph paragraph, PlaceholderMatcher matcher ) {
+		List<CTText> texts = new ArrayList<>( );
+		List<Integer> textStarts = new ArrayList<>( );
+		StringBuilder paragraphText = new StringBuilder( );
+		for ( XWPFRun run : paragraph.getRuns( ) ) {
+			try ( XmlCursor cursor = run.getCTR( ).newCursor( ) ) {
+				for ( boolean found = cursor.toFirstChild( ); found; found = cursor.toNextSibling( ) ) {
+					String elementName = cursor.getName( ).getLocalPart( );
+					if ( "t".equals( elementName ) && cursor.getObject( ) instanceof CTText text ) {
+						texts.add( text );
+						textStarts.add( paragraphText.length( ) );
+						paragraphText.append( text.getStringValue( ) );
+					} else if ( !"rPr".equals( elementName ) ) {
+						paragraphText.append( '\n' );
+					}
+				}
+			}
+		}
+		if ( texts.size( ) < 2 ) {
+			return false;
+		}
+
+		// Going backwards keeps the offsets of earlier matches valid while text elements are rewritten
+		List<Match> matches = matcher.findAll( paragraphText );
+		boolean changesMade = false;
+		for ( int matchIndex = matches.size( ) - 1; matchIndex >= 0; matchIndex-- ) {
+			Match match = matches.get( matchIndex );
+			int firstText = findText( textStarts, match.getStart( ) );
+			int lastText = findText( textStarts, match.getEnd( ) - 1 );
+			if ( firstText == lastText ) {
+				continue;
+			}
+
+			String placeholder = paragraphText.substring( match.getStart( ), match.getEnd( ) );
+			CTText first = texts.get( firstText );
+			setText( first, first.getStringValue( ).substring( 0, match.getStart( ) - textStarts.get( firstText ) )
+					+ placeholder );
+			for ( int textIndex = firstText + 1; textIndex < lastText; textIndex++ ) {
+				setText( texts.get( textIndex ), "" );
+			}
+			CTText last = texts.get( lastText );
+			setText( last, last.getStringValue( ).substring( match.getEnd( ) - textStarts.get( lastText ) ) );
+			ms.debug( "Merged placeholder {} split across text elements {} to {}", placeholder, firstText, lastText );
+			changesMade = true;
+		}
+
+		return changesMade;
+	}
+
+	private static int findText( List<Integer> textStarts, int offset ) {
+		int textIndex = 0;
+		while ( textIndex + 1 < textStarts.size( ) && textStarts.get( textIndex + 1 ) <= offset ) {
+			textIndex++;
+		}
+		return textIndex;
+	}
+
+	private static void setText( CTText text, String value ) {
+		text.setStringValue( value );
+		if ( !value.equals( value.strip( ) ) ) {
+			// Word drops leading and trailing spaces unless told to keep them
+			text.setSpace( SpaceAttribute.Space.PRESERVE );
+		}
+	}
+
+	/**
+	 * Writes a copy of the template with every placeholder that {@code values} knows replaced. Placeholders it returns
+	 * {@code null} for are left as they are.
+	 *
+	 * @return false, without writing anything, if none of the placeholders could be resolved
+	 */
+	public boolean render( PlaceholderValues values, OutputStream out ) throws IOException {
+		StringBuilder document = new StringBuilder( );
+		boolean changesMade = false;
+		for ( int index = 0; index < documentPlaceholders.size( ); index++ ) {
+			document.append( documentLiterals.get( index ) );
+			Match placeholder = documentPlaceholders.get( index );
+			String value = values.resolve( placeholder.getTerm( ), placeholder.getIndex( ) );
+			if ( value == null ) {
+				document.append( documentPlaceholderTexts.get( index ) );
+			} else {
+				appendEscaped( document, value );
+				changesMade = true;
+			}
+		}
+		document.append( documentLiterals.get( documentLiterals.size( ) - 1 ) );
+
+		if ( !changesMade ) {
+			return false;
+		}
+
+		ZipOutputStream zip = new ZipOutputStream( out );
+		for ( Part part : parts ) {
+			byte[] content = DOCUMENT_PART_NAME.equals( part.name ) ? document.toString( ).getBytes( StandardCharsets.UTF_8 )
+					: part.content;
+			ZipEntry entry = new ZipEntry( part.name );
+			if ( part.method == ZipEntry.STORED ) {
+				CRC32 crc = new CRC32( );
+				crc.update( content );
+				entry.setMethod( ZipEntry.STORED );
+				entry.setSize( content.length );
+				entry.setCompressedSize( content.length );
+				entry.setCrc( crc.getValue( ) );
+			}
+			zip.putNextEntry( entry );
+			zip.write( content );
+			zip.closeEntry( );
+		}
+		zip.finish( );
+		return true;
+	}
+
+	private static void appendEscaped( StringBuilder builder, String value ) {
+		for ( int index = 0; index < value.length( ); index++ ) {
+			char c = value.charAt( index );
+			switch ( c ) {
+				case '&' -> builder.append( "&amp;" );
+				case '<' -> builder.append( "&lt;" );
+				case '>' -> builder.append( "&gt;" );
+				default -> builder.append( c );
+			}
+		}
+	}
+
+	private static final class Part {
+
+		private final String name;
+
+		private final int method;
+
+		private final byte[] content;
+
+		private Part( String name, int method, byte[] content ) {
+			this.name = name;
+			this.method = method;
+			this.content = content;
+		}
+
+	}
+
+}
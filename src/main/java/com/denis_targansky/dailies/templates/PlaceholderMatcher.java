@@ -0,0 +1,202 @@
+package com.denis_targansky.dailies.templates;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Finds every occurrence of a fixed set of placeholders in a single pass over the text (Aho-Corasick). A placeholder
+ * containing {@value #INDEX_MARKER} stands for a whole family of placeholders where the marker is replaced by a
+ * number, e.g. {@code {headline_title_###}} matches {@code {headline_title_1}}, {@code {headline_title_25}}, etc.
+ */
+public final class PlaceholderMatcher {
+
+	public static final String INDEX_MARKER = "###";
+
+	public static final int NO_INDEX = -1;
+
+	private final List<String> terms = new ArrayList<>( );
+
+	private final List<String> patterns = new ArrayList<>( );
+
+	private final List<String> indexedSuffixes = new ArrayList<>( );
+
+	private final Node root = new Node( );
+
+	public PlaceholderMatcher( Collection<String> terms ) {
+		for ( String term : terms ) {
+			int markerIndex = term.indexOf( INDEX_MARKER );
+			if ( markerIndex == 0 ) {
+				throw new IllegalArgumentException( "Placeholder '" + term + "' cannot start with " + INDEX_MARKER );
+			}
+
+			this.terms.add( term );
+			if ( markerIndex < 0 ) {
+				patterns.add( term );
+				indexedSuffixes.add( null );
+			} else {
+				patterns.add( term.substring( 0, markerIndex ) );
+				indexedSuffixes.add( term.substring( markerIndex + INDEX_MARKER.length( ) ) );
+			}
+		}
+
+		for ( int patternId = 0; patternId < patterns.size( ); patternId++ ) {
+			Node node = root;
+			for ( char c : patterns.get( patternId ).toCharArray( ) ) {
+				node = node.next.computeIfAbsent( c, ignored -> new Node( ) );
+			}
+			node.patternIds.add( patternId );
+		}
+
+		Queue<Node> queue = new ArrayDeque<>( );
+		for ( Node child : root.next.values( ) ) {
+			child.fail = root;
+			queue.add( child );
+		}
+		while ( !queue.isEmpty( ) ) {
+			Node node = queue.remove( );
+			for ( Map.Entry<Character, Node> transition : node.next.entrySet( ) ) {
+				Node child = transition.getValue( );
+				Node fail = node.fail;
+				while ( fail != root && !fail.next.containsKey( transition.getKey( ) ) ) {
+					fail = fail.fail;
+				}
+				child.fail = fail.next.getOrDefault( transition.getKey( ), root );
+				child.patternIds.addAll( child.fail.patternIds );
+				queue.add( child );
+			}
+		}
+	}
+
+	public List<String> getTerms( ) {
+		return terms;
+	}
+
+	/**
+	 * @return the leftmost-longest, non-overlapping placeholder matches in {@code text}, ordered by position
+	 */
+	public List<Match> findAll( CharSequence text ) {
+		List<Match> candidates = new ArrayList<>( );
+		Node node = root;
+		for ( int position = 0; position < text.length( ); position++ ) {
+			char c = text.charAt( position );
+			while ( node != root && !node.next.containsKey( c ) ) {
+				node = node.fail;
+			}
+			node = node.next.getOrDefault( c, root );
+
+			for ( int patternId : node.patternIds ) {
+				int start = position + 1 - patterns.get( patternId ).length( );
+				Match match = completeMatch( text, patternId, start, position + 1 );
+				if ( match != null ) {
+					candidates.add( match );
+				}
+			}
+		}
+
+		if ( candidates.size( ) < 2 ) {
+			return candidates;
+		}
+
+		candidates.sort( Comparator.comparingInt( Match::getStart )
+				.thenComparing( Comparator.comparingInt( Match::getEnd ).reversed( ) ) );
+		List<Match> matches = new ArrayList<>( );
+		int lastEnd = 0;
+		for ( Match candidate : candidates ) {
+			if ( candidate.getStart( ) >= lastEnd ) {
+				matches.add( candidate );
+				lastEnd = candidate.getEnd( );
+			}
+		}
+		return matches;
+	}
+
+	private Match completeMatch( CharSequence text, int patternId, int start, int patternEnd ) {
+		String suffix = indexedSuffixes.get( patternId );
+		if ( suffix == null ) {
+			return new Match( start, patternEnd, terms.get( patternId ), NO_INDEX );
+		}
+
+		int position = patternEnd;
+		int index = 0;
+		while ( position < text.length( ) && position - patternEnd < 9 && Character.isDigit( text.charAt( position ) ) ) {
+			index = index * 10 + Character.digit( text.charAt( position ), 10 );
+			position++;
+		}
+
+		if ( position == patternEnd || position + suffix.length( ) > text.length( ) ) {
+			return null;
+		}
+
+		for ( int offset = 0; offset < suffix.length( ); offset++ ) {
+			if ( text.charAt( position + offset ) != suffix.charAt( offset ) ) {
+				return null;
+			}
+		}
+
+		return new Match( start, position + suffix.length( ), terms.get( patternId ), index );
+	}
+
+	public static final class Match {
+
+		private final int start;
+
+		private final int end;
+
+		private final String term;
+
+		private final int index;
+
+		private Match( int start, int end, String term, int index ) {
+			this.start = start;
+			this.end = end;
+			this.term = term;
+			this.index = index;
+		}
+
+		public int getStart( ) {
+			return start;
+		}
+
+		public int getEnd( ) {
+			return end;
+		}
+
+		/**
+		 * @return the placeholder as it was given to the matcher, including {@value PlaceholderMatcher#INDEX_MARKER}
+		 *         for indexed placeholders
+		 */
+		public String getTerm( ) {
+			return term;
+		}
+
+		/**
+		 * @return the number matched in place of {@value PlaceholderMatcher#INDEX_MARKER}, or {@link #NO_INDEX}
+		 */
+		public int getIndex( ) {
+			return index;
+		}
+
+		@Override
+		public String toString( ) {
+			return "Match [start=" + start + ", end=" + end + ", term=" + term + ", index=" + index + "]";
+		}
+
+	}
+
+	private static final class Node {
+
+		private final Map<Character, Node> next = new HashMap<>( );
+
+		private final List<Integer> patternIds = new ArrayList<>( );
+
+		private Node fail;
+
+	}
+
+}
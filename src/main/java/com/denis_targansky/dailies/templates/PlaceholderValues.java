@@ -0,0 +1,13 @@
+package com.denis_targansky.dailies.templates;
+
+@FunctionalInterface
+public interface PlaceholderValues {
+
+	/**
+	 * @param term  the placeholder as given to the {@link PlaceholderMatcher}
+	 * @param index the number matched for an indexed placeholder, or {@link PlaceholderMatcher#NO_INDEX}
+	 * @return the replacement value, or {@code null} to leave the placeholder in place
+	 */
+	String resolve( String term, int index );
+
+}
@@ -0,0 +1,55 @@
+package com.denis_targansky.dailies.timeseries;
+
+/**
+ * How the values falling into one bucket are combined when a series is downsampled. Missing values are ignored.
+ */
+public enum Aggregation {
+
+	FIRST, LAST, MIN, MAX, MEAN;
+
+	double aggregate( double[] values, int from, int to ) {
+		double result = Double.NaN;
+		int count = 0;
+		for ( int index = from; index < to; index++ ) {
+			double value = values[index];
+			if ( Double.isNaN( value ) ) {
+				continue;
+			}
+			switch ( this ) {
+				case FIRST -> {
+					return value;
+				}
+				case LAST -> result = value;
+				case MIN -> result = count == 0 ? value : Math.min( result, value );
+				case MAX -> result = count == 0 ? value : Math.max( result, value );
+				case MEAN -> result = count == 0 ? value : result + value;
+			}
+			count++;
+		}
+		return this == MEAN && count > 0 ? result / count : result;
+	}
+
+	long aggregate( long[] values, int from, int to ) {
+		long result = QuoteSeries.MISSING;
+		long sum = 0;
+		int count = 0;
+		for ( int index = from; index < to; index++ ) {
+			long value = values[index];
+			if ( value == QuoteSeries.MISSING ) {
+				continue;
+			}
+			switch ( this ) {
+				case FIRST -> {
+					return value;
+				}
+				case LAST -> result = value;
+				case MIN -> result = count == 0 ? value : Math.min( result, value );
+				case MAX -> result = count == 0 ? value : Math.max( result, value );
+				case MEAN -> sum += value;
+			}
+			count++;
+		}
+		return this == MEAN && count > 0 ? sum / count : result;
+	}
+
+}
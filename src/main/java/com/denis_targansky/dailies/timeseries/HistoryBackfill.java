@@ -0,0 +1,292 @@
+package com.denis_targansky.dailies.timeseries;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import com.denis_targansky.dailies.metrics.TaskMetrics;
+
+import yahoofinance.histquotes.HistoricalQuote;
+
+/**
+ * Retrieves the daily history of every ticker that has not been backfilled yet. The range of a ticker is fixed when
+ * it is first seen and split into chunks that are fetched in parallel and written to their own CSV file as soon as they
+ * arrive. Every written chunk is recorded in the task state, and a run fetches at most a fixed number of chunks, so a
+ * long backfill is spread over several runs and an interrupted one continues with the missing chunks.
+ */
+public final class HistoryBackfill {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final String STATE_PREFIX = "backfill.";
+
+	private static final String STATE_RANGE_SUFFIX = ".range";
+
+	private static final String STATE_CHUNK_SUFFIX = ".chunk.";
+
+	private static final String STATE_COMPLETED_SUFFIX = ".completed";
+
+	private static final String CSV_HEADER = "date,open,high,low,close,adj_close,volume";
+
+	private final Path folder;
+
+	private final State state;
+
+	private final ChunkFetcher fetcher;
+
+	private final TaskMetrics metrics;
+
+	private final int years;
+
+	private final int chunkMonths;
+
+	private final int maxChunksPerRun;
+
+	/**
+	 * @param folder          where the chunks are written, in a folder per ticker
+	 * @param maxChunksPerRun how many chunks a single run fetches at most
+	 */
+	public HistoryBackfill( Path folder, State state, ChunkFetcher fetcher, TaskMetrics metrics, int years,
+			int chunkMonths, int maxChunksPerRun ) {
+		this.folder = folder;
+		this.state = state;
+		this.fetcher = fetcher;
+		this.metrics = metrics;
+		this.years = years;
+		this.chunkMonths = chunkMonths;
+		this.maxChunksPerRun = maxChunksPerRun;
+	}
+
+	/**
+	 * Fetches the next missing chunks of {@code tickers} on {@code executor}.
+	 *
+	 * @return false if a chunk could not be fetched or recorded; it is fetched again by a later run
+	 */
+	public boolean run( Collection<String> tickers, LocalDate today, ExecutorService executor )
+			throws InterruptedException {
+		Map<String, List<Chunk>> tickerChunks = new LinkedHashMap<>( );
+		try {
+			for ( String ticker : tickers ) {
+				List<Chunk> missingChunks = plan( ticker, today );
+				if ( missingChunks != null ) {
+					tickerChunks.put( ticker, missingChunks );
+				}
+			}
+		} catch ( IOException e ) {
+			ms.error( "Could not save backfill ranges", e );
+			return false;
+		}
+
+		List<Chunk> chunks = new ArrayList<>( );
+		tickerChunks.values( ).forEach( chunks::addAll );
+		if ( chunks.isEmpty( ) ) {
+			return true;
+		}
+
+		int remainingCount = Math.max( 0, chunks.size( ) - maxChunksPerRun );
+		chunks = chunks.subList( 0, chunks.size( ) - remainingCount );
+		ms.info( "Backfilling {} chunks of daily history for {} tickers, {} chunks are left for later runs", chunks.size( ),
+				tickerChunks.size( ), remainingCount );
+		List<Future<Boolean>> backfills = new ArrayList<>( );
+		for ( Chunk chunk : chunks ) {
+			backfills.add( executor.submit( ( ) -> backfill( chunk ) ) );
+		}
+
+		boolean errors = false;
+		for ( int index = 0; index < chunks.size( ); index++ ) {
+			try {
+				chunks.get( index ).done = backfills.get( index ).get( );
+			} catch ( ExecutionException e ) {
+				ms.error( new ParameterizedMessage( "Unexpected error backfilling {}", chunks.get( index ) ), e.getCause( ) );
+			}
+			errors |= !chunks.get( index ).done;
+		}
+
+		for ( Map.Entry<String, List<Chunk>> tickerChunk : tickerChunks.entrySet( ) ) {
+			if ( tickerChunk.getValue( ).stream( ).allMatch( chunk -> chunk.done ) ) {
+				complete( tickerChunk.getKey( ) );
+			}
+		}
+		return !errors;
+	}
+
+	/**
+	 * @return the chunks of the ticker's range that were not written yet, or null if its backfill completed
+	 */
+	private List<Chunk> plan( String ticker, LocalDate today ) throws IOException {
+		String statePrefix = STATE_PREFIX + ticker;
+		if ( state.get( statePrefix + STATE_COMPLETED_SUFFIX ) != null ) {
+			return null;
+		}
+
+		LocalDate from = today.minusYears( years );
+		LocalDate until = today;
+		String range = state.get( statePrefix + STATE_RANGE_SUFFIX );
+		if ( range == null ) {
+			state.put( statePrefix + STATE_RANGE_SUFFIX, from + "/" + until );
+		} else {
+			try {
+				from = LocalDate.parse( range.substring( 0, range.indexOf( '/' ) ) );
+				until = LocalDate.parse( range.substring( range.indexOf( '/' ) + 1 ) );
+			} catch ( DateTimeParseException | IndexOutOfBoundsException e ) {
+				ms.warn( "Invalid backfill range '{}' of ticker '{}', planning it again", range, ticker );
+				state.put( statePrefix + STATE_RANGE_SUFFIX, from + "/" + until );
+			}
+		}
+
+		List<Chunk> chunks = new ArrayList<>( );
+		for ( LocalDate start = from; start.isBefore( until ); start = start.plusMonths( chunkMonths ) ) {
+			LocalDate end = start.plusMonths( chunkMonths );
+			Chunk chunk = new Chunk( ticker, start, end.isBefore( until ) ? end : until );
+			if ( state.get( chunk.getStateKey( ) ) == null ) {
+				chunks.add( chunk );
+			}
+		}
+		return chunks;
+	}
+
+	private boolean backfill( Chunk chunk ) {
+		long startNanos = metrics.startStep( );
+		try {
+			List<HistoricalQuote> quotes = fetcher.fetch( chunk.ticker, chunk.from, chunk.until );
+
+			Path tickerFolder = folder.resolve( chunk.ticker );
+			Files.createDirectories( tickerFolder );
+			Path tempFile = Files.createTempFile( tickerFolder, null, ".tmp" );
+			try {
+				long bytesWritten = write( tempFile, chunk, quotes );
+				Files.move( tempFile, tickerFolder.resolve( chunk.ticker + "-" + chunk.from + "-" + chunk.until + ".csv" ),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+				metrics.recordBytesWritten( bytesWritten );
+			} finally {
+				Files.deleteIfExists( tempFile );
+			}
+
+			state.put( chunk.getStateKey( ), String.valueOf( quotes.size( ) ) );
+			return true;
+		} catch ( IOException e ) {
+			ms.error( new ParameterizedMessage( "Error backfilling {}", chunk ), e );
+			metrics.countError( "backfill" );
+			return false;
+		} finally {
+			metrics.endStep( "backfill", startNanos );
+		}
+	}
+
+	private static long write( Path file, Chunk chunk, List<HistoricalQuote> quotes ) throws IOException {
+		try ( BufferedWriter writer = Files.newBufferedWriter( file ) ) {
+			writer.write( CSV_HEADER );
+			writer.newLine( );
+			for ( HistoricalQuote quote : quotes ) {
+				if ( quote.getDate( ) == null ) {
+					continue;
+				}
+				LocalDate date = quote.getDate( ).toInstant( ).atZone( quote.getDate( ).getTimeZone( ).toZoneId( ) )
+						.toLocalDate( );
+				if ( date.isBefore( chunk.from ) || !date.isBefore( chunk.until ) ) {
+					continue;
+				}
+				writer.write( date + "," + toCsvValue( quote.getOpen( ) ) + "," + toCsvValue( quote.getHigh( ) ) + ","
+						+ toCsvValue( quote.getLow( ) ) + "," + toCsvValue( quote.getClose( ) ) + ","
+						+ toCsvValue( quote.getAdjClose( ) ) + "," + toCsvValue( quote.getVolume( ) ) );
+				writer.newLine( );
+			}
+		}
+		return Files.size( file );
+	}
+
+	private static String toCsvValue( Object value ) {
+		return value == null ? "" : value.toString( );
+	}
+
+	/**
+	 * Replaces the chunk records of a backfilled ticker with a single marker, so the state does not keep growing.
+	 */
+	private void complete( String ticker ) {
+		String statePrefix = STATE_PREFIX + ticker;
+		try {
+			String range = state.get( statePrefix + STATE_RANGE_SUFFIX );
+			LocalDate from = LocalDate.parse( range.substring( 0, range.indexOf( '/' ) ) );
+			LocalDate until = LocalDate.parse( range.substring( range.indexOf( '/' ) + 1 ) );
+			state.put( statePrefix + STATE_COMPLETED_SUFFIX, range );
+			for ( LocalDate start = from; start.isBefore( until ); start = start.plusMonths( chunkMonths ) ) {
+				state.put( new Chunk( ticker, start, until ).getStateKey( ), null );
+			}
+			state.put( statePrefix + STATE_RANGE_SUFFIX, null );
+			ms.info( "Completed backfilling ticker '{}' from {} until {}", ticker, from, until );
+		} catch ( IOException e ) {
+			ms.error( new ParameterizedMessage( "Could not record completed backfill of ticker '{}'", ticker ), e );
+		}
+	}
+
+	/**
+	 * Where the progress of the backfill is kept, e.g. the task state.
+	 */
+	public interface State {
+
+		String get( String key );
+
+		/**
+		 * @param value the new value, or null to remove the key
+		 */
+		void put( String key, String value ) throws IOException;
+
+	}
+
+	@FunctionalInterface
+	public interface ChunkFetcher {
+
+		/**
+		 * @return the daily quotes of {@code ticker} from {@code from} (inclusive) until {@code until} (exclusive)
+		 */
+		List<HistoricalQuote> fetch( String ticker, LocalDate from, LocalDate until ) throws IOException;
+
+	}
+
+	private static final class Chunk {
+
+		private final String ticker;
+
+		private final LocalDate from;
+
+		private final LocalDate until;
+
+		private volatile boolean done;
+
+		private Chunk( String ticker, LocalDate from, LocalDate until ) {
+			this.ticker = ticker;
+			this.from = from;
+			this.until = until;
+		}
+
+		/**
+		 * Chunks are identified by their start, which stays the same as long as the range and chunk size do.
+		 */
+		private String getStateKey( ) {
+			return STATE_PREFIX + ticker + STATE_CHUNK_SUFFIX + from;
+		}
+
+		@Override
+		public String toString( ) {
+			return "chunk of ticker '" + ticker + "' from " + from + " until " + until;
+		}
+
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.denis_targansky.dailies.timeseries;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.denis_targansky.dailies.finance.QuoteSnapshot;
+
+/**
+ * The quote snapshots of every ticker, kept as columnar time series in one folder per ticker. Values are stored as
+ * primitive longs and doubles and read back through memory-mapped columns, so range queries and downsampling never
+ * create an object per point.
+ */
+public final class QuoteHistoryStore {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private static final Instant MIN_INSTANT = Instant.ofEpochMilli( Long.MIN_VALUE );
+
+	private static final Instant MAX_INSTANT = Instant.ofEpochMilli( Long.MAX_VALUE );
+
+	private static final Map<Path, QuoteHistoryStore> sharedStores = new ConcurrentHashMap<>( );
+
+	private final Path folder;
+
+	private final Map<String, TickerSeries> series = new ConcurrentHashMap<>( );
+
+	private QuoteHistoryStore( Path folder ) {
+		this.folder = folder;
+	}
+
+	/**
+	 * @return the store kept in {@code folder}, opening it on first use
+	 */
+	public static QuoteHistoryStore shared( Path folder ) {
+		return sharedStores.computeIfAbsent( folder.toAbsolutePath( ).normalize( ), QuoteHistoryStore::new );
+	}
+
+	public static void closeAll( ) {
+		synchronized ( sharedStores ) {
+			for ( QuoteHistoryStore store : sharedStores.values( ) ) {
+				store.close( );
+			}
+			sharedStores.clear( );
+		}
+	}
+
+	/**
+	 * Appends the snapshot to the ticker's history. The change is forced to disk at the latest on {@link #sync()}.
+	 *
+	 * @return false if the history already has a snapshot at or after {@code timestampMillis}
+	 */
+	public boolean append( String ticker, long timestampMillis, QuoteSnapshot quote ) throws IOException {
+		return getSeries( ticker ).append( timestampMillis, quote );
+	}
+
+	/**
+	 * @return the snapshots of {@code ticker} taken at or after {@code from} and before {@code to}
+	 */
+	public QuoteSeries getRange( String ticker, Instant from, Instant to ) throws IOException {
+		return getSeries( ticker ).read( toEpochMillis( from ), toEpochMillis( to ) );
+	}
+
+	/**
+	 * Saturates instead of overflowing, so that {@link Instant#MIN} and {@link Instant#MAX} can bound a range.
+	 */
+	private static long toEpochMillis( Instant instant ) {
+		if ( instant.isBefore( MIN_INSTANT ) ) {
+			return Long.MIN_VALUE;
+		}
+		return instant.isAfter( MAX_INSTANT ) ? Long.MAX_VALUE : instant.toEpochMilli( );
+	}
+
+	/**
+	 * @return the tickers with a history, including the ones not opened since the store was
+	 */
+	public List<String> getTickers( ) throws IOException {
+		List<String> tickers = new ArrayList<>( );
+		if ( !Files.isDirectory( folder ) ) {
+			return tickers;
+		}
+		try ( DirectoryStream<Path> tickerFolders = Files.newDirectoryStream( folder, Files::isDirectory ) ) {
+			for ( Path tickerFolder : tickerFolders ) {
+				tickers.add( URLDecoder.decode( tickerFolder.getFileName( ).toString( ), StandardCharsets.UTF_8 ) );
+			}
+		}
+		tickers.sort( null );
+		return tickers;
+	}
+
+	public void sync( ) throws IOException {
+		for ( TickerSeries tickerSeries : series.values( ) ) {
+			tickerSeries.sync( );
+		}
+	}
+
+	private TickerSeries getSeries( String ticker ) throws IOException {
+		TickerSeries tickerSeries = series.get( ticker );
+		if ( tickerSeries != null ) {
+			return tickerSeries;
+		}
+
+		synchronized ( series ) {
+			tickerSeries = series.get( ticker );
+			if ( tickerSeries == null ) {
+				tickerSeries = new TickerSeries( ticker,
+						folder.resolve( URLEncoder.encode( ticker, StandardCharsets.UTF_8 ) ) );
+				series.put( ticker, tickerSeries );
+			}
+			return tickerSeries;
+		}
+	}
+
+	private void close( ) {
+		synchronized ( series ) {
+			for ( Map.Entry<String, TickerSeries> tickerSeries : series.entrySet( ) ) {
+				try {
+					tickerSeries.getValue( ).close( );
+				} catch ( IOException e ) {
+					ms.error( "Error closing history of {} in {}", tickerSeries.getKey( ), folder, e );
+				}
+			}
+			series.clear( );
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.denis_targansky.dailies.timeseries;
+
+import java.time.Instant;
+
+/**
+ * Quote snapshots of one ticker as primitive columns, oldest first. Missing values are {@link Double#NaN} in the
+ * decimal columns and {@link #MISSING} in the average volume column.
+ */
+public final class QuoteSeries {
+
+	public static final long MISSING = Long.MIN_VALUE;
+
+	private final String ticker;
+
+	private final long[] timestamps;
+
+	private final double[] prices;
+
+	private final double[] marketCaps;
+
+	private final double[] yearLows;
+
+	private final double[] yearHighs;
+
+	private final long[] averageVolumes;
+
+	QuoteSeries( String ticker, long[] timestamps, double[] prices, double[] marketCaps, double[] yearLows,
+			double[] yearHighs, long[] averageVolumes ) {
+		this.ticker = ticker;
+		this.timestamps = timestamps;
+		this.prices = prices;
+		this.marketCaps = marketCaps;
+		this.yearLows = yearLows;
+		this.yearHighs = yearHighs;
+		this.averageVolumes = averageVolumes;
+	}
+
+	public String getTicker( ) {
+		return ticker;
+	}
+
+	public int size( ) {
+		return timestamps.length;
+	}
+
+	public long getTimestampMillis( int index ) {
+		return timestamps[index];
+	}
+
+	public Instant getTimestamp( int index ) {
+		return Instant.ofEpochMilli( timestamps[index] );
+	}
+
+	public double getPrice( int index ) {
+		return prices[index];
+	}
+
+	public double getMarketCap( int index ) {
+		return marketCaps[index];
+	}
+
+	public double getYearLow( int index ) {
+		return yearLows[index];
+	}
+
+	public double getYearHigh( int index ) {
+		return yearHighs[index];
+	}
+
+	public long getAverageVolume( int index ) {
+		return averageVolumes[index];
+	}
+
+	/**
+	 * @return one point per non-empty bucket of {@code bucketMillis}, aligned to the epoch and timestamped with the
+	 *         start of the bucket
+	 */
+	public QuoteSeries downsample( long bucketMillis, Aggregation aggregation ) {
+		if ( bucketMillis <= 0 ) {
+			throw new IllegalArgumentException( "Bucket must be positive: " + bucketMillis );
+		}
+
+		int bucketCount = 0;
+		int[] bucketStarts = new int[timestamps.length + 1];
+		for ( int index = 0; index < timestamps.length; index++ ) {
+			if ( index == 0 || Math.floorDiv( timestamps[index], bucketMillis ) != Math
+					.floorDiv( timestamps[index - 1], bucketMillis ) ) {
+				bucketStarts[bucketCount++] = index;
+			}
+		}
+		bucketStarts[bucketCount] = timestamps.length;
+
+		long[] bucketTimestamps = new long[bucketCount];
+		double[] bucketPrices = new double[bucketCount];
+		double[] bucketMarketCaps = new double[bucketCount];
+		double[] bucketYearLows = new double[bucketCount];
+		double[] bucketYearHighs = new double[bucketCount];
+		long[] bucketAverageVolumes = new long[bucketCount];
+		for ( int bucket = 0; bucket < bucketCount; bucket++ ) {
+			int from = bucketStarts[bucket];
+			int to = bucketStarts[bucket + 1];
+			bucketTimestamps[bucket] = Math.floorDiv( timestamps[from], bucketMillis ) * bucketMillis;
+			bucketPrices[bucket] = aggregation.aggregate( prices, from, to );
+			bucketMarketCaps[bucket] = aggregation.aggregate( marketCaps, from, to );
+			bucketYearLows[bucket] = aggregation.aggregate( yearLows, from, to );
+			bucketYearHighs[bucket] = aggregation.aggregate( yearHighs, from, to );
+			bucketAverageVolumes[bucket] = aggregation.aggregate( averageVolumes, from, to );
+		}
+		return new QuoteSeries( ticker, bucketTimestamps, bucketPrices, bucketMarketCaps, bucketYearLows, bucketYearHighs,
+				bucketAverageVolumes );
+	}
+
+	@Override
+	public String toString( ) {
+		return "QuoteSeries [ticker=" + ticker + ", size=" + size( ) + "]";
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.denis_targansky.dailies.timeseries;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.denis_targansky.dailies.finance.QuoteSnapshot;
+
+/**
+ * The history of one ticker, one file of fixed width 8-byte values per column. A row is appended by writing its value
+ * at the same offset of every column, so the number of complete rows is that of the shortest column, and longer
+ * columns are cut back to it when the series is opened after a crash.
+ */
+final class TickerSeries implements Closeable {
+
+	private static final Logger ms = LogManager.getLogger( );
+
+	private enum Column {
+
+		TIMESTAMP( "timestamp" ), PRICE( "price" ), MARKET_CAP( "market-cap" ), YEAR_LOW( "year-low" ), YEAR_HIGH(
+				"year-high" ), AVERAGE_VOLUME( "average-volume" );
+
+		private final String fileName;
+
+		Column( String name ) {
+			this.fileName = name + ".col";
+		}
+
+	}
+
+	private static final Column[] COLUMNS = Column.values( );
+
+	private final String ticker;
+
+	private final FileChannel[] channels = new FileChannel[COLUMNS.length];
+
+	private final ByteBuffer[] mappedColumns = new ByteBuffer[COLUMNS.length];
+
+	private int mappedRows;
+
+	private int rows;
+
+	private long lastTimestamp;
+
+	private boolean unsynced;
+
+	TickerSeries( String ticker, Path folder ) throws IOException {
+		this.ticker = ticker;
+		Files.createDirectories( folder );
+		try {
+			long shortestSize = Long.MAX_VALUE;
+			for ( Column column : COLUMNS ) {
+				FileChannel channel = FileChannel.open( folder.resolve( column.fileName ), StandardOpenOption.CREATE,
+						StandardOpenOption.READ, StandardOpenOption.WRITE );
+				channels[column.ordinal( )] = channel;
+				shortestSize = Math.min( shortestSize, channel.size( ) );
+			}
+
+			rows = ( int ) Math.min( Integer.MAX_VALUE / Long.BYTES, shortestSize / Long.BYTES );
+			for ( FileChannel channel : channels ) {
+				if ( channel.size( ) > ( long ) rows * Long.BYTES ) {
+					ms.warn( "Discarding incomplete rows of {} in {}", ticker, folder );
+					channel.truncate( ( long ) rows * Long.BYTES );
+				}
+			}
+			if ( rows > 0 ) {
+				ByteBuffer last = ByteBuffer.allocate( Long.BYTES );
+				channels[Column.TIMESTAMP.ordinal( )].read( last, ( long ) ( rows - 1 ) * Long.BYTES );
+				lastTimestamp = last.getLong( 0 );
+			}
+		} catch ( IOException | RuntimeException e ) {
+			close( );
+			throw e;
+		}
+	}
+
+	/**
+	 * @return false, without appending, if the series already has a snapshot at or after {@code timestampMillis}
+	 */
+	synchronized boolean append( long timestampMillis, QuoteSnapshot quote ) throws IOException {
+		if ( rows > 0 && timestampMillis <= lastTimestamp ) {
+			return false;
+		}
+
+		long offset = ( long ) rows * Long.BYTES;
+		write( Column.TIMESTAMP, offset, timestampMillis );
+		write( Column.PRICE, offset, Double.doubleToRawLongBits( toDouble( quote.getPrice( ) ) ) );
+		write( Column.MARKET_CAP, offset, Double.doubleToRawLongBits( toDouble( quote.getMarketCap( ) ) ) );
+		write( Column.YEAR_LOW, offset, Double.doubleToRawLongBits( toDouble( quote.getYearLow( ) ) ) );
+		write( Column.YEAR_HIGH, offset, Double.doubleToRawLongBits( toDouble( quote.getYearHigh( ) ) ) );
+		write( Column.AVERAGE_VOLUME, offset,
+				quote.getAverageVolume( ) == null ? QuoteSeries.MISSING : quote.getAverageVolume( ) );
+		rows++;
+		lastTimestamp = timestampMillis;
+		unsynced = true;
+		return true;
+	}
+
+	private void write( Column column, long offset, long value ) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate( Long.BYTES ).putLong( 0, value );
+		FileChannel channel = channels[column.ordinal( )];
+		while ( buffer.hasRemaining( ) ) {
+			channel.write( buffer, offset + buffer.position( ) );
+		}
+	}
+
+	private static double toDouble( BigDecimal value ) {
+		return value == null ? Double.NaN : value.doubleValue( );
+	}
+
+	/**
+	 * @return the snapshots taken at or after {@code fromMillis} and before {@code toMillis}
+	 */
+	synchronized QuoteSeries read( long fromMillis, long toMillis ) throws IOException {
+		if ( mappedRows != rows ) {
+			for ( Column column : COLUMNS ) {
+				mappedColumns[column.ordinal( )] = channels[column.ordinal( )].map( FileChannel.MapMode.READ_ONLY, 0,
+						( long ) rows * Long.BYTES );
+			}
+			mappedRows = rows;
+		}
+
+		LongBuffer timestamps = mappedColumns[Column.TIMESTAMP.ordinal( )].asLongBuffer( );
+		int from = findFirstRowAtOrAfter( timestamps, fromMillis );
+		int to = Math.max( from, findFirstRowAtOrAfter( timestamps, toMillis ) );
+		int count = to - from;
+
+		long[] rangeTimestamps = new long[count];
+		timestamps.get( from, rangeTimestamps );
+		long[] averageVolumes = new long[count];
+		mappedColumns[Column.AVERAGE_VOLUME.ordinal( )].asLongBuffer( ).get( from, averageVolumes );
+		return new QuoteSeries( ticker, rangeTimestamps, readDoubles( Column.PRICE, from, count ),
+				readDoubles( Column.MARKET_CAP, from, count ), readDoubles( Column.YEAR_LOW, from, count ),
+				readDoubles( Column.YEAR_HIGH, from, count ), averageVolumes );
+	}
+
+	private double[] readDoubles( Column column, int from, int count ) {
+		DoubleBuffer values = mappedColumns[column.ordinal( )].asDoubleBuffer( );
+		double[] range = new double[count];
+		values.get( from, range );
+		return range;
+	}
+
+	private int findFirstRowAtOrAfter( LongBuffer timestamps, long timestampMillis ) {
+		int low = 0;
+		int high = mappedRows;
+		while ( low < high ) {
+			int middle = ( low + high ) >>> 1;
+			if ( timestamps.get( middle ) < timestampMillis ) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	synchronized int size( ) {
+		return rows;
+	}
+
+	synchronized void sync( ) throws IOException {
+		if ( !unsynced ) {
+			return;
+		}
+		for ( FileChannel channel : channels ) {
+			channel.force( false );
+		}
+		unsynced = false;
+	}
+
+	@Override
+	public synchronized void close( ) throws IOException {
+		IOException closeException = null;
+		for ( FileChannel channel : channels ) {
+			if ( channel == null ) {
+				continue;
+			}
+			try {
+				if ( unsynced ) {
+					channel.force( false );
+				}
+				channel.close( );
+			} catch ( IOException e ) {
+				closeException = e;
+			}
+		}
+		if ( closeException != null ) {
+			throw closeException;
+		}
+	}
+
+}
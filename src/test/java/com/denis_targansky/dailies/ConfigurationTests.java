@@ -0,0 +1,75 @@
+package com.denis_targansky.dailies;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.denis_targansky.dailies.Configuration.InvalidConfigurationException;
+import com.denis_targansky.dailies.Configuration.TaskConfiguration;
+import com.denis_targansky.dailies.scheduler.CatchUpPolicy;
+import com.denis_targansky.dailies.scheduler.OverlapPolicy;
+import com.denis_targansky.dailies.tasks.YahooFinanceTask;
+
+class ConfigurationTests {
+
+	private static final String TASK_CLASS_NAME = YahooFinanceTask.class.getName( );
+
+	@TempDir
+	Path tempFolder;
+
+	private Configuration read( String... lines )
+			throws IOException, InvalidConfigurationException, ConfigurationException {
+		Path configFile = tempFolder.resolve( "configuration.properties" );
+		Files.write( configFile, List.of( lines ) );
+		return new Configuration( configFile.toString( ) );
+	}
+
+	@Test
+	void groupsTaskSettingsAcrossGapsInTheNumbering( )
+			throws IOException, InvalidConfigurationException, ConfigurationException {
+		Configuration config = read( "task.10.class-name=" + TASK_CLASS_NAME, "task.10.period-seconds=60",
+				"task.2.class-name=" + TASK_CLASS_NAME, "task.2.period-seconds=30", "task.2.overlap-policy=queue-one",
+				"task.2.catch-up-policy=skip",
+				"task.2.property.tickers=AAPL,MSFT", "task.2.property.cache.persistent=true", "task.5.period-seconds=10" );
+
+		List<TaskConfiguration> taskConfigs = config.getTaskConfigurationList( );
+		assertEquals( 2, taskConfigs.size( ) );
+		assertEquals( "task.2.property.", taskConfigs.get( 0 ).getTaskPropertyPrefix( ) );
+		assertEquals( 30, taskConfigs.get( 0 ).getPeriodSeconds( ) );
+		assertEquals( OverlapPolicy.QUEUE_ONE, taskConfigs.get( 0 ).getOverlapPolicy( ) );
+		assertEquals( CatchUpPolicy.SKIP, taskConfigs.get( 0 ).getCatchUpPolicy( ) );
+		assertEquals( "task.2.", taskConfigs.get( 0 ).getTaskPrefix( ) );
+		assertEquals( Map.of( "tickers", "AAPL,MSFT", "cache.persistent", "true" ), taskConfigs.get( 0 ).getTaskProperties( ) );
+		assertEquals( "task.10.property.", taskConfigs.get( 1 ).getTaskPropertyPrefix( ) );
+		assertEquals( CatchUpPolicy.COALESCE, taskConfigs.get( 1 ).getCatchUpPolicy( ) );
+		assertThrows( UnsupportedOperationException.class, ( ) -> taskConfigs.get( 1 ).getTaskProperties( ).put( "a", "b" ) );
+	}
+
+	@Test
+	void reportsEveryInvalidSetting( ) {
+		InvalidConfigurationException e = assertThrows( InvalidConfigurationException.class,
+				( ) -> read( "scheduler.max-concurrent-tasks=0", "task.1.class-name=" + TASK_CLASS_NAME,
+						"task.2.class-name=" + TASK_CLASS_NAME, "task.2.period-seconds=often",
+						"task.3.class-name=java.lang.String", "task.3.period-seconds=60", "task.3.overlap-policy=never",
+						"task.3.catch-up-policy=later" ) );
+
+		String message = e.getMessage( );
+		assertTrue( message.contains( "scheduler.max-concurrent-tasks" ), message );
+		assertTrue( message.contains( "Missing period-seconds property for task 1" ), message );
+		assertTrue( message.contains( "task.2.period-seconds" ), message );
+		assertTrue( message.contains( "overlap-policy property for task 3" ), message );
+		assertTrue( message.contains( "catch-up-policy property for task 3" ), message );
+		assertTrue( message.contains( "is not runnable" ), message );
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.denis_targansky.dailies.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.denis_targansky.dailies.cache.TtlCache.Codec;
+
+class TtlCacheTests {
+
+	private static final Codec<String> STRING_CODEC = new Codec<>( ) {
+
+		@Override
+		public byte[] encode( String value ) {
+			return value.getBytes( StandardCharsets.UTF_8 );
+		}
+
+		@Override
+		public String decode( byte[] encodedValue ) {
+			return new String( encodedValue, StandardCharsets.UTF_8 );
+		}
+	};
+
+	@TempDir
+	Path tempFolder;
+
+	@Test
+	void reloadsExpiredEntries( ) throws IOException {
+		TtlCache<String> cache = new TtlCache<>( "test", 10, null, STRING_CODEC );
+		AtomicInteger loads = new AtomicInteger( );
+
+		cache.get( "a", Duration.ofHours( 1 ), key -> key + loads.incrementAndGet( ) );
+		assertEquals( "a1", cache.get( "a", Duration.ofHours( 1 ), key -> key + loads.incrementAndGet( ) ) );
+		assertEquals( "a2", cache.get( "a", Duration.ZERO, key -> key + loads.incrementAndGet( ) ) );
+		assertEquals( 1, cache.getMemoryHitCount( ) );
+		assertEquals( 2, cache.getMissCount( ) );
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntries( ) throws IOException {
+		TtlCache<String> cache = new TtlCache<>( "test", 2, null, STRING_CODEC );
+		cache.put( "a", "1" );
+		cache.put( "b", "2" );
+		cache.get( "a", Duration.ofHours( 1 ), key -> null );
+		cache.put( "c", "3" );
+
+		assertNull( cache.get( "b", Duration.ofHours( 1 ), key -> null ) );
+		assertEquals( "1", cache.get( "a", Duration.ofHours( 1 ), key -> null ) );
+		assertEquals( 1, cache.getEvictionCount( ) );
+	}
+
+	@Test
+	void loadsOnlyMissingKeysInBulk( ) throws IOException {
+		TtlCache<String> cache = new TtlCache<>( "test", 10, null, STRING_CODEC );
+		cache.put( "a", "cached" );
+
+		Map<String, String> values = cache.getAll( List.of( "a", "b", "c" ), Duration.ofHours( 1 ), keys -> {
+			assertEquals( 2, keys.size( ) );
+			return Map.of( "b", "loaded" );
+		} );
+
+		assertEquals( Map.of( "a", "cached", "b", "loaded" ), values );
+	}
+
+	@Test
+	void sharesConcurrentLoadsOfTheSameKey( ) throws Exception {
+		TtlCache<String> cache = new TtlCache<>( "test", 10, null, STRING_CODEC );
+		AtomicInteger loads = new AtomicInteger( );
+		CountDownLatch loadStarted = new CountDownLatch( 1 );
+		CountDownLatch releaseLoad = new CountDownLatch( 1 );
+		ExecutorService executor = Executors.newFixedThreadPool( 2 );
+		try {
+			Future<String> first = executor.submit( ( ) -> cache.get( "a", Duration.ofHours( 1 ), key -> {
+				loads.incrementAndGet( );
+				loadStarted.countDown( );
+				try {
+					releaseLoad.await( );
+				} catch ( InterruptedException e ) {
+					throw new IOException( e );
+				}
+				return "value";
+			} ) );
+			loadStarted.await( );
+			Future<String> second = executor.submit( ( ) -> cache.get( "a", Duration.ofHours( 1 ), key -> {
+				loads.incrementAndGet( );
+				return "other";
+			} ) );
+			Thread.sleep( 100 );
+			releaseLoad.countDown( );
+
+			assertEquals( "value", first.get( ) );
+			assertEquals( "value", second.get( ) );
+			assertEquals( 1, loads.get( ) );
+		} finally {
+			executor.shutdownNow( );
+		}
+	}
+
+	@Test
+	void readsEntriesPersistedByAnotherInstance( ) throws IOException {
+		new TtlCache<>( "test", 10, tempFolder, STRING_CODEC ).put( "a/b", "persisted" );
+
+		TtlCache<String> cache = new TtlCache<>( "test", 10, tempFolder, STRING_CODEC );
+		assertEquals( "persisted", cache.get( "a/b", Duration.ofHours( 1 ), key -> "loaded" ) );
+		assertEquals( 1, cache.getDiskHitCount( ) );
+	}
+
+	@Test
+	void sharedCachesTakeTheLatestSettings( ) throws IOException {
+		TtlCache<String> cache = TtlCache.shared( "test", 3, tempFolder, STRING_CODEC );
+		cache.put( "a", "1" );
+		cache.put( "b", "2" );
+		cache.put( "c", "3" );
+
+		assertSame( cache, TtlCache.shared( "test", 1, tempFolder, STRING_CODEC ) );
+		assertEquals( 1, cache.getMemorySize( ) );
+		assertEquals( 2, cache.getEvictionCount( ) );
+		cache.put( "d", "4" );
+		assertEquals( 1, cache.getMemorySize( ) );
+	}
+
+	@Test
+	void deletesExpiredEntriesFromDisk( ) throws IOException, InterruptedException {
+		TtlCache<String> cache = new TtlCache<>( "test", 1, tempFolder, STRING_CODEC );
+		cache.get( "a", Duration.ofMillis( 50 ), key -> "1" );
+		cache.get( "b", Duration.ofMillis( 50 ), key -> "2" );
+		assertTrue( Files.exists( tempFolder.resolve( "a.cache" ) ), "Fresh entries stay on disk when evicted" );
+
+		Thread.sleep( 100 );
+		cache.get( "c", Duration.ofMillis( 50 ), key -> "3" );
+		assertFalse( Files.exists( tempFolder.resolve( "b.cache" ) ), "Expired entries are deleted when evicted" );
+		assertNull( cache.get( "a", Duration.ofMillis( 50 ), key -> null ) );
+		assertFalse( Files.exists( tempFolder.resolve( "a.cache" ) ), "Expired entries are deleted when read" );
+	}
+
+}
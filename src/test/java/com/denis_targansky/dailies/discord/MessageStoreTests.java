@@ -0,0 +1,98 @@
+package com.denis_targansky.dailies.discord;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MessageStoreTests {
+
+	private static final String EXPORT = """
+			{
+			  "guild": { "id": "1", "name": "Guild" },
+			  "channel": { "id": "2", "name": "general" },
+			  "messages": [
+			    { "id": "100", "type": "Default", "timestamp": "2023-10-17T10:00:00.000+00:00",
+			      "content": "first", "author": { "id": "7", "name": "alice", "roles": [] }, "attachments": [] },
+			    { "id": "200", "timestamp": "2023-10-17T13:00:00+02:00", "content": "second \\u00e9",
+			      "author": { "id": "8", "name": "bob" } },
+			    { "id": "oops", "timestamp": "2023-10-17T12:00:00Z", "content": "invalid" },
+			    { "id": "300", "timestamp": "2023-10-17T12:00:00Z", "content": "third", "author": { "id": "7", "name": "alice" } }
+			  ],
+			  "messageCount": 4
+			}
+			""";
+
+	@TempDir
+	Path tempFolder;
+
+	@Test
+	void storesExportedMessagesOnce( ) throws IOException {
+		try ( MessageStore store = MessageStore.open( tempFolder ) ) {
+			assertEquals( 3, ExportParser.parse( toStream( EXPORT ), store::add ) );
+			assertEquals( 3, ExportParser.parse( toStream( EXPORT ), store::add ) );
+			assertEquals( 3, store.size( ) );
+			assertEquals( 300, store.getLastMessageId( ) );
+		}
+
+		try ( MessageStore store = MessageStore.open( tempFolder ) ) {
+			assertEquals( 3, store.size( ) );
+			ChatMessage second = store.getById( 200 );
+			assertEquals( "second é", second.getContent( ) );
+			assertEquals( "bob", second.getAuthorName( ) );
+			assertEquals( Instant.parse( "2023-10-17T11:00:00Z" ), second.getTimestamp( ) );
+			assertNull( store.getById( 150 ) );
+
+			List<ChatMessage> since = store.getSince( Instant.parse( "2023-10-17T10:30:00Z" ), 10 );
+			assertEquals( List.of( 200L, 300L ), since.stream( ).map( ChatMessage::getId ).toList( ) );
+			assertEquals( 1, store.getSince( Instant.EPOCH, 1 ).size( ) );
+
+			assertFalse( store.add( new ChatMessage( 250, 0, "9", "carol", "late" ) ) );
+			long newTimestamp = Instant.parse( "2023-10-17T13:00:00Z" ).toEpochMilli( );
+			assertTrue( store.add( new ChatMessage( 400, newTimestamp, "9", "carol", "new" ) ) );
+		}
+	}
+
+	@Test
+	void discardsIncompleteMessagesAfterCrash( ) throws IOException {
+		try ( MessageStore store = MessageStore.open( tempFolder ) ) {
+			store.add( new ChatMessage( 1, 1000, "7", "alice", "kept" ) );
+			store.add( new ChatMessage( 2, 2000, "7", "alice", "torn" ) );
+		}
+
+		// Cut the last record short and leave half an index entry behind
+		Path segmentFile = tempFolder.resolve( "segment-000000.dat" );
+		byte[] segment = Files.readAllBytes( segmentFile );
+		Files.write( segmentFile, Arrays.copyOf( segment, segment.length - 3 ) );
+		Files.write( tempFolder.resolve( "messages.idx" ), new byte[] { 1, 2, 3 }, StandardOpenOption.APPEND );
+
+		try ( MessageStore store = MessageStore.open( tempFolder ) ) {
+			assertEquals( 1, store.size( ) );
+			assertEquals( "kept", store.getById( 1 ).getContent( ) );
+			assertNull( store.getById( 2 ) );
+			assertTrue( store.add( new ChatMessage( 2, 2000, "7", "alice", "again" ) ) );
+		}
+
+		try ( MessageStore store = MessageStore.open( tempFolder ) ) {
+			assertEquals( "again", store.getById( 2 ).getContent( ) );
+		}
+	}
+
+	private static ByteArrayInputStream toStream( String json ) {
+		return new ByteArrayInputStream( json.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+}
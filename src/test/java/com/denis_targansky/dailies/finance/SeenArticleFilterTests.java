@@ -0,0 +1,124 @@
+package com.denis_targansky.dailies.finance;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SeenArticleFilterTests {
+
+	private static final long DAY = Duration.ofDays( 1 ).toMillis( );
+
+	@TempDir
+	Path tempFolder;
+
+	@AfterEach
+	void closeFilters( ) {
+		SeenArticleFilter.closeAll( );
+	}
+
+	@Test
+	void remembersArticlesPerTickerUntilTheyExpire( ) {
+		SeenArticleFilter filter = new SeenArticleFilter( tempFolder.resolve( "seen" ), 1000, Duration.ofDays( 30 ) );
+		long now = System.currentTimeMillis( );
+		filter.add( "AAPL", "a", now );
+		assertTrue( filter.contains( "AAPL", "a", now ) );
+		assertFalse( filter.contains( "MSFT", "a", now ) );
+		assertFalse( filter.contains( "AAPL", "b", now ) );
+
+		assertTrue( filter.contains( "AAPL", "a", now + 30 * DAY ) );
+		assertFalse( filter.contains( "AAPL", "a", now + 41 * DAY ) );
+
+		// After a long pause the filter starts afresh instead of rotating through every missed generation
+		filter.add( "AAPL", "c", now + 1000 * DAY );
+		assertTrue( filter.contains( "AAPL", "c", now + 1029 * DAY ) );
+	}
+
+	@Test
+	void survivesRestarts( ) throws IOException {
+		Path snapshot = tempFolder.resolve( "seen" );
+		SeenArticleFilter filter = new SeenArticleFilter( snapshot, 1000, Duration.ofDays( 30 ) );
+		long now = System.currentTimeMillis( );
+		for ( int index = 0; index < 500; index++ ) {
+			filter.add( "T" + index % 10, "uuid-" + index, now );
+		}
+		filter.save( );
+		try ( Stream<Path> files = Files.list( tempFolder ) ) {
+			assertEquals( List.of( snapshot ), files.toList( ) );
+		}
+
+		SeenArticleFilter reopened = new SeenArticleFilter( snapshot, 1000, Duration.ofDays( 30 ) );
+		for ( int index = 0; index < 500; index++ ) {
+			assertTrue( reopened.contains( "T" + index % 10, "uuid-" + index, now ) );
+		}
+
+		// A different capacity cannot reuse the bits, so the snapshot is ignored
+		assertFalse( new SeenArticleFilter( snapshot, 5000, Duration.ofDays( 30 ) ).contains( "T0", "uuid-0", now ) );
+	}
+
+	@Test
+	void sharedFiltersTakeTheLatestSettings( ) {
+		Path snapshot = tempFolder.resolve( "seen" );
+		SeenArticleFilter filter = SeenArticleFilter.shared( snapshot, 1000, Duration.ofDays( 30 ) );
+		filter.add( "AAPL", "a" );
+		assertSame( filter, SeenArticleFilter.shared( snapshot, 1000, Duration.ofDays( 30 ) ) );
+
+		// The bits fit the same capacity, so the articles seen so far carry over to the longer maximum age
+		SeenArticleFilter longerFilter = SeenArticleFilter.shared( snapshot, 1000, Duration.ofDays( 60 ) );
+		assertNotSame( filter, longerFilter );
+		assertTrue( longerFilter.contains( "AAPL", "a" ) );
+		assertTrue( longerFilter.contains( "AAPL", "a", System.currentTimeMillis( ) + 50 * DAY ) );
+
+		SeenArticleFilter largerFilter = SeenArticleFilter.shared( snapshot, 5000, Duration.ofDays( 60 ) );
+		assertNotSame( longerFilter, largerFilter );
+		assertFalse( largerFilter.contains( "AAPL", "a" ) );
+	}
+
+	@Test
+	void keepsFalsePositivesBoundedPastItsCapacity( ) {
+		SeenArticleFilter filter = new SeenArticleFilter( tempFolder.resolve( "seen" ), 10_000, Duration.ofDays( 30 ) );
+		long now = System.currentTimeMillis( );
+		for ( int index = 0; index < 1_000_000; index++ ) {
+			filter.add( "T" + index % 100, "uuid-" + index, now );
+		}
+		for ( int index = 990_000; index < 1_000_000; index++ ) {
+			assertTrue( filter.contains( "T" + index % 100, "uuid-" + index, now ) );
+		}
+
+		int falsePositives = 0;
+		for ( int index = 0; index < 100_000; index++ ) {
+			if ( filter.contains( "T" + index % 100, "other-" + index, now ) ) {
+				falsePositives++;
+			}
+		}
+		assertTrue( falsePositives < 1_000, falsePositives + " false positives" );
+	}
+
+	@Test
+	void skipsSeenArticlesWhileParsing( ) throws IOException {
+		String response = """
+				{"news":[
+				{"uuid":"a","title":"Old","relatedTickers":["AAPL"]},
+				{"uuid":"b","title":"New","relatedTickers":["AAPL"]}
+				]}""";
+		List<Article> articles = NewsSearchParser.parse(
+				new ByteArrayInputStream( response.getBytes( StandardCharsets.UTF_8 ) ), "AAPL", false, "a"::equals );
+		assertEquals( 1, articles.size( ) );
+		assertEquals( "New", articles.get( 0 ).getTitle( ) );
+	}
+
+}
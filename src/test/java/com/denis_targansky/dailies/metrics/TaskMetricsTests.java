@@ -0,0 +1,30 @@
+package com.denis_targansky.dailies.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Metrics;
+
+class TaskMetricsTests {
+
+	@Test
+	void recordsHttpRequestsByStatusClass( ) {
+		TaskMetrics.recordHttpRequest( "status.example.com", 404, 1000 );
+		TaskMetrics.recordHttpRequest( "status.example.com", 0, 1000 );
+
+		assertNotNull( Metrics.globalRegistry.find( TaskMetrics.HTTP_CLIENT_DURATION ).tag( "status", "4xx" ).timer( ) );
+		assertNotNull( Metrics.globalRegistry.find( TaskMetrics.HTTP_CLIENT_DURATION ).tag( "status", "none" ).timer( ) );
+	}
+
+	@Test
+	void capsTheNumberOfHostSeries( ) {
+		for ( int host = 0; host < TaskMetrics.MAX_HTTP_HOSTS; host++ ) {
+			TaskMetrics.getHostTag( "host-" + host + ".example.com" );
+		}
+
+		assertEquals( TaskMetrics.OTHER_HOST, TaskMetrics.getHostTag( "one-more.example.com" ) );
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.denis_targansky.dailies.reports;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.denis_targansky.dailies.finance.Article;
+
+class ConsolidatedReportTests {
+
+	@TempDir
+	Path tempFolder;
+
+	@Test
+	void writesEveryTickerThroughTheRowWindow( ) throws IOException {
+		Path destination = tempFolder.resolve( "DD-ALL-20261017.xlsx" );
+		try ( ConsolidatedReport report = new ConsolidatedReport( 10 ) ) {
+			for ( int index = 0; index < 500; index++ ) {
+				report.add( new TickerReport( "T" + index, "Company " + index, String.valueOf( index + 0.5 ),
+						index % 2 == 0 ? null : "n/a", "1", "2", "3", "2026-10-17",
+						List.of( new Article( "a" + index, "Title " + index, "https://example.com/" + index, 0, "Wire", null ),
+								new Article( "b" + index, "Other " + index, "https://example.com/b" + index, 0, "Wire",
+										null ) ) ) );
+			}
+			assertEquals( 500, report.getTickerCount( ) );
+			assertTrue( report.write( destination ) > 0 );
+		}
+
+		try ( Stream<Path> files = Files.list( tempFolder ) ) {
+			assertEquals( List.of( destination ), files.toList( ) );
+		}
+		try ( InputStream in = Files.newInputStream( destination ); XSSFWorkbook workbook = new XSSFWorkbook( in ) ) {
+			Sheet quotes = workbook.getSheet( "Quotes" );
+			assertEquals( 500, quotes.getLastRowNum( ) );
+			assertEquals( "Ticker", quotes.getRow( 0 ).getCell( 0 ).getStringCellValue( ) );
+			assertEquals( "T499", quotes.getRow( 500 ).getCell( 0 ).getStringCellValue( ) );
+			assertEquals( 499.5, quotes.getRow( 500 ).getCell( 2 ).getNumericCellValue( ) );
+			assertEquals( "n/a", quotes.getRow( 500 ).getCell( 3 ).getStringCellValue( ) );
+			assertNull( quotes.getRow( 499 ).getCell( 3 ) );
+
+			Sheet headlines = workbook.getSheet( "Headlines" );
+			assertEquals( 1000, headlines.getLastRowNum( ) );
+			assertEquals( "Other 499", headlines.getRow( 1000 ).getCell( 2 ).getStringCellValue( ) );
+			assertEquals( 2, headlines.getRow( 1000 ).getCell( 1 ).getNumericCellValue( ) );
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.denis_targansky.dailies.reports;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.denis_targansky.dailies.finance.Article;
+
+class ReportRenderersTests {
+
+	@TempDir
+	Path tempFolder;
+
+	@Test
+	void parsesFormats( ) {
+		assertEquals( ReportFormat.MARKDOWN, ReportFormat.fromPropertyValue( " Markdown " ) );
+		assertEquals( "md", ReportFormat.MARKDOWN.getFileExtension( ) );
+		assertNull( ReportFormat.fromPropertyValue( "pdf" ) );
+	}
+
+	@Test
+	void writesCsvRowsNamedLikeThePlaceholders( ) throws IOException {
+		String csv = render( ReportFormat.CSV );
+		assertEquals( String.join( "\n", "field,value", "company_name,\"Smith, \"\"Jones\"\" & Co\"", "ticker,SJC",
+				"stock_price,12.5", "market_cap,", "52_week_low,10", "52_week_high,20", "average_volume,1000",
+				"scrape_date,2026-10-17", "headline_title_1,<b>Up</b>", "headline_link_1,https://example.com/a?b=1&c=2",
+				"" ), csv );
+	}
+
+	@Test
+	void escapesHtml( ) throws IOException {
+		String html = render( ReportFormat.HTML );
+		assertTrue( html.contains( "<h1>Smith, &quot;Jones&quot; &amp; Co (SJC)</h1>" ) );
+		assertTrue( html.contains( "<a href=\"https://example.com/a?b=1&amp;c=2\">&lt;b&gt;Up&lt;/b&gt;</a>" ) );
+		assertTrue( html.contains( "<tr><th>Market cap</th><td></td></tr>" ) );
+	}
+
+	@Test
+	void writesMarkdownTable( ) throws IOException {
+		String markdown = render( ReportFormat.MARKDOWN );
+		assertTrue( markdown.startsWith( "# Smith, \"Jones\" & Co (SJC)\n" ) );
+		assertTrue( markdown.contains( "| Stock price | 12.5 |\n" ) );
+		assertTrue( markdown.contains( "- [\\<b\\>Up\\</b\\>](https://example.com/a?b=1&c=2)\n" ) );
+	}
+
+	@Test
+	void overwritesExistingReports( ) throws IOException {
+		Path destination = tempFolder.resolve( "report.csv" );
+		Files.writeString( destination, "x".repeat( 10_000 ) );
+		assertTrue( ReportRenderer.of( ReportFormat.CSV, null ).render( report( ), destination ) );
+		assertTrue( Files.readString( destination ).startsWith( "field,value\n" ) );
+		assertTrue( Files.size( destination ) < 10_000 );
+	}
+
+	@Test
+	void keepsThePreviousDocxWhenNothingResolves( ) throws IOException {
+		Path templateFile = tempFolder.resolve( "template.docx" );
+		try ( InputStream in = ReportRenderersTests.class.getResourceAsStream( "/fixtures/report-template.docx" ) ) {
+			Files.copy( in, templateFile );
+		}
+		Path destination = tempFolder.resolve( "report.docx" );
+		Files.writeString( destination, "previous" );
+		ReportRenderer renderer = ReportRenderer.of( ReportFormat.DOCX, templateFile );
+
+		assertFalse( renderer.render( new TickerReport( null, null, null, null, null, null, null, null, null ), destination ) );
+		assertEquals( "previous", Files.readString( destination ) );
+
+		assertTrue( renderer.render( report( ), destination ) );
+		byte[] document = Files.readAllBytes( destination );
+		assertEquals( 'P', document[0] );
+		assertEquals( 'K', document[1] );
+		try ( Stream<Path> files = Files.list( tempFolder ) ) {
+			assertEquals( 2, files.count( ) );
+		}
+	}
+
+	private String render( ReportFormat format ) throws IOException {
+		Path destination = tempFolder.resolve( "report." + format.getFileExtension( ) );
+		ReportRenderer renderer = ReportRenderer.of( format, null );
+		assertEquals( format, renderer.getFormat( ) );
+		assertTrue( renderer.render( report( ), destination ) );
+		return Files.readString( destination, StandardCharsets.UTF_8 );
+	}
+
+	private static TickerReport report( ) {
+		return new TickerReport( "SJC", "Smith, \"Jones\" & Co", "12.5", null, "10", "20", "1000", "2026-10-17",
+				List.of( new Article( "1", "<b>Up</b>", "https://example.com/a?b=1&c=2", 0, "Wire", null ) ) );
+	}
+
+}
@@ -0,0 +1,197 @@
+package com.denis_targansky.dailies.scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.denis_targansky.dailies.scheduler.TaskScheduler.ScheduledTask;
+import com.denis_targansky.dailies.state.TaskStateStore;
+
+class TaskSchedulerTests {
+
+	private static final Duration HOUR = Duration.ofHours( 1 );
+
+	/** The scheduler's clock stands still, so the due times it computes can be asserted exactly. */
+	private final Instant now = Instant.now( ).truncatedTo( ChronoUnit.MILLIS );
+
+	@TempDir
+	Path tempFolder;
+
+	private TaskStateStore stateStore;
+
+	private TaskScheduler scheduler;
+
+	@BeforeEach
+	void openScheduler( ) throws IOException {
+		stateStore = TaskStateStore.shared( tempFolder );
+		scheduler = new TaskScheduler( 4, stateStore, HOUR, Clock.fixed( now, ZoneOffset.UTC ) );
+	}
+
+	@AfterEach
+	void closeScheduler( ) {
+		scheduler.shutdown( Duration.ofSeconds( 5 ) );
+		TaskStateStore.closeAll( );
+	}
+
+	@Test
+	void savesTheRunTimesOfNewTasks( ) throws InterruptedException {
+		CountDownLatch ran = new CountDownLatch( 1 );
+		scheduler.schedule( "new", "task.1.", ran::countDown, Duration.ZERO, Duration.ZERO, HOUR, OverlapPolicy.SKIP,
+				CatchUpPolicy.COALESCE );
+		assertTrue( ran.await( 5, TimeUnit.SECONDS ) );
+
+		awaitState( "task.1.schedule.last-run" );
+		assertEquals( now.toString( ), stateStore.get( "task.1.schedule.last-run" ) );
+		assertEquals( now.plus( HOUR ).toString( ), stateStore.get( "task.1.schedule.next-due" ) );
+	}
+
+	@Test
+	void catchesUpRunsCutShortByARestart( ) throws IOException, InterruptedException {
+		Instant lastRun = now.minus( Duration.ofMinutes( 70 ) );
+		Instant runStarted = now.minus( Duration.ofMinutes( 10 ) );
+		stateStore.put( "task.1.schedule.last-run", lastRun.toString( ) );
+		stateStore.put( "task.1.schedule.run-started", runStarted.toString( ) );
+		stateStore.put( "task.1.schedule.next-due", runStarted.plus( HOUR ).toString( ) );
+
+		CountDownLatch ran = new CountDownLatch( 1 );
+		String[] lastRunDuringRun = new String[1];
+		scheduler.schedule( "interrupted", "task.1.", ( ) -> {
+			lastRunDuringRun[0] = stateStore.get( "task.1.schedule.last-run" );
+			ran.countDown( );
+		}, Duration.ZERO, Duration.ZERO, HOUR, OverlapPolicy.SKIP, CatchUpPolicy.COALESCE );
+		assertTrue( ran.await( 5, TimeUnit.SECONDS ) );
+
+		// The run only counts once it finished
+		assertEquals( lastRun.toString( ), lastRunDuringRun[0] );
+		awaitState( "task.1.schedule.last-run", now.toString( ) );
+		assertEquals( now.toString( ), stateStore.get( "task.1.schedule.run-started" ) );
+	}
+
+	@Test
+	void keepsTheDueTimeOfTasksThatRanRecently( ) throws IOException {
+		Instant lastRun = now.minus( Duration.ofMinutes( 10 ) );
+		stateStore.put( "task.1.schedule.last-run", lastRun.toString( ) );
+		stateStore.put( "task.1.schedule.run-started", lastRun.toString( ) );
+		stateStore.put( "task.1.schedule.next-due", lastRun.plus( HOUR ).toString( ) );
+
+		scheduler.schedule( "recent", "task.1.", ( ) -> {
+		}, Duration.ZERO, Duration.ZERO, HOUR, OverlapPolicy.SKIP, CatchUpPolicy.COALESCE );
+		assertEquals( lastRun.plus( HOUR ).toString( ), stateStore.get( "task.1.schedule.next-due" ) );
+	}
+
+	@Test
+	void coalescesMissedRunsIntoStaggeredCatchUps( ) throws IOException, InterruptedException {
+		Instant lastRun = now.minus( Duration.ofHours( 10 ) );
+		CountDownLatch ran = new CountDownLatch( 1 );
+		for ( int index = 0; index < 3; index++ ) {
+			stateStore.put( "task." + index + ".schedule.last-run", lastRun.toString( ) );
+			scheduler.schedule( "overdue-" + index, "task." + index + ".", ran::countDown, Duration.ZERO, Duration.ZERO,
+					HOUR, OverlapPolicy.SKIP, CatchUpPolicy.COALESCE );
+		}
+
+		// The first catch-up runs right away and the others one stagger apart
+		assertTrue( ran.await( 5, TimeUnit.SECONDS ) );
+		awaitState( "task.0.schedule.last-run", now.toString( ) );
+		assertEquals( now.plus( HOUR ).toString( ), stateStore.get( "task.0.schedule.next-due" ) );
+		assertEquals( now.plus( HOUR ).toString( ), stateStore.get( "task.1.schedule.next-due" ) );
+		assertEquals( now.plus( HOUR.multipliedBy( 2 ) ).toString( ), stateStore.get( "task.2.schedule.next-due" ) );
+	}
+
+	@Test
+	void skipsMissedRunsWhenAsked( ) throws IOException {
+		Instant lastRun = now.minus( Duration.ofMinutes( 150 ) );
+		stateStore.put( "task.1.schedule.last-run", lastRun.toString( ) );
+
+		scheduler.schedule( "skipping", "task.1.", ( ) -> {
+		}, Duration.ZERO, Duration.ZERO, HOUR, OverlapPolicy.SKIP, CatchUpPolicy.SKIP );
+		assertEquals( lastRun.plus( Duration.ofHours( 3 ) ).toString( ), stateStore.get( "task.1.schedule.next-due" ) );
+	}
+
+	@Test
+	void replacementsWaitForTheRunInProgress( ) throws InterruptedException {
+		TaskScheduler statelessScheduler = new TaskScheduler( 4, null, Duration.ZERO );
+		try {
+			CountDownLatch oldStarted = new CountDownLatch( 1 );
+			CountDownLatch releaseOld = new CountDownLatch( 1 );
+			AtomicBoolean oldFinished = new AtomicBoolean( );
+			ScheduledTask old = statelessScheduler.schedule( "old", "task.1.", ( ) -> {
+				oldStarted.countDown( );
+				try {
+					releaseOld.await( );
+				} catch ( InterruptedException e ) {
+					Thread.currentThread( ).interrupt( );
+				}
+				oldFinished.set( true );
+			}, Duration.ZERO, Duration.ZERO, HOUR, OverlapPolicy.QUEUE_ONE, CatchUpPolicy.COALESCE );
+			assertTrue( oldStarted.await( 5, TimeUnit.SECONDS ) );
+			old.cancel( );
+
+			CountDownLatch replacementRan = new CountDownLatch( 1 );
+			AtomicBoolean overlapped = new AtomicBoolean( );
+			ScheduledTask replacement = statelessScheduler.schedule( "replacement", "task.1.", ( ) -> {
+				overlapped.set( !oldFinished.get( ) );
+				replacementRan.countDown( );
+			}, Duration.ZERO, Duration.ZERO, HOUR, OverlapPolicy.QUEUE_ONE, CatchUpPolicy.COALESCE );
+			assertTrue( replacement.isRunning( ) );
+			assertEquals( 1, replacementRan.getCount( ) );
+
+			releaseOld.countDown( );
+			assertTrue( replacementRan.await( 5, TimeUnit.SECONDS ) );
+			assertFalse( overlapped.get( ) );
+		} finally {
+			statelessScheduler.shutdown( Duration.ofSeconds( 5 ) );
+		}
+	}
+
+	@Test
+	void shutdownWaitsForTheRunsInProgress( ) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch( 1 );
+		AtomicBoolean finished = new AtomicBoolean( );
+		scheduler.schedule( "slow", "task.1.", ( ) -> {
+			started.countDown( );
+			try {
+				Thread.sleep( 300 );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread( ).interrupt( );
+				return;
+			}
+			finished.set( true );
+		}, Duration.ZERO, Duration.ZERO, HOUR, OverlapPolicy.SKIP, CatchUpPolicy.COALESCE );
+		assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+		assertTrue( scheduler.shutdown( Duration.ofSeconds( 5 ) ) );
+		assertTrue( finished.get( ) );
+	}
+
+	private void awaitState( String key ) throws InterruptedException {
+		for ( int attempt = 0; attempt < 50 && stateStore.get( key ) == null; attempt++ ) {
+			Thread.sleep( 20 );
+		}
+		assertNotNull( stateStore.get( key ) );
+	}
+
+	private void awaitState( String key, String value ) throws InterruptedException {
+		for ( int attempt = 0; attempt < 50 && !value.equals( stateStore.get( key ) ); attempt++ ) {
+			Thread.sleep( 20 );
+		}
+		assertEquals( value, stateStore.get( key ) );
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.denis_targansky.dailies.scraping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecordWriterTests {
+
+	@TempDir
+	Path tempFolder;
+
+	@Test
+	void quotesCsvValues( ) throws IOException {
+		Map<String, String> record = new HashMap<>( );
+		record.put( "title", "Say \"hello\", world" );
+		record.put( "text", "two\r\nlines" );
+		record.put( "ignored", "not a column" );
+
+		Path file = tempFolder.resolve( "records.csv" );
+		try ( RecordWriter writer = new RecordWriter( OutputFormat.CSV, file, List.of( "title", "price, USD", "text" ) ) ) {
+			writer.write( "https://example.com/?a=1,2", record );
+			writer.write( "https://example.com/", Map.of( "title", "Plain" ) );
+			assertEquals( 2, writer.getRecordCount( ) );
+		}
+
+		assertEquals( "url,title,\"price, USD\",text\r\n"
+				+ "\"https://example.com/?a=1,2\",\"Say \"\"hello\"\", world\",,\"two\r\nlines\"\r\n"
+				+ "https://example.com/,Plain,,\r\n", Files.readString( file, StandardCharsets.UTF_8 ) );
+	}
+
+	@Test
+	void writesAJsonObjectPerLine( ) throws IOException {
+		Map<String, String> record = new LinkedHashMap<>( );
+		record.put( "title", "Line\nbreak \"quoted\"" );
+		record.put( "price", null );
+
+		StringWriter output = new StringWriter( );
+		try ( RecordWriter writer = new RecordWriter( OutputFormat.NDJSON, output, List.of( "title", "price" ) ) ) {
+			writer.write( "https://example.com/", record );
+		}
+
+		assertEquals( "{\"url\":\"https://example.com/\",\"title\":\"Line\\nbreak \\\"quoted\\\"\",\"price\":null}\n",
+				output.toString( ) );
+	}
+
+}
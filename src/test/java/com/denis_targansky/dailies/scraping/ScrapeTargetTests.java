@@ -0,0 +1,57 @@
+package com.denis_targansky.dailies.scraping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+class ScrapeTargetTests {
+
+	private static final String URL = "https://example.com/news/index.html";
+
+	private static final Document PAGE = Jsoup.parse( """
+			<h1>Latest news</h1>
+			<ul>
+				<li class="item"><a href="first.html" title="First">First <b>story</b></a></li>
+				<li class="item"><a href="/second.html">Second story</a></li>
+				<li class="item">No link</li>
+			</ul>""", URL );
+
+	@Test
+	void extractsTextAndAttributes( ) {
+		assertEquals( "Latest news", FieldRule.parse( "h1" ).extract( PAGE ) );
+		assertEquals( "First story", FieldRule.parse( "li a" ).extract( PAGE ) );
+		assertEquals( "first.html", FieldRule.parse( "a@href" ).extract( PAGE ) );
+		assertEquals( "https://example.com/news/first.html", FieldRule.parse( " a @abs:href " ).extract( PAGE ) );
+		assertEquals( "First", FieldRule.parse( "a[title]@title" ).extract( PAGE ) );
+		assertNull( FieldRule.parse( "a:contains(Second)@title" ).extract( PAGE ) );
+		assertNull( FieldRule.parse( "h2" ).extract( PAGE ) );
+		assertThrows( IllegalArgumentException.class, ( ) -> FieldRule.parse( "li[" ) );
+	}
+
+	@Test
+	void extractsARecordPerItem( ) {
+		Map<String, FieldRule> fieldRules = new LinkedHashMap<>( );
+		fieldRules.put( "title", FieldRule.parse( "a" ) );
+		fieldRules.put( "link", FieldRule.parse( "a@abs:href" ) );
+
+		List<Map<String, String>> records = new ScrapeTarget( URL, "li.item", fieldRules ).extract( PAGE );
+		assertEquals( 3, records.size( ) );
+		assertEquals( Map.of( "title", "First story", "link", "https://example.com/news/first.html" ), records.get( 0 ) );
+		assertEquals( Map.of( "title", "Second story", "link", "https://example.com/second.html" ), records.get( 1 ) );
+		assertNull( records.get( 2 ).get( "title" ) );
+		assertEquals( List.of( "title", "link" ), List.copyOf( records.get( 2 ).keySet( ) ) );
+
+		assertEquals( List.of( Map.of( "title", "First story", "link", "https://example.com/news/first.html" ) ),
+				new ScrapeTarget( URL, " ", fieldRules ).extract( PAGE ) );
+		assertThrows( IllegalArgumentException.class, ( ) -> new ScrapeTarget( URL, "li[", fieldRules ) );
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.denis_targansky.dailies.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SearchIndexTests {
+
+	@TempDir
+	Path tempFolder;
+
+	@AfterEach
+	void closeIndexes( ) {
+		SearchIndex.closeAll( );
+	}
+
+	@Test
+	void ranksAndReplacesDocumentsAcrossReopening( ) throws IOException {
+		SearchIndex index = SearchIndex.shared( tempFolder );
+		index.add( new SearchDocument( "news:1", "news", "Apple beats earnings", "https://example.com/1",
+				"Apple reported record earnings for the quarter", 1000 ) );
+		index.add( new SearchDocument( "news:2", "news", "Markets rally", null, "Stocks rallied, apple among them", 2000 ) );
+		index.add( new SearchDocument( "discord:3", "discord", "alice", null, "did anyone see the apple earnings?", 3000 ) );
+		index.commit( );
+
+		SearchResults results = index.search( "Apple earnings", null, 10 );
+		assertEquals( 3, results.getTotalHits( ) );
+		assertEquals( "news:1", results.getHits( ).get( 0 ).getKey( ) );
+		assertEquals( "https://example.com/1", results.getHits( ).get( 0 ).getUrl( ) );
+		assertEquals( List.of( "discord:3" ), getKeys( index.search( "apple", "discord", 10 ) ) );
+		assertEquals( 0, index.search( "banana", null, 10 ).getTotalHits( ) );
+
+		index.add( new SearchDocument( "news:1", "news", "Apple misses", null, "Revenue fell short", 4000 ) );
+		index.commit( );
+		assertEquals( List.of( "discord:3" ), getKeys( index.search( "earnings", null, 10 ) ) );
+		SearchIndex.closeAll( );
+
+		index = SearchIndex.shared( tempFolder );
+		assertEquals( 3, index.getDocumentCount( ) );
+		assertEquals( List.of( "news:1" ), getKeys( index.search( "revenue", null, 10 ) ) );
+		assertEquals( List.of( "discord:3" ), getKeys( index.search( "EARNINGS", null, 10 ) ) );
+	}
+
+	@Test
+	void mergesSegmentsInTheBackground( ) throws IOException, InterruptedException {
+		SearchIndex index = SearchIndex.shared( tempFolder );
+		for ( int commit = 0; commit < 25; commit++ ) {
+			for ( int document = 0; document < 20; document++ ) {
+				// Every commit replaces the documents with the same number from the previous one
+				index.add( new SearchDocument( "doc:" + ( commit * 10 + document ), "test", "title " + commit, null,
+						"common word" + document, commit ) );
+			}
+			index.commit( );
+		}
+		index.awaitMerges( );
+
+		assertTrue( index.getSegmentCount( ) <= 10, "Segment count " + index.getSegmentCount( ) );
+		assertEquals( 24 * 10 + 20, index.getDocumentCount( ) );
+		assertEquals( 24 * 10 + 20, index.search( "common", null, 1000 ).getTotalHits( ) );
+		assertEquals( List.of( "doc:255" ), getKeys( index.search( "title 24 word15", null, 1 ) ) );
+		SearchIndex.closeAll( );
+
+		try ( Stream<Path> files = Files.list( tempFolder ) ) {
+			assertEquals( SearchIndex.shared( tempFolder ).getSegmentCount( ) + 1, files.count( ) );
+		}
+	}
+
+	@Test
+	void concurrentCommitsKeepTheLatestVersion( ) throws Exception {
+		SearchIndex index = SearchIndex.shared( tempFolder );
+		Object addLock = new Object( );
+		int[] version = { 0 };
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+		try {
+			List<Future<?>> futures = new ArrayList<>( );
+			for ( int thread = 0; thread < 4; thread++ ) {
+				futures.add( executor.submit( ( ) -> {
+					for ( int iteration = 0; iteration < 50; iteration++ ) {
+						synchronized ( addLock ) {
+							version[0]++;
+							index.add( new SearchDocument( "key", "test", "version " + version[0], null, "shared text", version[0] ) );
+						}
+						index.commit( );
+					}
+					return null;
+				} ) );
+			}
+			for ( Future<?> future : futures ) {
+				future.get( );
+			}
+		} finally {
+			executor.shutdown( );
+		}
+		index.awaitMerges( );
+
+		SearchResults results = index.search( "shared", null, 10 );
+		assertEquals( 1, results.getTotalHits( ) );
+		assertEquals( "version 200", results.getHits( ).get( 0 ).getTitle( ) );
+		SearchIndex.closeAll( );
+
+		results = SearchIndex.shared( tempFolder ).search( "shared", null, 10 );
+		assertEquals( 1, results.getTotalHits( ) );
+		assertEquals( "version 200", results.getHits( ).get( 0 ).getTitle( ) );
+	}
+
+	private static List<String> getKeys( SearchResults results ) {
+		return results.getHits( ).stream( ).map( SearchHit::getKey ).toList( );
+	}
+
+}
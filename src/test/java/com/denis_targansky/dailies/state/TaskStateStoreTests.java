@@ -0,0 +1,79 @@
+package com.denis_targansky.dailies.state;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TaskStateStoreTests {
+
+	@TempDir
+	Path tempFolder;
+
+	@AfterEach
+	void closeStores( ) {
+		TaskStateStore.closeAll( );
+	}
+
+	@Test
+	void recoversValuesAfterReopening( ) throws IOException {
+		TaskStateStore store = TaskStateStore.shared( tempFolder );
+		store.put( "a", "1" );
+		store.put( "b", "multi\tline\nvalue\\" );
+		store.put( "c", "3" );
+		store.remove( "c" );
+		TaskStateStore.closeAll( );
+
+		store = TaskStateStore.shared( tempFolder );
+		assertEquals( "1", store.get( "a" ) );
+		assertEquals( "multi\tline\nvalue\\", store.get( "b" ) );
+		assertNull( store.get( "c" ) );
+	}
+
+	@Test
+	void discardsTornRecordAtTheEnd( ) throws IOException {
+		TaskStateStore store = TaskStateStore.shared( tempFolder );
+		store.put( "a", "1" );
+		store.put( "b", "2" );
+		TaskStateStore.closeAll( );
+
+		Path journalFile = tempFolder.resolve( "tasks.journal" );
+		long validLength = Files.size( journalFile );
+		Files.write( journalFile, "0badf00d P a\t3".getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+
+		store = TaskStateStore.shared( tempFolder );
+		assertEquals( "1", store.get( "a" ) );
+		assertEquals( "2", store.get( "b" ) );
+		assertEquals( validLength, Files.size( journalFile ) );
+
+		store.put( "a", "4" );
+		TaskStateStore.closeAll( );
+		assertEquals( "4", TaskStateStore.shared( tempFolder ).get( "a" ) );
+	}
+
+	@Test
+	void compactsSupersededRecords( ) throws IOException {
+		TaskStateStore store = TaskStateStore.shared( tempFolder );
+		for ( int update = 0; update < 5000; update++ ) {
+			store.put( "key-" + update % 10, String.valueOf( update ) );
+		}
+		store.sync( );
+		TaskStateStore.closeAll( );
+
+		Path journalFile = tempFolder.resolve( "tasks.journal" );
+		assertTrue( Files.readAllLines( journalFile ).size( ) < 1000 );
+		store = TaskStateStore.shared( tempFolder );
+		assertEquals( "4999", store.get( "key-9" ) );
+		assertEquals( "4990", store.get( "key-0" ) );
+	}
+
+}
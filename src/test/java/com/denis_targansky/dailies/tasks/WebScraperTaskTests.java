@@ -0,0 +1,226 @@
+package com.denis_targansky.dailies.tasks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.denis_targansky.dailies.Configuration;
+import com.denis_targansky.dailies.Configuration.TaskConfiguration;
+import com.denis_targansky.dailies.scheduler.CatchUpPolicy;
+import com.denis_targansky.dailies.scheduler.OverlapPolicy;
+import com.denis_targansky.dailies.scraping.OutputFormat;
+import com.denis_targansky.dailies.scraping.RecordWriter;
+import com.denis_targansky.dailies.search.SearchIndex;
+import com.denis_targansky.dailies.state.TaskStateStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+class WebScraperTaskTests {
+
+	private static final String LAST_MODIFIED = "Wed, 01 Oct 2025 08:00:00 GMT";
+
+	private static final ObjectMapper objectMapper = new ObjectMapper( );
+
+	@TempDir
+	Path tempFolder;
+
+	private HttpServer server;
+
+	private final List<Map<String, String>> requests = new ArrayList<>( );
+
+	private volatile int status;
+
+	private volatile String etag;
+
+	private volatile String body;
+
+	@BeforeEach
+	void startServer( ) throws IOException {
+		server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+		server.createContext( "/page", exchange -> {
+			Map<String, String> validators = new TreeMap<>( );
+			for ( String header : List.of( "If-None-Match", "If-Modified-Since" ) ) {
+				String value = exchange.getRequestHeaders( ).getFirst( header );
+				if ( value != null ) {
+					validators.put( header, value );
+				}
+			}
+			synchronized ( requests ) {
+				requests.add( validators );
+			}
+
+			if ( etag != null ) {
+				exchange.getResponseHeaders( ).add( "ETag", etag );
+			}
+			if ( status == 304 ) {
+				exchange.sendResponseHeaders( 304, -1 );
+				exchange.close( );
+				return;
+			}
+
+			byte[] content = body.getBytes( StandardCharsets.UTF_8 );
+			exchange.getResponseHeaders( ).add( "Last-Modified", LAST_MODIFIED );
+			exchange.getResponseHeaders( ).add( "Content-Type", "text/html; charset=utf-8" );
+			exchange.sendResponseHeaders( status, content.length );
+			try ( OutputStream responseBody = exchange.getResponseBody( ) ) {
+				responseBody.write( content );
+			}
+		} );
+		server.start( );
+	}
+
+	@AfterEach
+	void stopServer( ) {
+		server.stop( 0 );
+		TaskStateStore.closeAll( );
+		SearchIndex.closeAll( );
+	}
+
+	@Test
+	void sendsTheSavedValidatorsAndSkipsUnchangedPages( ) throws Exception {
+		respond( 200, "\"v1\"", "<h1>Hello</h1>" );
+		newTask( ).run( );
+		assertEquals( Map.of( ), takeLastRequest( ) );
+		assertEquals( List.of( Map.of( "url", getUrl( ), "title", "Hello" ) ), takeOutput( "scrape-" ) );
+		assertEquals( List.of( Map.of( "url", getUrl( ), "change", "new", "records", "1" ) ), takeOutput( "changes-" ) );
+
+		// A 304 does not have to repeat the validators, so the saved ones are kept
+		respond( 304, null, null );
+		newTask( ).run( );
+		assertEquals( Map.of( "If-None-Match", "\"v1\"", "If-Modified-Since", LAST_MODIFIED ), takeLastRequest( ) );
+		assertNull( takeOutput( "scrape-" ) );
+		assertNull( takeOutput( "changes-" ) );
+
+		respond( 200, "\"v2\"", "<h1>Hello</h1>" );
+		newTask( ).run( );
+		assertEquals( Map.of( "If-None-Match", "\"v1\"", "If-Modified-Since", LAST_MODIFIED ), takeLastRequest( ) );
+		assertNull( takeOutput( "scrape-" ) );
+		assertNull( takeOutput( "changes-" ) );
+
+		respond( 200, "\"v3\"", "<h1>Bye</h1>" );
+		newTask( ).run( );
+		assertEquals( Map.of( "If-None-Match", "\"v2\"", "If-Modified-Since", LAST_MODIFIED ), takeLastRequest( ) );
+		assertEquals( List.of( Map.of( "url", getUrl( ), "title", "Bye" ) ), takeOutput( "scrape-" ) );
+		assertEquals( List.of( Map.of( "url", getUrl( ), "change", "changed", "records", "1" ) ), takeOutput( "changes-" ) );
+	}
+
+	@Test
+	void doesNotSaveThePageStateWhenWritingFails( ) throws Exception {
+		respond( 200, "\"v1\"", "<h1>Hello</h1>" );
+		new FailingWebScraperTask( newConfiguration( ), newTaskConfiguration( ) ).run( );
+		assertEquals( Map.of( ), takeLastRequest( ) );
+
+		newTask( ).run( );
+		assertEquals( Map.of( ), takeLastRequest( ) );
+		assertEquals( List.of( Map.of( "url", getUrl( ), "title", "Hello" ) ), takeOutput( "scrape-" ) );
+	}
+
+	private void respond( int status, String etag, String body ) {
+		this.status = status;
+		this.etag = etag;
+		this.body = body;
+	}
+
+	private String getUrl( ) {
+		return "http://localhost:" + server.getAddress( ).getPort( ) + "/page";
+	}
+
+	private WebScraperTask newTask( ) throws Exception {
+		return new WebScraperTask( newConfiguration( ), newTaskConfiguration( ) );
+	}
+
+	private Configuration newConfiguration( ) throws Exception {
+		Path configFile = tempFolder.resolve( "configuration.properties" );
+		Files.writeString( configFile, "output-folder=" + tempFolder.resolve( "output" ).toString( ).replace( '\\', '/' ) );
+		return new Configuration( configFile.toString( ) );
+	}
+
+	private TaskConfiguration newTaskConfiguration( ) throws Exception {
+		return new TaskConfiguration( "task.1.property.", WebScraperTask.class.getName( ), 0, 0, 60, OverlapPolicy.SKIP,
+				CatchUpPolicy.COALESCE, Map.of( "scraping-url.1", getUrl( ), "selector.title", "h1" ) );
+	}
+
+	private Map<String, String> takeLastRequest( ) {
+		synchronized ( requests ) {
+			Map<String, String> request = requests.get( requests.size( ) - 1 );
+			requests.clear( );
+			return request;
+		}
+	}
+
+	/**
+	 * @return the records of the output file starting with {@code prefix}, which is then deleted, or null if there is
+	 *         none
+	 */
+	private List<Map<String, String>> takeOutput( String prefix ) throws IOException {
+		Path outputFolder = tempFolder.resolve( "output" ).resolve( WebScraperTask.class.getSimpleName( ) );
+		try ( Stream<Path> files = Files.list( outputFolder ) ) {
+			Path file = files.filter( path -> path.getFileName( ).toString( ).startsWith( prefix ) ).findFirst( )
+					.orElse( null );
+			if ( file == null ) {
+				return null;
+			}
+
+			List<Map<String, String>> records = new ArrayList<>( );
+			for ( String line : Files.readAllLines( file ) ) {
+				records.add( objectMapper.readValue( line, new TypeReference<Map<String, String>>( ) {
+				} ) );
+			}
+			Files.delete( file );
+			return records;
+		}
+	}
+
+	/**
+	 * Fails to write any record, like a task whose disk is full.
+	 */
+	private static final class FailingWebScraperTask extends WebScraperTask {
+
+		private FailingWebScraperTask( Configuration config, TaskConfiguration taskConfig )
+				throws InvalidTaskConfigurationException {
+			super( config, taskConfig );
+		}
+
+		@Override
+		RecordWriter newRecordWriter( Path file, List<String> recordFields ) throws IOException {
+			return new RecordWriter( OutputFormat.NDJSON, new FailingWriter( ), recordFields );
+		}
+
+	}
+
+	private static final class FailingWriter extends Writer {
+
+		@Override
+		public void write( char[] buffer, int offset, int length ) throws IOException {
+			throw new IOException( "Disk full" );
+		}
+
+		@Override
+		public void flush( ) {
+		}
+
+		@Override
+		public void close( ) {
+		}
+
+	}
+
+}
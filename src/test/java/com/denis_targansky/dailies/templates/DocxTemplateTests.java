@@ -0,0 +1,76 @@
+package com.denis_targansky.dailies.templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DocxTemplateTests {
+
+	private static final PlaceholderMatcher MATCHER = new PlaceholderMatcher( List.of( "{ticker}", "{ticker_name}" ) );
+
+	@TempDir
+	Path tempFolder;
+
+	@Test
+	void rendersPlaceholdersSplitAcrossRuns( ) throws IOException {
+		Path templateFile = tempFolder.resolve( "template.docx" );
+		try ( XWPFDocument document = new XWPFDocument( ) ) {
+			addRuns( document.createParagraph( ), "Report for {tic", "ker} to", "day" );
+
+			// The second text element of a run, after a tab, starts the placeholder
+			XWPFRun labelRun = document.createParagraph( ).createRun( );
+			labelRun.setText( "Name:" );
+			labelRun.addTab( );
+			labelRun.setText( "{ticker_" );
+			labelRun.getParagraph( ).createRun( ).setText( "name}" );
+
+			// A tab inside a placeholder makes it plain text
+			XWPFRun tabbedRun = document.createParagraph( ).createRun( );
+			tabbedRun.setText( "{tic" );
+			tabbedRun.addTab( );
+			tabbedRun.setText( "ker}" );
+
+			XWPFTable table = document.createTable( 1, 1 );
+			XWPFParagraph cellParagraph = table.getRow( 0 ).getCell( 0 ).getParagraphs( ).get( 0 );
+			addRuns( cellParagraph, "{", "ticker", "} ", "{ticker}" );
+
+			try ( OutputStream out = Files.newOutputStream( templateFile ) ) {
+				document.write( out );
+			}
+		}
+
+		Path outputFile = tempFolder.resolve( "output.docx" );
+		try ( OutputStream out = Files.newOutputStream( outputFile ) ) {
+			assertTrue( DocxTemplate.get( templateFile.toFile( ), MATCHER ).render(
+					( term, index ) -> "{ticker}".equals( term ) ? "AAPL" : "Apple & Co", out ) );
+		}
+
+		try ( InputStream in = Files.newInputStream( outputFile ); XWPFDocument document = new XWPFDocument( in ) ) {
+			List<XWPFParagraph> paragraphs = document.getParagraphs( );
+			assertEquals( "Report for AAPL today", paragraphs.get( 0 ).getText( ) );
+			assertEquals( "Name:\tApple & Co", paragraphs.get( 1 ).getText( ) );
+			assertEquals( "{tic\tker}", paragraphs.get( 2 ).getText( ) );
+			assertEquals( "AAPL AAPL", document.getTables( ).get( 0 ).getRow( 0 ).getCell( 0 ).getText( ) );
+		}
+	}
+
+	private static void addRuns( XWPFParagraph paragraph, String... runTexts ) {
+		for ( String runText : runTexts ) {
+			paragraph.createRun( ).setText( runText );
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.denis_targansky.dailies.templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.denis_targansky.dailies.templates.PlaceholderMatcher.Match;
+
+class PlaceholderMatcherTests {
+
+	private final PlaceholderMatcher matcher = new PlaceholderMatcher(
+			List.of( "{ticker}", "{ticker_name}", "{headline_title_###}" ) );
+
+	@Test
+	void findsLiteralPlaceholders( ) {
+		List<Match> matches = matcher.findAll( "{ticker} and {ticker_name}{ticker}" );
+
+		assertEquals( 3, matches.size( ) );
+		assertEquals( "{ticker}", matches.get( 0 ).getTerm( ) );
+		assertEquals( 0, matches.get( 0 ).getStart( ) );
+		assertEquals( "{ticker_name}", matches.get( 1 ).getTerm( ) );
+		assertEquals( 13, matches.get( 1 ).getStart( ) );
+		assertEquals( 26, matches.get( 1 ).getEnd( ) );
+		assertEquals( "{ticker}", matches.get( 2 ).getTerm( ) );
+		assertEquals( PlaceholderMatcher.NO_INDEX, matches.get( 2 ).getIndex( ) );
+	}
+
+	@Test
+	void findsIndexedPlaceholders( ) {
+		List<Match> matches = matcher.findAll( "{headline_title_}{headline_title_7}{headline_title_x}{headline_title_123}" );
+
+		assertEquals( 2, matches.size( ) );
+		assertEquals( "{headline_title_###}", matches.get( 0 ).getTerm( ) );
+		assertEquals( 7, matches.get( 0 ).getIndex( ) );
+		assertEquals( 17, matches.get( 0 ).getStart( ) );
+		assertEquals( 123, matches.get( 1 ).getIndex( ) );
+		assertEquals( 73, matches.get( 1 ).getEnd( ) );
+	}
+
+	@Test
+	void ignoresPartialPlaceholders( ) {
+		assertEquals( List.of( ), matcher.findAll( "{tick {ticker_nam} ticker}" ) );
+	}
+
+}
@@ -0,0 +1,131 @@
+package com.denis_targansky.dailies.timeseries;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.denis_targansky.dailies.metrics.TaskMetrics;
+
+import yahoofinance.histquotes.HistoricalQuote;
+
+class HistoryBackfillTests {
+
+	private static final LocalDate TODAY = LocalDate.of( 2026, 1, 1 );
+
+	@TempDir
+	Path tempFolder;
+
+	private final Map<String, String> state = new ConcurrentHashMap<>( );
+
+	private final List<String> fetched = Collections.synchronizedList( new ArrayList<>( ) );
+
+	private final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+	private volatile String failingChunk;
+
+	@AfterEach
+	void shutdownExecutor( ) {
+		executor.shutdownNow( );
+	}
+
+	@Test
+	void continuesWithTheMissingChunks( ) throws Exception {
+		List<String> tickers = List.of( "AAPL", "MSFT" );
+		assertTrue( newBackfill( 3 ).run( tickers, TODAY, executor ) );
+		assertEquals( List.of( "AAPL 2025-01-01", "AAPL 2025-04-01", "AAPL 2025-07-01" ), takeFetched( ) );
+		assertEquals( "2025-01-01/2026-01-01", state.get( "backfill.MSFT.range" ) );
+		assertNull( state.get( "backfill.AAPL.completed" ) );
+
+		failingChunk = "MSFT 2025-04-01";
+		assertFalse( newBackfill( 100 ).run( tickers, TODAY.plusDays( 7 ), executor ) );
+		assertEquals( List.of( "AAPL 2025-10-01", "MSFT 2025-01-01", "MSFT 2025-04-01", "MSFT 2025-07-01",
+				"MSFT 2025-10-01" ), takeFetched( ) );
+		assertEquals( "2025-01-01/2026-01-01", state.get( "backfill.AAPL.completed" ) );
+		assertNull( state.get( "backfill.AAPL.range" ) );
+		assertNull( state.get( "backfill.AAPL.chunk.2025-01-01" ) );
+		assertNull( state.get( "backfill.MSFT.completed" ) );
+
+		failingChunk = null;
+		assertTrue( newBackfill( 100 ).run( tickers, TODAY.plusDays( 14 ), executor ) );
+		assertEquals( List.of( "MSFT 2025-04-01" ), takeFetched( ) );
+		assertEquals( Map.of( "backfill.AAPL.completed", "2025-01-01/2026-01-01", "backfill.MSFT.completed",
+				"2025-01-01/2026-01-01" ), state );
+
+		assertTrue( newBackfill( 100 ).run( tickers, TODAY.plusDays( 21 ), executor ) );
+		assertEquals( List.of( ), takeFetched( ) );
+	}
+
+	@Test
+	void writesTheQuotesOfTheChunk( ) throws Exception {
+		assertTrue( newBackfill( 1 ).run( List.of( "AAPL" ), TODAY, executor ) );
+		assertTrue( state.containsKey( "backfill.AAPL.chunk.2025-01-01" ) );
+		assertEquals( List.of( "date,open,high,low,close,adj_close,volume", "2025-01-01,10,11,9,10.5,10.4,1000" ),
+				Files.readAllLines( tempFolder.resolve( "AAPL" ).resolve( "AAPL-2025-01-01-2025-04-01.csv" ) ) );
+	}
+
+	private HistoryBackfill newBackfill( int maxChunksPerRun ) {
+		return new HistoryBackfill( tempFolder, new HistoryBackfill.State( ) {
+
+			@Override
+			public String get( String key ) {
+				return state.get( key );
+			}
+
+			@Override
+			public void put( String key, String value ) {
+				if ( value == null ) {
+					state.remove( key );
+				} else {
+					state.put( key, value );
+				}
+			}
+
+		}, this::fetch, new TaskMetrics( "HistoryBackfillTests" ), 1, 3, maxChunksPerRun );
+	}
+
+	/**
+	 * Returns a quote on the first day of the chunk and one on its last day, which is outside of it.
+	 */
+	private List<HistoricalQuote> fetch( String ticker, LocalDate from, LocalDate until ) throws IOException {
+		String chunk = ticker + " " + from;
+		fetched.add( chunk );
+		if ( chunk.equals( failingChunk ) ) {
+			throw new IOException( "Unavailable" );
+		}
+		return List.of( quote( ticker, from ), quote( ticker, until ) );
+	}
+
+	private List<String> takeFetched( ) {
+		List<String> chunks = new ArrayList<>( fetched );
+		fetched.clear( );
+		Collections.sort( chunks );
+		return chunks;
+	}
+
+	private static HistoricalQuote quote( String ticker, LocalDate date ) {
+		return new HistoricalQuote( ticker, GregorianCalendar.from( date.atStartOfDay( ZoneOffset.UTC ) ),
+				new BigDecimal( "10" ), new BigDecimal( "9" ), new BigDecimal( "11" ), new BigDecimal( "10.5" ),
+				new BigDecimal( "10.4" ), 1000L );
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.denis_targansky.dailies.timeseries;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.denis_targansky.dailies.finance.QuoteSnapshot;
+
+class QuoteHistoryStoreTests {
+
+	private static final long HOUR = 3_600_000;
+
+	@TempDir
+	Path tempFolder;
+
+	@AfterEach
+	void closeStores( ) {
+		QuoteHistoryStore.closeAll( );
+	}
+
+	@Test
+	void readsRangesAndDownsamples( ) throws IOException {
+		QuoteHistoryStore store = QuoteHistoryStore.shared( tempFolder );
+		for ( int hour = 0; hour < 48; hour++ ) {
+			assertTrue( store.append( "AAPL", hour * HOUR, quote( "AAPL", 100 + hour, hour % 2 == 0 ? null : 1000L ) ) );
+		}
+		assertFalse( store.append( "AAPL", 47 * HOUR, quote( "AAPL", 1, 1L ) ) );
+		store.append( "BRK-B", 0, quote( "BRK-B", 300, null ) );
+
+		QuoteSeries range = store.getRange( "AAPL", Instant.ofEpochMilli( 10 * HOUR ), Instant.ofEpochMilli( 20 * HOUR ) );
+		assertEquals( 10, range.size( ) );
+		assertEquals( 10 * HOUR, range.getTimestampMillis( 0 ) );
+		assertEquals( 119, range.getPrice( 9 ) );
+		assertTrue( Double.isNaN( range.getMarketCap( 0 ) ) );
+		assertEquals( QuoteSeries.MISSING, range.getAverageVolume( 0 ) );
+		assertEquals( 1000L, range.getAverageVolume( 1 ) );
+
+		QuoteSeries days = store.getRange( "AAPL", Instant.EPOCH, Instant.ofEpochMilli( 48 * HOUR ) )
+				.downsample( 24 * HOUR, Aggregation.MEAN );
+		assertEquals( 2, days.size( ) );
+		assertEquals( 24 * HOUR, days.getTimestampMillis( 1 ) );
+		assertEquals( 111.5, days.getPrice( 0 ) );
+		assertEquals( 1000L, days.getAverageVolume( 1 ) );
+		assertEquals( 147, store.getRange( "AAPL", Instant.EPOCH, Instant.MAX ).downsample( 24 * HOUR, Aggregation.MAX )
+				.getPrice( 1 ) );
+		assertEquals( List.of( "AAPL", "BRK-B" ), store.getTickers( ) );
+	}
+
+	@Test
+	void discardsIncompleteRowAfterCrash( ) throws IOException {
+		QuoteHistoryStore store = QuoteHistoryStore.shared( tempFolder );
+		store.append( "AAPL", 1, quote( "AAPL", 10, 5L ) );
+		store.append( "AAPL", 2, quote( "AAPL", 20, 6L ) );
+		QuoteHistoryStore.closeAll( );
+
+		// A crash after only some of the columns of a third row were written
+		Files.write( tempFolder.resolve( "AAPL" ).resolve( "timestamp.col" ), new byte[] { 0, 0, 0, 0, 0, 0, 0, 3 },
+				StandardOpenOption.APPEND );
+
+		store = QuoteHistoryStore.shared( tempFolder );
+		QuoteSeries series = store.getRange( "AAPL", Instant.EPOCH, Instant.MAX );
+		assertEquals( 2, series.size( ) );
+		assertEquals( 20, series.getPrice( 1 ) );
+		assertTrue( store.append( "AAPL", 3, quote( "AAPL", 30, 7L ) ) );
+		assertEquals( 3, store.getRange( "AAPL", Instant.EPOCH, Instant.MAX ).size( ) );
+	}
+
+	private static QuoteSnapshot quote( String ticker, double price, Long averageVolume ) {
+		return new QuoteSnapshot( ticker, ticker + " Inc.", BigDecimal.valueOf( price ), null, BigDecimal.ONE,
+				BigDecimal.TEN, averageVolume );
+	}
+
+}